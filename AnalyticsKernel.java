@@ -0,0 +1,529 @@
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * AnalyticsKernel - Single-pass analytics over a sales list
+ * Computes the summary, top/least products, monthly, hourly and category
+ * breakdowns in one walk. Products and categories are grouped on their
+ * SalesDictionary codes, mapped to dense kernel codes, and all accumulators are
+ * primitive arrays, so the hot loop neither hashes strings nor boxes.
+ *
+ * Inputs of at least analytics.parallelThreshold rows (default 100000) are split
+ * into chunks of up to CHUNK_ROWS, aggregated into partial kernels on a ForkJoinPool
+ * of analytics.parallelism threads (default: all cores) and merged in input order.
+ * The chunk tree depends only on the row count, so the result is the same for any
+ * number of threads, including one. Cold builds of SalesAggregates and rollups
+ * split their input the same way through forkJoin.
+ */
+public class AnalyticsKernel {
+    private static final int TOP_LIMIT = 5;
+    private static final int CHUNK_ROWS = 16_384;
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("analytics.parallelThreshold", 100_000);
+
+    // Created on first use so small deployments never start the pool
+    private static volatile ForkJoinPool pool;
+
+    // Products by kernel code: name, quantity; productCodes maps dictionary codes to kernel codes
+    private final SalesDictionary.Slots productCodes = new SalesDictionary.Slots();
+    private String[] productNames = new String[16];
+    private int[] productQuantities = new int[16];
+    private int productCount = 0;
+
+    // Categories by kernel code: name, amount
+    private final SalesDictionary.Slots categoryCodes = new SalesDictionary.Slots();
+    private String[] categoryNames = new String[8];
+    private double[] categoryAmounts = new double[8];
+    private int categoryCount = 0;
+
+    // Months keyed by year * 12 + (month - 1), stored relative to monthBase
+    private int monthBase = 0;
+    private double[] monthAmounts = new double[0];
+    private int[] monthCounts = new int[0];
+
+    private final double[] hourAmounts = new double[24];
+    private final int[] hourCounts = new int[24];
+
+    private int totalSales = 0;
+    private double totalRevenue = 0.0;
+    private double maxSaleAmount = 0.0;
+    private int maxSaleProduct = -1;
+
+    /**
+     * Aggregates rows [from, to) of some input into a fresh partial result
+     */
+    interface RangeScan<T> {
+        T scan(int from, int to);
+    }
+
+    /**
+     * Aggregate a sales list: a single pass for small lists, chunked on the shared
+     * pool at or above the parallel threshold
+     */
+    public static AnalyticsKernel run(List<Product> sales) {
+        if (sales.size() < PARALLEL_THRESHOLD) {
+            return scanList(sales, 0, sales.size());
+        }
+        return run(sales, sharedPool());
+    }
+
+    /**
+     * Aggregate a sales list in chunks on the given pool, or on the calling thread
+     * if pool is null. The result is identical either way.
+     */
+    public static AnalyticsKernel run(List<Product> sales, ForkJoinPool pool) {
+        return runChunked((from, to) -> scanList(sales, from, to), AnalyticsKernel::merge, sales.size(), pool);
+    }
+
+    /**
+     * Aggregate sales read through cursors, such as an off-heap table, without
+     * creating Products, chunked on the shared pool at or above the parallel threshold
+     */
+    public static AnalyticsKernel run(SalesRows.Source sales) {
+        return forkJoin(sales.rowCount(), (from, to) -> scanRows(sales, from, to), AnalyticsKernel::merge);
+    }
+
+    /**
+     * Fold rows [0, rows) of some input: one scan below the parallel threshold,
+     * otherwise chunks scanned on the shared pool and merged in input order, each
+     * partial result folded with the one for the rows after it
+     */
+    static <T> T forkJoin(int rows, RangeScan<T> scan, BinaryOperator<T> merge) {
+        if (rows < PARALLEL_THRESHOLD) {
+            return scan.scan(0, rows);
+        }
+        return runChunked(scan, merge, rows, sharedPool());
+    }
+
+    private static <T> T runChunked(RangeScan<T> scan, BinaryOperator<T> merge, int rows, ForkJoinPool pool) {
+        Chunk<T> root = new Chunk<>(scan, merge, 0, rows);
+        return pool == null ? root.computeSequentially() : pool.invoke(root);
+    }
+
+    private static AnalyticsKernel scanList(List<Product> sales, int from, int to) {
+        AnalyticsKernel kernel = new AnalyticsKernel();
+        for (int i = from; i < to; i++) {
+            kernel.accept(sales.get(i));
+        }
+        return kernel;
+    }
+
+    // Rows already hold SalesDictionary codes
+    private static AnalyticsKernel scanRows(SalesRows.Source sales, int from, int to) {
+        AnalyticsKernel kernel = new AnalyticsKernel();
+        try (SalesRows rows = sales.cursor(from, to)) {
+            while (rows.next()) {
+                kernel.accept(rows);
+            }
+        }
+        return kernel;
+    }
+
+    private static ForkJoinPool sharedPool() {
+        ForkJoinPool shared = pool;
+        if (shared == null) {
+            synchronized (AnalyticsKernel.class) {
+                shared = pool;
+                if (shared == null) {
+                    int parallelism = Integer.getInteger("analytics.parallelism", Runtime.getRuntime().availableProcessors());
+                    pool = shared = new ForkJoinPool(Math.max(1, parallelism));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Splits [from, to) in halves down to CHUNK_ROWS, then merges left into right order
+     */
+    private static final class Chunk<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeScan<T> scan;
+        private final BinaryOperator<T> merge;
+        private final int from;
+        private final int to;
+
+        Chunk(RangeScan<T> scan, BinaryOperator<T> merge, int from, int to) {
+            this.scan = scan;
+            this.merge = merge;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= CHUNK_ROWS) {
+                return scan.scan(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            Chunk<T> left = new Chunk<>(scan, merge, from, mid);
+            left.fork();
+            T right = new Chunk<>(scan, merge, mid, to).compute();
+            return merge.apply(left.join(), right);
+        }
+
+        // Same tree, same merge order, on the calling thread
+        T computeSequentially() {
+            if (to - from <= CHUNK_ROWS) {
+                return scan.scan(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            T left = new Chunk<>(scan, merge, from, mid).computeSequentially();
+            return merge.apply(left, new Chunk<>(scan, merge, mid, to).computeSequentially());
+        }
+    }
+
+    /**
+     * Fold the partial result for the rows that follow this kernel's rows into it.
+     * Dictionaries are extended in first-seen order and the max sale keeps the earlier
+     * row on ties, so the merged result matches a single pass over both inputs.
+     */
+    AnalyticsKernel merge(AnalyticsKernel next) {
+        int[] productMap = new int[next.productCount];
+        for (int code = 0; code < next.productCount; code++) {
+            productMap[code] = productCode(next.productCodes.code(code));
+            productQuantities[productMap[code]] += next.productQuantities[code];
+        }
+        for (int code = 0; code < next.categoryCount; code++) {
+            int mapped = categoryCode(next.categoryCodes.code(code));
+            categoryAmounts[mapped] += next.categoryAmounts[code];
+        }
+        for (int i = 0; i < next.monthCounts.length; i++) {
+            if (next.monthCounts[i] > 0) {
+                addMonth(next.monthBase + i, next.monthAmounts[i], next.monthCounts[i]);
+            }
+        }
+        for (int hour = 0; hour < 24; hour++) {
+            addHour(hour, next.hourAmounts[hour], next.hourCounts[hour]);
+        }
+        if (next.maxSaleProduct >= 0 && (maxSaleProduct < 0 || next.maxSaleAmount > maxSaleAmount)) {
+            maxSaleAmount = next.maxSaleAmount;
+            maxSaleProduct = productMap[next.maxSaleProduct];
+        }
+        addTotals(next.totalRevenue, next.totalSales);
+        return this;
+    }
+
+    /**
+     * Fold one sale into the accumulators
+     */
+    public void accept(Product sale) {
+        LocalDateTime date = sale.getSaleDate();
+        accept(productCode(sale.getProductCode()), categoryCode(sale.getCategoryCode()), sale.getSaleAmount(),
+            sale.getQuantity(), date.getYear() * 12 + date.getMonthValue() - 1, date.getHour());
+    }
+
+    /**
+     * Fold the current row of a cursor into the accumulators
+     */
+    public void accept(SalesRows rows) {
+        long epochSecond = rows.epochSecond();
+        accept(productCode(rows.productCode()), categoryCode(rows.categoryCode()),
+            rows.amount(), rows.quantity(), monthKey(epochSecond), hourOf(epochSecond));
+    }
+
+    private void accept(int product, int category, double amount, int quantity, int monthKey, int hour) {
+        totalSales++;
+        totalRevenue += amount;
+        // Strictly greater keeps the first sale on ties
+        if (maxSaleProduct < 0 || amount > maxSaleAmount) {
+            maxSaleAmount = amount;
+            maxSaleProduct = product;
+        }
+
+        productQuantities[product] += quantity;
+        categoryAmounts[category] += amount;
+
+        int month = monthSlot(monthKey);
+        monthAmounts[month] += amount;
+        monthCounts[month]++;
+
+        hourAmounts[hour] += amount;
+        hourCounts[hour]++;
+    }
+
+    // Pre-aggregated input, used by SalesRollups to fold whole buckets at once
+
+    void addTotals(double amount, int count) {
+        totalSales += count;
+        totalRevenue += amount;
+    }
+
+    void offerMax(double amount, String productName) {
+        if (maxSaleProduct < 0 || amount > maxSaleAmount) {
+            maxSaleAmount = amount;
+            maxSaleProduct = productCode(SalesDictionary.code(productName));
+        }
+    }
+
+    void addProduct(String productName, int quantity) {
+        int code = productCode(SalesDictionary.code(productName));
+        productQuantities[code] += quantity;
+    }
+
+    void addCategory(String category, double amount) {
+        int code = categoryCode(SalesDictionary.code(category));
+        categoryAmounts[code] += amount;
+    }
+
+    void addMonth(int monthKey, double amount, int count) {
+        int month = monthSlot(monthKey);
+        monthAmounts[month] += amount;
+        monthCounts[month] += count;
+    }
+
+    void addHour(int hour, double amount, int count) {
+        hourAmounts[hour] += amount;
+        hourCounts[hour] += count;
+    }
+
+    // Kernel code for a dictionary code. Null names are grouped as "null", as they
+    // read back from the sales file.
+    private int productCode(int dictionaryCode) {
+        int key = SalesDictionary.textCode(dictionaryCode);
+        int code = productCodes.slot(key);
+        if (code < productCount) {
+            return code;
+        }
+        if (productCount == productNames.length) {
+            productNames = Arrays.copyOf(productNames, productCount * 2);
+            productQuantities = Arrays.copyOf(productQuantities, productCount * 2);
+        }
+        productNames[productCount] = SalesDictionary.string(key);
+        return productCount++;
+    }
+
+    private int categoryCode(int dictionaryCode) {
+        int key = SalesDictionary.textCode(dictionaryCode);
+        int code = categoryCodes.slot(key);
+        if (code < categoryCount) {
+            return code;
+        }
+        if (categoryCount == categoryNames.length) {
+            categoryNames = Arrays.copyOf(categoryNames, categoryCount * 2);
+            categoryAmounts = Arrays.copyOf(categoryAmounts, categoryCount * 2);
+        }
+        categoryNames[categoryCount] = SalesDictionary.string(key);
+        return categoryCount++;
+    }
+
+    // Map a month key to an array slot, growing the window on either side as needed
+    private int monthSlot(int key) {
+        if (monthAmounts.length == 0) {
+            monthBase = key;
+            monthAmounts = new double[12];
+            monthCounts = new int[12];
+        }
+        int slot = key - monthBase;
+        if (slot < 0) {
+            int shift = Math.max(-slot, 12);
+            double[] amounts = new double[monthAmounts.length + shift];
+            int[] counts = new int[monthCounts.length + shift];
+            System.arraycopy(monthAmounts, 0, amounts, shift, monthAmounts.length);
+            System.arraycopy(monthCounts, 0, counts, shift, monthCounts.length);
+            monthAmounts = amounts;
+            monthCounts = counts;
+            monthBase -= shift;
+            slot += shift;
+        } else if (slot >= monthAmounts.length) {
+            int size = Math.max(slot + 1, monthAmounts.length * 2);
+            monthAmounts = Arrays.copyOf(monthAmounts, size);
+            monthCounts = Arrays.copyOf(monthCounts, size);
+        }
+        return slot;
+    }
+
+    // Result accessors
+
+    public int getTotalSales() { return totalSales; }
+    public double getTotalRevenue() { return totalRevenue; }
+    public double getMaxSaleAmount() { return maxSaleAmount; }
+
+    public String getMaxSaleProduct() {
+        return maxSaleProduct < 0 ? "N/A" : productNames[maxSaleProduct];
+    }
+
+    /**
+     * Month with the highest revenue, earliest first on ties
+     */
+    public String getMaxSaleMonth() {
+        int best = -1;
+        for (int i = 0; i < monthCounts.length; i++) {
+            if (monthCounts[i] > 0 && (best < 0 || monthAmounts[i] > monthAmounts[best])) {
+                best = i;
+            }
+        }
+        return best < 0 ? "N/A" : monthLabel(monthBase + best);
+    }
+
+    /**
+     * Hour with the highest revenue, earliest first on ties
+     */
+    public int getPeakSalesHour() {
+        int peak = -1;
+        for (int hour = 0; hour < 24; hour++) {
+            if (hourCounts[hour] > 0 && (peak < 0 || hourAmounts[hour] > hourAmounts[peak])) {
+                peak = hour;
+            }
+        }
+        return Math.max(peak, 0);
+    }
+
+    /**
+     * Product codes with the highest quantities, highest first.
+     * Partial selection over the dictionary instead of sorting it.
+     */
+    public int[] getTopProducts(int limit) {
+        return selectProducts(limit, true);
+    }
+
+    /**
+     * Product codes with the lowest quantities, lowest first
+     */
+    public int[] getLeastProducts(int limit) {
+        return selectProducts(limit, false);
+    }
+
+    private int[] selectProducts(int limit, boolean highest) {
+        int[] selected = new int[Math.min(limit, productCount)];
+        int size = 0;
+        for (int code = 0; code < productCount; code++) {
+            int pos = size;
+            while (pos > 0 && ranksBefore(code, selected[pos - 1], highest)) {
+                pos--;
+            }
+            if (pos >= selected.length) {
+                continue;
+            }
+            int end = Math.min(size, selected.length - 1);
+            System.arraycopy(selected, pos, selected, pos + 1, end - pos);
+            selected[pos] = code;
+            if (size < selected.length) size++;
+        }
+        return selected;
+    }
+
+    // Quantity order with name as tie-breaker, matching SalesAggregates
+    private boolean ranksBefore(int a, int b, boolean highest) {
+        int byQuantity = Integer.compare(productQuantities[a], productQuantities[b]);
+        int order = byQuantity != 0 ? byQuantity : productNames[a].compareTo(productNames[b]);
+        return highest ? order > 0 : order < 0;
+    }
+
+    private Integer[] categoriesByName() {
+        Integer[] order = new Integer[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> categoryNames[i]));
+        return order;
+    }
+
+    public String getProductName(int code) { return productNames[code]; }
+    public int getProductQuantity(int code) { return productQuantities[code]; }
+
+    // Labels shared with SalesAggregates so both render identical keys
+    private static final String[] HOUR_KEYS = new String[24];
+    static {
+        for (int hour = 0; hour < 24; hour++) {
+            HOUR_KEYS[hour] = Integer.toString(hour);
+        }
+    }
+
+    /**
+     * Month key (year * 12 + month - 1) of an epoch-second timestamp read as UTC.
+     * Civil-from-days arithmetic, so columnar scans need no LocalDateTime.
+     */
+    static int monthKey(long epochSecond) {
+        long days = Math.floorDiv(epochSecond, 86400L) + 719468;
+        long era = Math.floorDiv(days, 146097);
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153; // March-based
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 12 + month - 1);
+    }
+
+    static int hourOf(long epochSecond) {
+        return (int) (Math.floorMod(epochSecond, 86400L) / 3600);
+    }
+
+    static String monthLabel(int key) {
+        return Month.of(key % 12 + 1) + " " + (key / 12);
+    }
+
+    static String hourKey(int hour) {
+        return HOUR_KEYS[hour];
+    }
+
+    /**
+     * Generate complete analytics JSON, same shape as SalesAnalytics.getAnalyticsJSON
+     */
+    public String toJSON() {
+        JsonWriter json = new JsonWriter();
+        writeJSON(json);
+        return json.toString();
+    }
+
+    public void writeJSON(JsonWriter json) {
+        json.beginObject();
+
+        // Summary metrics
+        json.name("summary").beginObject()
+            .fieldMoney("totalRevenue", totalRevenue)
+            .field("totalSales", totalSales)
+            .fieldMoney("maxSaleAmount", maxSaleAmount)
+            .field("maxSaleProduct", getMaxSaleProduct())
+            .field("maxSaleMonth", getMaxSaleMonth())
+            .field("peakSalesHour", getPeakSalesHour())
+            .endObject();
+
+        // Top and least selling products
+        json.name("topProducts");
+        writeProducts(json, getTopProducts(TOP_LIMIT));
+        json.name("leastProducts");
+        writeProducts(json, getLeastProducts(TOP_LIMIT));
+
+        // Monthly sales
+        json.name("monthlySales").beginObject();
+        for (int i = 0; i < monthCounts.length; i++) {
+            if (monthCounts[i] > 0) {
+                json.fieldMoney(monthLabel(monthBase + i), monthAmounts[i]);
+            }
+        }
+        json.endObject();
+
+        // Category sales, by name like SalesAggregates, so the order does not depend
+        // on which rows were seen first
+        json.name("categorySales").beginObject();
+        for (int i : categoriesByName()) {
+            json.fieldMoney(categoryNames[i], categoryAmounts[i]);
+        }
+        json.endObject();
+
+        // Hourly sales
+        json.name("hourlySales").beginObject();
+        for (int hour = 0; hour < 24; hour++) {
+            if (hourCounts[hour] > 0) {
+                json.fieldMoney(hourKey(hour), hourAmounts[hour]);
+            }
+        }
+        json.endObject();
+
+        json.endObject();
+    }
+
+    private void writeProducts(JsonWriter json, int[] codes) {
+        json.beginObject();
+        for (int code : codes) {
+            json.field(productNames[code], productQuantities[code]);
+        }
+        json.endObject();
+    }
+}
@@ -23,10 +23,12 @@ public class AuthService {
             return "{\"success\":false,\"message\":\"Username already exists\"}";
         }
         
-        // Create and save user
+        // Create and save user (saveUser re-checks atomically in case of a concurrent registration)
         User user = new User(username, password, fullName, businessName);
         if (Database.saveUser(user)) {
-            return String.format("{\"success\":true,\"message\":\"Registration successful\",\"user\":%s}", user.toJSON());
+            return result("Registration successful", user);
+        } else if (Database.userExists(username)) {
+            return "{\"success\":false,\"message\":\"Username already exists\"}";
         } else {
             return "{\"success\":false,\"message\":\"Registration failed\"}";
         }
@@ -52,9 +54,23 @@ public class AuthService {
         
         // Verify password
         if (user.verifyPassword(password)) {
-            return String.format("{\"success\":true,\"message\":\"Login successful\",\"user\":%s}", user.toJSON());
+            return result("Login successful", user);
         } else {
             return "{\"success\":false,\"message\":\"Invalid username or password\"}";
         }
     }
+
+    /**
+     * Successful response carrying the user
+     */
+    private static String result(String message, User user) {
+        JsonWriter json = new JsonWriter();
+        json.beginObject()
+            .field("success", true)
+            .field("message", message)
+            .name("user");
+        user.writeJSON(json);
+        json.endObject();
+        return json.toString();
+    }
 }
\ No newline at end of file
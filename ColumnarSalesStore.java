@@ -0,0 +1,656 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * ColumnarSalesStore - Binary, memory-mapped sales storage, one segment per user
+ *
+ * data/sales_<user>.col holds a fixed 64-byte header followed by one column per
+ * field, each sized for the segment's capacity:
+ *   ids int[], quantities int[], product/category/customer codes int[],
+ *   amounts double[], timestamps long[] (epoch seconds, LocalDateTime read as UTC),
+ *   deleted byte[]
+ * data/sales_<user>.dict is an append-only list of length-prefixed UTF-8 strings;
+ * a string's code is its position in the file. The header records which dictionary
+ * generation the segment uses; generation 0 is sales_<user>.dict and generation g
+ * is sales_<user>.<g>.dict, so replace() can write a whole new dictionary beside
+ * the old one and switch both with the single rename of the segment.
+ *
+ * The segment is mapped with FileChannel.map and read and written in place. An
+ * append writes the new rows past rowCount and publishes them by updating rowCount
+ * last; a delete sets the row's deleted flag. When the segment is full it is
+ * rewritten with only the live rows at a larger capacity and renamed over the old one.
+ * Deletes find their row through an ID index built on the first delete.
+ *
+ * Not thread-safe: callers serialize access per user (Database holds the sales lock).
+ */
+public class ColumnarSalesStore {
+    private static final int MAGIC = 0x53434F4C; // "SCOL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int MIN_CAPACITY = 1024;
+    // A single mapping is limited to 2GB
+    private static final int MAX_CAPACITY = 1 << 25;
+    // Bytes per row across all columns: 5 ints, 2 eight-byte values, 1 flag
+    private static final int ROW_BYTES = 5 * 4 + 2 * 8 + 1;
+
+    // Header offsets
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int ROW_COUNT_OFFSET = 12;
+    private static final int DELETED_COUNT_OFFSET = 16;
+    private static final int MAX_ID_OFFSET = 20;
+    private static final int DICTIONARY_OFFSET = 24;
+
+    private final String filePrefix;
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+
+    // Deleted rows are dropped in place once they pass the same thresholds the
+    // text-file compactor uses
+    private final double tombstoneRatio;
+    private final int minTombstones;
+
+    public ColumnarSalesStore(String filePrefix) {
+        this.filePrefix = filePrefix;
+        this.tombstoneRatio = Double.parseDouble(System.getProperty("sales.compaction.tombstoneRatio", "0.25"));
+        this.minTombstones = Integer.getInteger("sales.compaction.minTombstones", 64);
+    }
+
+    /**
+     * Open segment for a user, or null if the user has no columnar data yet
+     */
+    public Segment open(String username) throws IOException {
+        Segment segment = segments.get(username);
+        if (segment == null && segmentFile(username).exists()) {
+            segment = Segment.open(segmentFile(username), generation -> dictionaryFile(username, generation));
+            segments.put(username, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Append sales for a user, creating the segment on first use
+     */
+    public void append(String username, List<Product> sales, boolean fsync) throws IOException {
+        Segment segment = open(username);
+        if (segment == null) {
+            segment = Segment.create(segmentFile(username), MIN_CAPACITY, 0,
+                Dictionary.open(dictionaryFile(username, 0)));
+            segments.put(username, segment);
+        }
+        if (segment.rowCount() + sales.size() > segment.capacity()) {
+            segment = rewrite(username, segment, segment.liveCount() + sales.size());
+        }
+        segment.append(sales, fsync);
+    }
+
+    /**
+     * Mark a sale deleted. Returns false if no live row has that ID.
+     */
+    public boolean delete(String username, int saleId, boolean fsync) throws IOException {
+        Segment segment = open(username);
+        if (segment == null || !segment.delete(saleId, fsync)) {
+            return false;
+        }
+        int deletedRows = segment.rowCount() - segment.liveCount();
+        if (deletedRows >= minTombstones && deletedRows > segment.rowCount() * tombstoneRatio) {
+            rewrite(username, segment, segment.liveCount());
+        }
+        return true;
+    }
+
+    /**
+     * Live sales for a user, materialized as Products
+     */
+    public List<Product> readAll(String username) throws IOException {
+        Segment segment = open(username);
+        if (segment == null) {
+            return new ArrayList<>();
+        }
+        List<Product> sales = new ArrayList<>(segment.liveCount());
+        int[] sharedCodes = new int[segment.dictionarySize()];
+        Arrays.fill(sharedCodes, SalesDictionary.NULL);
+        for (int row = 0, n = segment.rowCount(); row < n; row++) {
+            if (!segment.isDeleted(row)) {
+                sales.add(segment.product(row, sharedCodes));
+            }
+        }
+        return sales;
+    }
+
+    /**
+     * Highest sale ID ever stored for a user, 0 if none
+     */
+    public int maxId(String username) {
+        try {
+            Segment segment = open(username);
+            return segment == null ? 0 : segment.maxId();
+        } catch (IOException e) {
+            System.err.println("Error reading sales segment: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Replace a user's segment with one holding exactly the given sales.
+     * The new dictionary goes to the next generation's file and the new segment to a
+     * temp file; renaming the segment into place switches both at once, so a crash
+     * at any point leaves either the old pair or the new pair.
+     */
+    public void replace(String username, List<Product> sales) throws IOException {
+        Segment old = open(username);
+        int oldGeneration = old == null ? -1 : old.dictionaryGeneration();
+        int generation = oldGeneration + 1;
+
+        File dictionaryTmp = new File(dictionaryFile(username, generation).getPath() + ".tmp");
+        Files.deleteIfExists(dictionaryTmp.toPath());
+        Dictionary dictionary = Dictionary.open(dictionaryTmp);
+        File tmp = new File(segmentFile(username).getPath() + ".tmp");
+        Segment segment = Segment.create(tmp, capacityFor(sales.size()), generation, dictionary);
+        try {
+            segment.append(sales, true);
+        } finally {
+            segment.close();
+        }
+        Files.move(dictionaryTmp.toPath(), dictionaryFile(username, generation).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        segments.remove(username);
+        if (old != null) {
+            old.close();
+        }
+        Files.move(tmp.toPath(), segmentFile(username).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (old != null) {
+            // No segment refers to the old dictionary any more
+            Files.deleteIfExists(dictionaryFile(username, oldGeneration).toPath());
+        }
+    }
+
+    // Copy live rows into a new segment sized for at least `rows`, then swap it in.
+    // The dictionary is shared, so codes are copied as-is.
+    private Segment rewrite(String username, Segment old, int rows) throws IOException {
+        File tmp = new File(segmentFile(username).getPath() + ".tmp");
+        Segment fresh = Segment.create(tmp, capacityFor(rows), old.dictionaryGeneration(), old.dictionary);
+        fresh.copyLiveRows(old);
+        fresh.close();
+        old.close();
+        Files.move(tmp.toPath(), segmentFile(username).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Segment reopened = Segment.open(segmentFile(username), old.dictionary);
+        segments.put(username, reopened);
+        return reopened;
+    }
+
+    private static int capacityFor(int rows) throws IOException {
+        int capacity = MIN_CAPACITY;
+        while (capacity < rows * 2L && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        if (capacity < rows) {
+            throw new IOException("Sales segment cannot hold " + rows + " rows");
+        }
+        return capacity;
+    }
+
+    public File segmentFile(String username) {
+        return new File(filePrefix + username + ".col");
+    }
+
+    private File dictionaryFile(String username, int generation) {
+        return new File(filePrefix + username + (generation == 0 ? "" : "." + generation) + ".dict");
+    }
+
+    /**
+     * One user's mapped segment. Column values are read with absolute gets on the
+     * mapped buffer, so scans touch only the columns they need.
+     */
+    public static final class Segment implements SalesRows.Source {
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+        private final Dictionary dictionary;
+        private final int capacity;
+
+        // Column start offsets
+        private final int ids;
+        private final int quantities;
+        private final int products;
+        private final int categories;
+        private final int customers;
+        private final int amounts;
+        private final int timestamps;
+        private final int deleted;
+
+        // Sale ID to newest row with that ID; built on the first delete, then kept
+        // up to date by appends
+        private RowIndex rowIndex;
+
+        // SalesDictionary code by segment code, NULL until looked up; shared by the
+        // cursors, which may run in parallel and store the same value for a code
+        private volatile int[] cursorCodes = new int[0];
+
+        private Segment(FileChannel channel, MappedByteBuffer map, Dictionary dictionary) throws IOException {
+            this.channel = channel;
+            this.map = map;
+            this.dictionary = dictionary;
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw new IOException("Not a sales segment");
+            }
+            this.capacity = map.getInt(CAPACITY_OFFSET);
+            this.ids = HEADER_BYTES;
+            this.quantities = ids + capacity * 4;
+            this.products = quantities + capacity * 4;
+            this.categories = products + capacity * 4;
+            this.customers = categories + capacity * 4;
+            this.amounts = customers + capacity * 4;
+            this.timestamps = amounts + capacity * 8;
+            this.deleted = timestamps + capacity * 8;
+        }
+
+        static Segment create(File file, int capacity, int dictionaryGeneration, Dictionary dictionary) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES + (long) capacity * ROW_BYTES);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(CAPACITY_OFFSET, capacity);
+            map.putInt(DICTIONARY_OFFSET, dictionaryGeneration);
+            return new Segment(channel, map, dictionary);
+        }
+
+        /**
+         * Open a segment and the dictionary generation its header names
+         */
+        static Segment open(File file, IntFunction<File> dictionaryFiles) throws IOException {
+            return open(file, dictionaryFiles, null);
+        }
+
+        static Segment open(File file, Dictionary dictionary) throws IOException {
+            return open(file, null, dictionary);
+        }
+
+        private static Segment open(File file, IntFunction<File> dictionaryFiles, Dictionary dictionary) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (dictionary == null) {
+                    dictionary = Dictionary.open(dictionaryFiles.apply(map.getInt(DICTIONARY_OFFSET)));
+                }
+                return new Segment(channel, map, dictionary);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        void append(List<Product> sales, boolean fsync) throws IOException {
+            int[] productCodes = new int[sales.size()];
+            int[] categoryCodes = new int[sales.size()];
+            int[] customerCodes = new int[sales.size()];
+            for (int i = 0; i < sales.size(); i++) {
+                Product sale = sales.get(i);
+                productCodes[i] = dictionary.code(sale.getProductName());
+                categoryCodes[i] = dictionary.code(sale.getCategory());
+                customerCodes[i] = dictionary.code(sale.getCustomerName());
+            }
+            // New strings must be on disk before rows that refer to them
+            dictionary.flush(fsync);
+
+            int row = rowCount();
+            int maxId = maxId();
+            for (int i = 0; i < sales.size(); i++, row++) {
+                Product sale = sales.get(i);
+                map.putInt(ids + row * 4, sale.getId());
+                map.putInt(quantities + row * 4, sale.getQuantity());
+                map.putInt(products + row * 4, productCodes[i]);
+                map.putInt(categories + row * 4, categoryCodes[i]);
+                map.putInt(customers + row * 4, customerCodes[i]);
+                map.putDouble(amounts + row * 8, sale.getSaleAmount());
+                map.putLong(timestamps + row * 8, sale.getSaleDate().toEpochSecond(ZoneOffset.UTC));
+                map.put(deleted + row, (byte) 0);
+                maxId = Math.max(maxId, sale.getId());
+                if (rowIndex != null) {
+                    rowIndex.put(sale.getId(), row);
+                }
+            }
+            map.putInt(MAX_ID_OFFSET, maxId);
+            // Publish the rows last
+            map.putInt(ROW_COUNT_OFFSET, row);
+            if (fsync) {
+                map.force();
+            }
+        }
+
+        boolean delete(int saleId, boolean fsync) {
+            if (rowIndex == null) {
+                rowIndex = new RowIndex(rowCount());
+                for (int row = 0, n = rowCount(); row < n; row++) {
+                    rowIndex.put(id(row), row);
+                }
+            }
+            int row = rowIndex.get(saleId);
+            if (row >= 0 && isDeleted(row)) {
+                // Only a duplicate ID can still have a live row; look for an older one
+                row = -1;
+                for (int r = rowIndex.get(saleId) - 1; r >= 0; r--) {
+                    if (id(r) == saleId && !isDeleted(r)) {
+                        row = r;
+                        break;
+                    }
+                }
+            }
+            if (row < 0) {
+                return false;
+            }
+            map.put(deleted + row, (byte) 1);
+            map.putInt(DELETED_COUNT_OFFSET, map.getInt(DELETED_COUNT_OFFSET) + 1);
+            if (fsync) {
+                map.force();
+            }
+            return true;
+        }
+
+        void copyLiveRows(Segment from) {
+            int row = 0;
+            for (int src = 0, n = from.rowCount(); src < n; src++) {
+                if (from.isDeleted(src)) {
+                    continue;
+                }
+                map.putInt(ids + row * 4, from.id(src));
+                map.putInt(quantities + row * 4, from.quantity(src));
+                map.putInt(products + row * 4, from.productCode(src));
+                map.putInt(categories + row * 4, from.categoryCode(src));
+                map.putInt(customers + row * 4, from.customerCode(src));
+                map.putDouble(amounts + row * 8, from.amount(src));
+                map.putLong(timestamps + row * 8, from.epochSecond(src));
+                row++;
+            }
+            map.putInt(MAX_ID_OFFSET, from.maxId());
+            map.putInt(ROW_COUNT_OFFSET, row);
+            map.force();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        // Header
+
+        public int capacity() { return capacity; }
+        @Override
+        public int rowCount() { return map.getInt(ROW_COUNT_OFFSET); }
+        public int liveCount() { return rowCount() - map.getInt(DELETED_COUNT_OFFSET); }
+        public int maxId() { return map.getInt(MAX_ID_OFFSET); }
+        int dictionaryGeneration() { return map.getInt(DICTIONARY_OFFSET); }
+
+        // Columns, by row
+
+        public int id(int row) { return map.getInt(ids + row * 4); }
+        public int quantity(int row) { return map.getInt(quantities + row * 4); }
+        public int productCode(int row) { return map.getInt(products + row * 4); }
+        public int categoryCode(int row) { return map.getInt(categories + row * 4); }
+        public int customerCode(int row) { return map.getInt(customers + row * 4); }
+        public double amount(int row) { return map.getDouble(amounts + row * 8); }
+        public long epochSecond(int row) { return map.getLong(timestamps + row * 8); }
+        public boolean isDeleted(int row) { return map.get(deleted + row) != 0; }
+
+        /**
+         * Dictionary string for a product/category/customer code
+         */
+        public String string(int code) { return dictionary.string(code); }
+
+        /**
+         * Number of dictionary codes; every code is below this
+         */
+        public int dictionarySize() { return dictionary.size(); }
+
+        /**
+         * Materialize a row, its customer name the segment dictionary's string.
+         * sharedCodes caches SalesDictionary codes by segment code
+         * (NULL until looked up), so each distinct string is looked up once per read.
+         */
+        Product product(int row, int[] sharedCodes) {
+            return Product.ofCodes(id(row), sharedCode(productCode(row), sharedCodes),
+                sharedCode(categoryCode(row), sharedCodes), amount(row), quantity(row),
+                LocalDateTime.ofEpochSecond(epochSecond(row), 0, ZoneOffset.UTC),
+                string(customerCode(row)));
+        }
+
+        private int sharedCode(int code, int[] sharedCodes) {
+            int shared = sharedCodes[code];
+            if (shared == SalesDictionary.NULL) {
+                sharedCodes[code] = shared = SalesDictionary.code(string(code));
+            }
+            return shared;
+        }
+
+        /**
+         * Cursor over the live rows among rows [from, to), with product names and
+         * categories as SalesDictionary codes
+         */
+        @Override
+        public SalesRows cursor(int from, int to) {
+            return new Rows(this, cursorCodes(), from, Math.min(to, rowCount()));
+        }
+
+        private synchronized int[] cursorCodes() {
+            int[] codes = cursorCodes;
+            if (codes.length < dictionary.size()) {
+                int filled = codes.length;
+                codes = Arrays.copyOf(codes, dictionary.size());
+                Arrays.fill(codes, filled, codes.length, SalesDictionary.NULL);
+                cursorCodes = codes;
+            }
+            return codes;
+        }
+
+        private static final class Rows implements SalesRows {
+            private final Segment segment;
+            private final int[] codes;
+            private final int end;
+            private int row;
+
+            Rows(Segment segment, int[] codes, int from, int end) {
+                this.segment = segment;
+                this.codes = codes;
+                this.end = end;
+                this.row = from - 1;
+            }
+
+            @Override
+            public boolean next() {
+                while (++row < end) {
+                    if (!segment.isDeleted(row)) {
+                        return true;
+                    }
+                }
+                row = end;
+                return false;
+            }
+
+            @Override public int id() { return segment.id(row); }
+            @Override public int productCode() { return segment.sharedCode(segment.productCode(row), codes); }
+            @Override public int categoryCode() { return segment.sharedCode(segment.categoryCode(row), codes); }
+            @Override public String customerName() { return segment.string(segment.customerCode(row)); }
+            @Override public int quantity() { return segment.quantity(row); }
+            @Override public double amount() { return segment.amount(row); }
+            @Override public long epochSecond() { return segment.epochSecond(row); }
+            @Override public Product product() { return segment.product(row, codes); }
+
+            @Override
+            public void close() {
+            }
+        }
+    }
+
+    /**
+     * Open-addressing map from sale ID to row, -1 when absent
+     */
+    private static final class RowIndex {
+        // Linear probing; used marks occupied slots so any int ID can be a key
+        private int[] keys;
+        private int[] rows;
+        private boolean[] used;
+        private int size = 0;
+
+        RowIndex(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2L) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            rows = new int[capacity];
+            used = new boolean[capacity];
+        }
+
+        int get(int id) {
+            int mask = keys.length - 1;
+            for (int i = slot(id, mask); used[i]; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    return rows[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(int id, int row) {
+            int mask = keys.length - 1;
+            int i = slot(id, mask);
+            while (used[i] && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (!used[i]) {
+                used[i] = true;
+                keys[i] = id;
+                if (++size * 2 > keys.length) {
+                    rows[i] = row;
+                    grow();
+                    return;
+                }
+            }
+            rows[i] = row;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldRows = rows;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            rows = new int[keys.length];
+            used = new boolean[keys.length];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldUsed[j]) {
+                    int i = slot(oldKeys[j], mask);
+                    while (used[i]) {
+                        i = (i + 1) & mask;
+                    }
+                    used[i] = true;
+                    keys[i] = oldKeys[j];
+                    rows[i] = oldRows[j];
+                }
+            }
+        }
+
+        private static int slot(int id, int mask) {
+            int hash = id * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * Append-only string dictionary shared by a user's text columns
+     */
+    static final class Dictionary {
+        private final File file;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private int flushedSize = 0;
+
+        private Dictionary(File file) {
+            this.file = file;
+        }
+
+        static Dictionary open(File file) throws IOException {
+            Dictionary dictionary = new Dictionary(file);
+            if (!file.exists()) {
+                return dictionary;
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < 0 || length > in.remaining() - 4) {
+                    break; // Torn write at the end; rows never reference it
+                }
+                in.getInt();
+                String value = new String(bytes, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+                dictionary.codes.putIfAbsent(value, dictionary.strings.size());
+                dictionary.strings.add(value);
+            }
+            dictionary.flushedSize = dictionary.strings.size();
+            if (in.position() < bytes.length) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(in.position());
+                }
+            }
+            return dictionary;
+        }
+
+        int code(String value) {
+            String text = String.valueOf(value);
+            Integer code = codes.get(text);
+            if (code != null) {
+                return code;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            pending.write(bytes.length >>> 24);
+            pending.write(bytes.length >>> 16);
+            pending.write(bytes.length >>> 8);
+            pending.write(bytes.length);
+            pending.write(bytes, 0, bytes.length);
+            codes.put(text, strings.size());
+            strings.add(text);
+            return strings.size() - 1;
+        }
+
+        void flush(boolean fsync) throws IOException {
+            if (pending.size() == 0) {
+                return;
+            }
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                pending.writeTo(out);
+                if (fsync) {
+                    out.getFD().sync();
+                }
+            } catch (IOException e) {
+                // Forget the unwritten strings so no row can be given their codes
+                for (int code = strings.size() - 1; code >= flushedSize; code--) {
+                    codes.remove(strings.remove(code), code);
+                }
+                throw e;
+            } finally {
+                pending.reset();
+            }
+            flushedSize = strings.size();
+        }
+
+        String string(int code) {
+            return strings.get(code);
+        }
+
+        int size() {
+            return strings.size();
+        }
+    }
+}
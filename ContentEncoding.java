@@ -0,0 +1,86 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ContentEncoding - Response compression negotiated from Accept-Encoding
+ * gzip is preferred over deflate (zlib format, as HTTP defines it); an encoding
+ * with q=0 is refused. Bodies under http.compression.minBytes are never worth
+ * compressing and are sent as they are.
+ */
+public final class ContentEncoding {
+    public static final int MIN_BYTES = Integer.getInteger("http.compression.minBytes", 1024);
+
+    private static final String[] SUPPORTED = {"gzip", "deflate"};
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Best supported encoding the client accepts, or null for identity
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        for (String encoding : SUPPORTED) {
+            if (accepts(acceptEncoding, encoding)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    // Whether the header gives the encoding, or failing that *, a non-zero quality
+    private static boolean accepts(String acceptEncoding, String encoding) {
+        Double wildcard = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String name = fields[0].trim();
+            if (name.equalsIgnoreCase(encoding)) {
+                return quality(fields) > 0;
+            }
+            if (name.equals("*")) {
+                wildcard = quality(fields);
+            }
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
+    private static double quality(String[] fields) {
+        for (int i = 1; i < fields.length; i++) {
+            String param = fields[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Wrap a response stream so everything written to it is compressed on the way out
+     */
+    public static OutputStream wrap(OutputStream out, String encoding) throws IOException {
+        return "gzip".equals(encoding) ? new GZIPOutputStream(out, 8192) : new DeflaterOutputStream(out);
+    }
+
+    /**
+     * Compress a whole body
+     */
+    public static byte[] encode(byte[] body, String encoding) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = wrap(buffer, encoding)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -1,5 +1,11 @@
 import java.io.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Database - File-based data persistence
@@ -8,9 +14,87 @@ import java.util.*;
 public class Database {
     private static final String USERS_FILE = "data/users.txt";
     private static final String SALES_FILE_PREFIX = "data/sales_";
+
+    // In-memory user index, loaded once from users.txt and kept in sync by saveUser
+    private static final Map<String, User> users = new ConcurrentHashMap<>();
+    private static final Object usersFileLock = new Object();
+
+    // Parsed sales lists, written through by saveSale/deleteSale
+    private static final SalesCache salesCache = new SalesCache(Database::salesEvicted);
+
+    // With -Dsales.offheap=true, resident sales are kept in direct buffers instead of
+    // the sales cache. getSalesRows reads them in place; getUserSales materializes
+    // short-lived Products from them, so scans over all sales should use getSalesRows
+    private static final boolean OFF_HEAP = Boolean.getBoolean("sales.offheap");
+    private static final OffHeapSalesStore offHeapStore = OFF_HEAP ? new OffHeapSalesStore(Database::salesEvicted) : null;
+
+    // Running analytics per user, built on first request and updated by saveSale/deleteSale
+    private static final Map<String, SalesAggregates> aggregates = new ConcurrentHashMap<>();
+
+    // Date-ordered index per user for from/to queries, built on first use and
+    // updated by saveSale/deleteSale like the aggregates. Dropped with the user's
+    // resident sales, as are the sketches and rollups below. Off-heap tables keep
+    // a date order of their own rows instead, so this is used for cached lists only.
+    private static final Map<String, SalesTimeIndex> timeIndexes = new ConcurrentHashMap<>();
+
+    // Approximate top products and distinct customers per user, built on first use and
+    // updated on insert and delete. Distinct customers cannot be subtracted, so a
+    // delete also queues a rebuild on a background thread.
+    private static final Map<String, SalesSketches> sketches = new ConcurrentHashMap<>();
+    private static final Set<String> pendingSketchRebuilds = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService sketchRebuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sketch-rebuilder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Hour/day/month rollups per user for date-range analytics
+    private static final SalesRollups rollups = new SalesRollups(SALES_FILE_PREFIX);
+
+    // Per-user data version, bumped by every add and delete; validates ETags and cached responses
+    private static final Map<String, AtomicLong> salesVersions = new ConcurrentHashMap<>();
+
+    // Open dashboard event streams, fed a delta by every add and delete
+    private static final SalesEventHub salesEvents = new SalesEventHub();
+
+    // Sales storage engine, chosen at startup with -Dsales.storage=text|columnar.
+    // Columnar segments are created from existing text files with SalesMigration.
+    private static final boolean COLUMNAR = "columnar".equalsIgnoreCase(System.getProperty("sales.storage", "text"));
+    private static final ColumnarSalesStore columnarStore = new ColumnarSalesStore(SALES_FILE_PREFIX);
+
+    // Per-user sale ID counters, recovered from a persisted high-water mark
+    private static final SaleIdAllocator saleIds = COLUMNAR
+        ? new SaleIdAllocator(SALES_FILE_PREFIX, columnarStore::maxId)
+        : new SaleIdAllocator(SALES_FILE_PREFIX);
+
+    // Text storage: deletes append tombstones; files are compacted in the background
+    private static final String TOMBSTONE_PREFIX = String.valueOf(SalesRecordParser.TOMBSTONE);
+    private static final SalesCompactor compactor = new SalesCompactor(SALES_FILE_PREFIX);
+
+    // Appends go through the group committer; fsync each flush if -Dsales.fsync=true
+    private static final boolean FSYNC = Boolean.getBoolean("sales.fsync");
+    private static final GroupCommitter groupCommitter = new GroupCommitter(Database::writeSales);
+
+    // Timings and byte/row counts for /api/metrics
+    private static final Metrics.Operation USERS_LOAD = Metrics.parseOperation("users.load");
+    private static final Metrics.Operation USERS_APPEND = Metrics.operation("users.append");
+    private static final Metrics.Operation SALES_READ = Metrics.parseOperation("sales.read");
+    private static final Metrics.Operation SALES_APPEND = Metrics.operation("sales.append");
+    private static final Metrics.Operation SALES_DELETE = Metrics.operation("sales.delete");
+    private static final Metrics.Operation AGGREGATES_BUILD = Metrics.operation("aggregates.build");
+    private static final Metrics.Operation ROLLUPS_QUERY = Metrics.operation("rollups.query");
+
+    // Striped locks serializing file access and cache updates per user
+    private static final int LOCK_STRIPES = 64;
+    private static final Object[] salesLocks = new Object[LOCK_STRIPES];
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            salesLocks[i] = new Object();
+        }
+    }
     
     /**
-     * Initialize database files if they don't exist
+     * Initialize database files if they don't exist and load the user index
      */
     public static void initialize() {
         File dataDir = new File("data");
@@ -26,38 +110,65 @@ public class Database {
                 System.err.println("Error creating users file: " + e.getMessage());
             }
         }
-    }
 
-    /**
-     * Save user to database
-     */
-    public static boolean saveUser(User user) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(USERS_FILE, true))) {
-            writer.write(user.toFileString());
-            writer.newLine();
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error saving user: " + e.getMessage());
-            return false;
-        }
+        loadUsers();
     }
 
     /**
-     * Get user by username
+     * Load all users from users.txt into the in-memory index
      */
-    public static User getUser(String username) {
+    private static void loadUsers() {
+        long start = USERS_LOAD.start();
+        users.clear();
         try (BufferedReader reader = new BufferedReader(new FileReader(USERS_FILE))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 User user = User.fromFileString(line);
-                if (user != null && user.getUsername().equals(username)) {
-                    return user;
+                if (user != null) {
+                    // Keep the first record for a username, matching the old linear scan
+                    users.putIfAbsent(user.getUsername(), user);
                 }
             }
         } catch (IOException e) {
             System.err.println("Error reading users: " + e.getMessage());
         }
-        return null;
+        USERS_LOAD.finish(start, new File(USERS_FILE).length(), users.size());
+    }
+
+    /**
+     * Save user to database.
+     * Returns false if the username is already taken or the write fails;
+     * the username is claimed atomically so concurrent registrations cannot both succeed.
+     */
+    public static boolean saveUser(User user) {
+        if (users.putIfAbsent(user.getUsername(), user) != null) {
+            return false;
+        }
+
+        synchronized (usersFileLock) {
+            long start = USERS_APPEND.start();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(USERS_FILE, true))) {
+                String record = user.toFileString();
+                writer.write(record);
+                writer.newLine();
+                USERS_APPEND.finish(start, record.length() + 1, 1);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error saving user: " + e.getMessage());
+                users.remove(user.getUsername(), user);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Get user by username
+     */
+    public static User getUser(String username) {
+        if (username == null) {
+            return null;
+        }
+        return users.get(username);
     }
 
     /**
@@ -68,24 +179,190 @@ public class Database {
     }
 
     /**
-     * Save product/sale for a user
+     * Save product/sale for a user.
+     * Concurrent saves for the same user are grouped into shared flushes.
      */
     public static boolean saveSale(String username, Product product) {
-        String filename = SALES_FILE_PREFIX + username + ".txt";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, true))) {
-            writer.write(product.toFileString());
-            writer.newLine();
+        return groupCommitter.append(username, Collections.singletonList(product));
+    }
+
+    /**
+     * Save a batch of sales for a user with a single write.
+     * The sales must already carry IDs from allocateSaleIds.
+     */
+    public static boolean saveSales(String username, List<Product> sales) {
+        if (sales.isEmpty()) {
             return true;
-        } catch (IOException e) {
-            System.err.println("Error saving sale: " + e.getMessage());
-            return false;
+        }
+        return groupCommitter.append(username, sales);
+    }
+
+    /**
+     * Append one group of sales to the user's storage, then update cached state.
+     * Called by the group committer, one flush at a time per user.
+     */
+    private static boolean writeSales(String username, List<Product> sales) {
+        synchronized (salesLock(username)) {
+            long start = SALES_APPEND.start();
+            try {
+                long bytes = 0;
+                if (COLUMNAR) {
+                    columnarStore.append(username, sales, FSYNC);
+                } else {
+                    bytes = appendSalesFile(username, sales);
+                    compactor.recordAppended(username, sales.size());
+                }
+                SALES_APPEND.finish(start, bytes, sales.size());
+            } catch (IOException e) {
+                System.err.println("Error saving sale: " + e.getMessage());
+                return false;
+            }
+            if (OFF_HEAP) {
+                offHeapStore.addSales(username, sales);
+            } else {
+                salesCache.addSales(username, sales);
+            }
+            SalesAggregates userAggregates = aggregates.get(username);
+            if (userAggregates != null) {
+                sales.forEach(userAggregates::add);
+            }
+            SalesTimeIndex index = timeIndexes.get(username);
+            if (index != null) {
+                index.add(sales);
+            }
+            SalesSketches userSketches = sketches.get(username);
+            if (userSketches != null) {
+                sales.forEach(userSketches::add);
+            }
+            rollups.added(username, sales);
+            bumpSalesVersion(username);
+            if (salesEvents.hasSubscribers(username)) {
+                salesEvents.salesAdded(username, sales, getSalesAggregates(username));
+            }
+            return true;
+        }
+    }
+
+    // Returns the number of bytes appended
+    private static long appendSalesFile(String username, List<Product> sales) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(SALES_FILE_PREFIX + username + ".txt", true)) {
+            long before = out.getChannel().size();
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out));
+            for (Product product : sales) {
+                writer.write(product.toFileString());
+                writer.newLine();
+            }
+            writer.flush();
+            if (FSYNC) {
+                out.getFD().sync();
+            }
+            return out.getChannel().size() - before;
         }
     }
 
     /**
-     * Get all sales for a user
+     * Get all sales for a user.
+     * The returned list is a shared, read-only snapshot.
      */
     public static List<Product> getUserSales(String username) {
+        if (OFF_HEAP) {
+            return getResidentSales(username);
+        }
+        List<Product> cached = salesCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
+        synchronized (salesLock(username)) {
+            // Re-check under the lock so a concurrent load or write is not lost
+            cached = salesCache.peek(username);
+            if (cached != null) {
+                return cached;
+            }
+            List<Product> sales = loadSales(username);
+            salesCache.put(username, sales);
+            return Collections.unmodifiableList(sales);
+        }
+    }
+
+    // getUserSales over the off-heap store: a new list per call, so the Products are
+    // garbage once the request is done instead of staying resident
+    private static List<Product> getResidentSales(String username) {
+        List<Product> resident = readResidentSales(username);
+        if (resident != null) {
+            return resident;
+        }
+
+        synchronized (salesLock(username)) {
+            resident = readResidentSales(username);
+            if (resident != null) {
+                return resident;
+            }
+            List<Product> sales = loadSales(username);
+            offHeapStore.put(username, sales);
+            return Collections.unmodifiableList(sales);
+        }
+    }
+
+    private static List<Product> readResidentSales(String username) {
+        try (OffHeapSalesStore.Cursor rows = offHeapStore.cursor(username)) {
+            if (rows == null) {
+                return null;
+            }
+            List<Product> sales = new ArrayList<>();
+            while (rows.next()) {
+                sales.add(rows.product());
+            }
+            return Collections.unmodifiableList(sales);
+        }
+    }
+
+    /**
+     * A user's sales for cursor scans, loading them if needed. Off-heap sales are
+     * read in place without creating Products; otherwise this is the getUserSales
+     * list. Close the snapshot when done so an evicted table's buffers can be freed.
+     */
+    public static SalesRows.Snapshot getSalesRows(String username) {
+        if (!OFF_HEAP) {
+            return SalesRows.of(getUserSales(username));
+        }
+        SalesRows.Snapshot rows = offHeapStore.snapshot(username);
+        if (rows != null) {
+            return rows;
+        }
+
+        synchronized (salesLock(username)) {
+            rows = offHeapStore.snapshot(username);
+            if (rows != null) {
+                return rows;
+            }
+            List<Product> sales = loadSales(username);
+            offHeapStore.put(username, sales);
+            // Null if the sales alone exceed the off-heap budget, or were evicted at once
+            rows = offHeapStore.snapshot(username);
+            return rows != null ? rows : SalesRows.of(Collections.unmodifiableList(sales));
+        }
+    }
+
+    private static List<Product> loadSales(String username) {
+        if (!COLUMNAR) {
+            return readSalesFile(username);
+        }
+        long start = SALES_READ.start();
+        try {
+            List<Product> sales = columnarStore.readAll(username);
+            SALES_READ.finish(start, columnarStore.segmentFile(username).length(), sales.size());
+            return sales;
+        } catch (IOException e) {
+            System.err.println("Error reading sales: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Parse a user's sales file from disk, dropping records that have a tombstone
+     */
+    private static List<Product> readSalesFile(String username) {
         List<Product> sales = new ArrayList<>();
         String filename = SALES_FILE_PREFIX + username + ".txt";
         
@@ -94,50 +371,423 @@ public class Database {
             return sales; // Return empty list if no sales yet
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Product product = Product.fromFileString(line);
-                if (product != null) {
+        long start = SALES_READ.start();
+        Set<Integer> deleted = new HashSet<>();
+        try (Reader reader = new FileReader(filename)) {
+            SalesRecordParser.parse(reader, new SalesRecordParser.Sink() {
+                @Override
+                public void record(Product product) {
                     sales.add(product);
                 }
-            }
+
+                @Override
+                public void tombstone(int saleId) {
+                    deleted.add(saleId);
+                }
+            });
         } catch (IOException e) {
             System.err.println("Error reading sales: " + e.getMessage());
         }
         
+        int records = sales.size();
+        SALES_READ.finish(start, file.length(), records + deleted.size());
+        if (!deleted.isEmpty()) {
+            sales.removeIf(p -> deleted.contains(p.getId()));
+        }
+        compactor.fileLoaded(username, records, deleted.size());
         return sales;
     }
 
+    static boolean isTombstone(String line) {
+        return line.startsWith(TOMBSTONE_PREFIX);
+    }
+
+    static int tombstoneId(String line) {
+        try {
+            return Integer.parseInt(line.substring(TOMBSTONE_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Error parsing tombstone: " + line);
+            return -1;
+        }
+    }
+
+    /**
+     * Allocate count consecutive sale IDs for a user, returning the first
+     */
+    public static int allocateSaleIds(String username, int count) {
+        return saleIds.nextBlock(username, count);
+    }
+
     /**
-     * Get next sale ID for a user
+     * Allocate the next sale ID for a user.
+     * O(1) after the first call and unique under concurrent adds; IDs are never reused.
      */
     public static int getNextSaleId(String username) {
-        List<Product> sales = getUserSales(username);
-        if (sales.isEmpty()) {
-            return 1;
-        }
-        return sales.stream().mapToInt(Product::getId).max().orElse(0) + 1;
+        return saleIds.next(username);
     }
 
     /**
-     * Delete a sale by ID
+     * Outcome of deleteSale
      */
-    public static boolean deleteSale(String username, int saleId) {
-        List<Product> sales = getUserSales(username);
-        sales.removeIf(p -> p.getId() == saleId);
-        
-        // Rewrite file
+    public enum DeleteResult { DELETED, NOT_FOUND, FAILED }
+
+    /**
+     * Delete a sale by ID.
+     * Text storage appends a tombstone record instead of rewriting the file; the
+     * compactor rewrites the file in the background once enough tombstones accumulate.
+     * Columnar storage flags the row in place.
+     */
+    public static DeleteResult deleteSale(String username, int saleId) {
         String filename = SALES_FILE_PREFIX + username + ".txt";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (Product product : sales) {
-                writer.write(product.toFileString());
-                writer.newLine();
+        synchronized (salesLock(username)) {
+            // Streams need the deleted row, so make sure the sales are cached first
+            boolean publish = salesEvents.hasSubscribers(username);
+            if (publish) {
+                getSalesRows(username).close();
             }
-            return true;
+            long start = SALES_DELETE.start();
+            try {
+                long bytes = 0;
+                if (COLUMNAR) {
+                    if (!columnarStore.delete(username, saleId, FSYNC)) {
+                        return DeleteResult.NOT_FOUND;
+                    }
+                } else {
+                    if (!new File(filename).exists() || !saleMayExist(username, saleId)) {
+                        return DeleteResult.NOT_FOUND;
+                    }
+                    String tombstone = TOMBSTONE_PREFIX + saleId;
+                    try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, true))) {
+                        writer.write(tombstone);
+                        writer.newLine();
+                    }
+                    bytes = tombstone.length() + 1;
+                }
+                SALES_DELETE.finish(start, bytes, 1);
+            } catch (IOException e) {
+                System.err.println("Error deleting sale: " + e.getMessage());
+                return DeleteResult.FAILED;
+            }
+
+            // Update cached state from the resident sales if there are any, otherwise drop it
+            List<Product> removed = removeResidentSale(username, saleId);
+            SalesAggregates userAggregates = aggregates.get(username);
+            SalesTimeIndex index = timeIndexes.get(username);
+            SalesSketches userSketches = sketches.get(username);
+            if (removed == null) {
+                aggregates.remove(username);
+                timeIndexes.remove(username);
+                sketches.remove(username);
+                rollups.invalidate(username);
+                if (publish) {
+                    // Too large to keep resident, so the deleted row is unknown
+                    salesEvents.salesChanged(username);
+                }
+            } else {
+                if (userSketches != null && !removed.isEmpty()) {
+                    scheduleSketchRebuild(username);
+                }
+                for (Product sale : removed) {
+                    if (userAggregates != null) userAggregates.remove(sale);
+                    if (index != null) index.remove(sale);
+                    if (userSketches != null) userSketches.remove(sale);
+                    rollups.removed(username, sale);
+                    if (publish) {
+                        salesEvents.saleDeleted(username, sale, getSalesAggregates(username));
+                    }
+                }
+            }
+            bumpSalesVersion(username);
+            if (!COLUMNAR) {
+                compactor.tombstoneAppended(username);
+            }
+            return DeleteResult.DELETED;
+        }
+    }
+
+    // Whether a text-storage delete may name a stored sale: checked against the
+    // resident sales if there are any, otherwise against the IDs handed out so far,
+    // so no tombstone is written for an ID that was never issued
+    private static boolean saleMayExist(String username, int saleId) {
+        if (OFF_HEAP) {
+            OffHeapSalesStore.Table table = offHeapStore.get(username);
+            if (table != null) {
+                return table.contains(saleId);
+            }
+        } else {
+            List<Product> cached = salesCache.peek(username);
+            if (cached != null) {
+                for (Product sale : cached) {
+                    if (sale.getId() == saleId) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return saleId > 0 && saleId <= saleIds.current(username);
+    }
+
+    /**
+     * Drop a deleted sale from the resident sales and return the removed sales,
+     * or null if the user's sales are not resident
+     */
+    private static List<Product> removeResidentSale(String username, int saleId) {
+        if (OFF_HEAP) {
+            OffHeapSalesStore.Table table = offHeapStore.get(username);
+            if (table == null) {
+                return null;
+            }
+            Product sale = table.delete(saleId);
+            if (sale == null) {
+                // Evicted under us: nothing resident to update from
+                return table.isReleased() ? null : Collections.emptyList();
+            }
+            return Collections.singletonList(sale);
+        }
+        List<Product> cached = salesCache.peek(username);
+        if (cached == null) {
+            return null;
+        }
+        salesCache.removeSale(username, saleId);
+        List<Product> removed = new ArrayList<>();
+        for (Product sale : cached) {
+            if (sale.getId() == saleId) {
+                removed.add(sale);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Get a user's sales with from <= saleDate < to, in date order.
+     * Either bound may be null; with neither, this is getUserSales.
+     * Off-heap, this is a new list per call, like getUserSales.
+     */
+    public static List<Product> getUserSales(String username, LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return getUserSales(username);
+        }
+        if (OFF_HEAP) {
+            List<Product> sales = new ArrayList<>();
+            try (SalesRows.Snapshot range = getSalesRows(username, from, to); SalesRows rows = range.cursor()) {
+                while (rows.next()) {
+                    sales.add(rows.product());
+                }
+            }
+            return Collections.unmodifiableList(sales);
+        }
+        SalesTimeIndex index = timeIndexes.get(username);
+        if (index == null) {
+            synchronized (salesLock(username)) {
+                // Not computeIfAbsent: loading the sales can evict other users from this map
+                index = timeIndexes.get(username);
+                if (index == null) {
+                    index = SalesTimeIndex.of(getUserSales(username));
+                    timeIndexes.put(username, index);
+                }
+            }
+        }
+        return index.range(from, to);
+    }
+
+    /**
+     * A user's sales with from <= saleDate < to, in date order, for cursor scans.
+     * Either bound may be null; with neither, this is getSalesRows. Off-heap sales
+     * are read in place through their table's date order; otherwise this is the
+     * getUserSales range. Close the snapshot when done.
+     */
+    public static SalesRows.Snapshot getSalesRows(String username, LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return getSalesRows(username);
+        }
+        if (!OFF_HEAP) {
+            return SalesRows.of(getUserSales(username, from, to));
+        }
+        long fromSecond = from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC);
+        long toSecond = to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC);
+        SalesRows.Snapshot rows = offHeapStore.range(username, fromSecond, toSecond);
+        if (rows != null) {
+            return rows;
+        }
+
+        synchronized (salesLock(username)) {
+            rows = offHeapStore.range(username, fromSecond, toSecond);
+            if (rows != null) {
+                return rows;
+            }
+            List<Product> sales = loadSales(username);
+            offHeapStore.put(username, sales);
+            rows = offHeapStore.range(username, fromSecond, toSecond);
+            // Too large to keep resident: index this load only
+            return rows != null ? rows : SalesRows.of(SalesTimeIndex.of(sales).range(from, to));
+        }
+    }
+
+    /**
+     * Approximate analytics sketches for a user, building them from the sales on first use
+     */
+    public static SalesSketches getSalesSketches(String username) {
+        SalesSketches userSketches = sketches.get(username);
+        if (userSketches != null) {
+            return userSketches;
+        }
+
+        synchronized (salesLock(username)) {
+            userSketches = sketches.get(username);
+            if (userSketches == null) {
+                try (SalesRows.Snapshot sales = getSalesRows(username)) {
+                    userSketches = SalesSketches.of(sales);
+                }
+                sketches.put(username, userSketches);
+            }
+            return userSketches;
+        }
+    }
+
+    private static void scheduleSketchRebuild(String username) {
+        if (pendingSketchRebuilds.add(username)) {
+            sketchRebuilder.execute(() -> {
+                pendingSketchRebuilds.remove(username);
+                rebuildSketches(username);
+            });
+        }
+    }
+
+    // Built without the sales lock from a snapshot of the sales, then swapped in
+    // only if nothing was written meanwhile; otherwise tried again
+    private static void rebuildSketches(String username) {
+        if (!sketches.containsKey(username)) {
+            return;
+        }
+        long version = getSalesVersion(username);
+        SalesSketches rebuilt;
+        try (SalesRows.Snapshot sales = getSalesRows(username)) {
+            rebuilt = SalesSketches.of(sales);
+        }
+        synchronized (salesLock(username)) {
+            if (getSalesVersion(username) != version) {
+                scheduleSketchRebuild(username);
+            } else if (sketches.containsKey(username)) {
+                sketches.put(username, rebuilt);
+            }
+        }
+    }
+
+    /**
+     * Analytics for a user's sales with from <= saleDate < to, combined from rollups
+     */
+    public static AnalyticsKernel getSalesAnalytics(String username, LocalDateTime from, LocalDateTime to) {
+        long start = ROLLUPS_QUERY.start();
+        AnalyticsKernel kernel = rollups.query(username, from, to);
+        ROLLUPS_QUERY.finish(start, 0, kernel.getTotalSales());
+        return kernel;
+    }
+
+    /**
+     * Identifies the current state of a user's sales storage, so persisted rollups
+     * can tell whether they are stale. Every append or delete changes it.
+     * Returns null if the state cannot be read.
+     */
+    static String storageStamp(String username) {
+        if (!COLUMNAR) {
+            File file = new File(SALES_FILE_PREFIX + username + ".txt");
+            return "text:" + file.length() + ":" + file.lastModified();
+        }
+        try {
+            ColumnarSalesStore.Segment segment = columnarStore.open(username);
+            return segment == null ? "columnar:0"
+                : "columnar:" + segment.rowCount() + ":" + segment.liveCount() + ":" + segment.maxId();
         } catch (IOException e) {
-            System.err.println("Error deleting sale: " + e.getMessage());
-            return false;
+            return null;
         }
     }
+
+    /**
+     * Get running analytics for a user, building them from the sales list on first use
+     */
+    public static SalesAggregates getSalesAggregates(String username) {
+        SalesAggregates userAggregates = aggregates.get(username);
+        if (userAggregates != null) {
+            return userAggregates;
+        }
+
+        synchronized (salesLock(username)) {
+            return aggregates.computeIfAbsent(username, Database::buildAggregates);
+        }
+    }
+
+    // Columnar users whose sales are not resident are aggregated straight from the mapped columns
+    private static SalesAggregates buildAggregates(String username) {
+        long start = AGGREGATES_BUILD.start();
+        boolean resident = OFF_HEAP ? offHeapStore.get(username) != null : salesCache.peek(username) != null;
+        if (COLUMNAR && !resident) {
+            try {
+                ColumnarSalesStore.Segment segment = columnarStore.open(username);
+                if (segment != null) {
+                    SalesAggregates built = SalesAggregates.of(segment);
+                    AGGREGATES_BUILD.finish(start, 0, segment.liveCount());
+                    return built;
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading sales: " + e.getMessage());
+            }
+        }
+        try (SalesRows.Snapshot sales = getSalesRows(username)) {
+            SalesAggregates built = SalesAggregates.of(sales);
+            AGGREGATES_BUILD.finish(start, 0, sales.rowCount());
+            return built;
+        }
+    }
+
+    /**
+     * Version of a user's sales data, starting at 0 when the server starts.
+     * Kept in memory only, so it never touches the sales file.
+     */
+    public static long getSalesVersion(String username) {
+        AtomicLong version = salesVersions.get(String.valueOf(username));
+        return version == null ? 0 : version.get();
+    }
+
+    private static void bumpSalesVersion(String username) {
+        salesVersions.computeIfAbsent(String.valueOf(username), k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Event streams of sales changes, subscribed to by /api/stream
+     */
+    public static SalesEventHub getSalesEvents() {
+        return salesEvents;
+    }
+
+    /**
+     * Name of the sales storage engine in use
+     */
+    public static String getStorageEngine() {
+        return COLUMNAR ? "columnar" : "text";
+    }
+
+    /**
+     * Sales cache hit/miss/eviction counters as JSON, with off-heap memory
+     * accounting when sales.offheap is set
+     */
+    public static String getSalesCacheStats() {
+        return OFF_HEAP ? offHeapStore.toJSON() : salesCache.toJSON();
+    }
+
+    // Called by the sales cache or off-heap store, under its lock, when a user is
+    // evicted. Derived per-user state goes with the sales so it stays bounded too;
+    // the small running aggregates are kept.
+    private static void salesEvicted(String username) {
+        timeIndexes.remove(username);
+        sketches.remove(username);
+        rollups.invalidate(username);
+    }
+
+    /**
+     * Lock guarding a user's sales file, cache entry and aggregates
+     */
+    static Object salesLock(String username) {
+        return salesLocks[Math.floorMod(String.valueOf(username).hashCode(), LOCK_STRIPES)];
+    }
 }
\ No newline at end of file
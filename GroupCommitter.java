@@ -0,0 +1,164 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GroupCommitter - Groups concurrent sales appends for a user into shared flushes
+ * Each caller queues its sales and then either becomes the flush leader for that
+ * user or waits for the current leader. The leader drains everything queued (up to
+ * maxBatch records per write) and hands it to the flusher as one write, so N
+ * concurrent adds cost one file open/append/fsync instead of N. A leader returns as
+ * soon as its own request is flushed and hands leadership to a waiting follower;
+ * followers are signalled rather than polling. A user's queue is dropped once a
+ * leader leaves it empty, so idle users hold no state.
+ *
+ * sales.groupCommit.intervalMs  how long a leader waits for more appends (default 0)
+ * sales.groupCommit.maxBatch    max records per flush (default 1000)
+ */
+public class GroupCommitter {
+
+    /**
+     * Writes one group of sales for a user, returning false on failure
+     */
+    public interface Flusher {
+        boolean flush(String username, List<Product> sales);
+    }
+
+    private final Flusher flusher;
+    private final long intervalMillis;
+    private final int maxBatch;
+    private final Map<String, UserQueue> queues = new ConcurrentHashMap<>();
+
+    public GroupCommitter(Flusher flusher) {
+        this.flusher = flusher;
+        this.intervalMillis = Long.getLong("sales.groupCommit.intervalMs", 0L);
+        this.maxBatch = Integer.getInteger("sales.groupCommit.maxBatch", 1000);
+    }
+
+    /**
+     * Append sales for a user, returning once they have been flushed
+     */
+    public boolean append(String username, List<Product> sales) {
+        Request request = new Request(sales);
+        boolean interrupted = false;
+
+        UserQueue queue = lockQueue(username);
+        try {
+            queue.pending.add(request);
+            // Followers sleep until a flush completes their request or leadership is free
+            while (!request.done && queue.leading) {
+                try {
+                    queue.changed.await();
+                } catch (InterruptedException e) {
+                    // The request is queued and will be flushed; finish waiting for it
+                    interrupted = true;
+                }
+            }
+            if (!request.done) {
+                queue.leading = true;
+                try {
+                    // Lead only until our own request is flushed, so a leader's latency is
+                    // bounded by what was queued ahead of it
+                    while (!request.done) {
+                        flushPending(username, queue);
+                    }
+                } finally {
+                    // Hand over to a waiting follower, if any, or drop the idle queue
+                    queue.leading = false;
+                    if (queue.pending.isEmpty()) {
+                        queue.retired = true;
+                        queues.remove(username, queue);
+                    }
+                    queue.changed.signalAll();
+                }
+            }
+        } finally {
+            queue.lock.unlock();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return request.success;
+    }
+
+    // The user's live queue, locked. A queue retired after it was looked up is
+    // already out of the map, so look again.
+    private UserQueue lockQueue(String username) {
+        while (true) {
+            UserQueue queue = queues.computeIfAbsent(username, k -> new UserQueue());
+            queue.lock.lock();
+            if (!queue.retired) {
+                return queue;
+            }
+            queue.lock.unlock();
+        }
+    }
+
+    // Called by the leader holding the queue lock; the lock is released around the
+    // wait and the write so followers can keep queueing
+    private void flushPending(String username, UserQueue queue) {
+        queue.lock.unlock();
+        try {
+            if (intervalMillis > 0) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            queue.lock.lock();
+        }
+
+        List<Request> group = new ArrayList<>();
+        List<Product> sales = new ArrayList<>();
+        Request next;
+        // Always take at least one request, never split a request across flushes
+        while ((next = queue.pending.peek()) != null
+                && (sales.isEmpty() || sales.size() + next.sales.size() <= maxBatch)) {
+            queue.pending.poll();
+            group.add(next);
+            sales.addAll(next.sales);
+        }
+        if (group.isEmpty()) {
+            return;
+        }
+
+        boolean success = false;
+        queue.lock.unlock();
+        try {
+            success = flusher.flush(username, sales);
+        } catch (RuntimeException e) {
+            System.err.println("Error flushing sales: " + e.getMessage());
+        } finally {
+            queue.lock.lock();
+            for (Request request : group) {
+                request.success = success;
+                request.done = true;
+            }
+            queue.changed.signalAll();
+        }
+    }
+
+    private static final class UserQueue {
+        final ReentrantLock lock = new ReentrantLock();
+        // Signalled when requests complete and when leadership is handed over
+        final Condition changed = lock.newCondition();
+        final Queue<Request> pending = new ArrayDeque<>();
+        boolean leading = false;
+        // Set when removed from the map; nothing may be queued on it after that
+        boolean retired = false;
+    }
+
+    // Fields other than sales are guarded by the queue lock
+    private static final class Request {
+        final List<Product> sales;
+        boolean done = false;
+        boolean success = false;
+
+        Request(List<Product> sales) {
+            this.sales = sales;
+        }
+    }
+}
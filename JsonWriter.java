@@ -0,0 +1,331 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * JsonWriter - Streaming JSON writer that encodes straight to UTF-8 bytes
+ * Writes into an internal byte buffer that is either flushed to an OutputStream
+ * as it fills, or kept in memory and returned with toByteArray()/toString().
+ * Strings are escaped, money values are written with two decimals and dates as
+ * yyyy-MM-dd HH:mm:ss, all without String.format or intermediate Strings.
+ */
+public class JsonWriter implements AutoCloseable {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final int MAX_DEPTH = 32;
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int pos = 0;
+
+    // Per nesting level: true until the first element has been written
+    private final boolean[] first = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    /**
+     * Writer that buffers the whole document in memory
+     */
+    public JsonWriter() {
+        this.out = null;
+        this.buffer = new byte[256];
+    }
+
+    /**
+     * Writer that streams to out, flushing every bufferSize bytes
+     */
+    public JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public JsonWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    // Structure
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        separate();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    // Values
+
+    public JsonWriter value(String value) {
+        beforeValue();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Write a number rounded half-up to two decimals, as %.2f would
+     */
+    public JsonWriter valueMoney(double value) {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeAscii("null");
+            return this;
+        }
+        long cents = Money.toCents(value);
+        if (cents < 0) {
+            writeByte('-');
+            cents = -cents;
+        }
+        writeLong(cents / 100);
+        writeByte('.');
+        int centsPart = (int) (cents % 100);
+        writeByte('0' + centsPart / 10);
+        writeByte('0' + centsPart % 10);
+        return this;
+    }
+
+    /**
+     * Write a date-time as "yyyy-MM-dd HH:mm:ss"
+     */
+    public JsonWriter value(LocalDateTime value) {
+        beforeValue();
+        if (value == null) {
+            writeAscii("null");
+            return this;
+        }
+        writeByte('"');
+        writeDigits(value.getYear(), 4);
+        writeByte('-');
+        writeDigits(value.getMonthValue(), 2);
+        writeByte('-');
+        writeDigits(value.getDayOfMonth(), 2);
+        writeByte(' ');
+        writeDigits(value.getHour(), 2);
+        writeByte(':');
+        writeDigits(value.getMinute(), 2);
+        writeByte(':');
+        writeDigits(value.getSecond(), 2);
+        writeByte('"');
+        return this;
+    }
+
+    // Name/value shorthands
+
+    public JsonWriter field(String name, String value) { return name(name).value(value); }
+    public JsonWriter field(String name, long value) { return name(name).value(value); }
+    public JsonWriter field(String name, boolean value) { return name(name).value(value); }
+    public JsonWriter field(String name, LocalDateTime value) { return name(name).value(value); }
+    public JsonWriter fieldMoney(String name, double value) { return name(name).valueMoney(value); }
+
+    // Output
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, pos);
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, pos, StandardCharsets.UTF_8);
+    }
+
+    public void flush() {
+        if (out != null && pos > 0) {
+            try {
+                out.write(buffer, 0, pos);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pos = 0;
+        }
+    }
+
+    /**
+     * Flush and close the underlying stream, if any
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    // Internals
+
+    private void push() {
+        first[depth++] = true;
+    }
+
+    private void separate() {
+        if (depth > 0) {
+            if (!first[depth - 1]) {
+                writeByte(',');
+            }
+            first[depth - 1] = false;
+        }
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+        } else {
+            separate();
+        }
+    }
+
+    private void writeString(String s) {
+        writeByte('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                }
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeEscapedControl(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                writeByte(0xF0 | (cp >> 18));
+                writeByte(0x80 | ((cp >> 12) & 0x3F));
+                writeByte(0x80 | ((cp >> 6) & 0x3F));
+                writeByte(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?'); // Unpaired surrogate
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeEscapedControl(char c) {
+        writeByte('\\');
+        switch (c) {
+            case '\n': writeByte('n'); break;
+            case '\r': writeByte('r'); break;
+            case '\t': writeByte('t'); break;
+            case '\b': writeByte('b'); break;
+            case '\f': writeByte('f'); break;
+            default:
+                writeAscii("u00");
+                writeByte(HEX[c >> 4]);
+                writeByte(HEX[c & 0xF]);
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        ensure(20);
+        int start = pos;
+        do {
+            buffer[pos++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // Digits were written least significant first
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void writeDigits(int value, int width) {
+        ensure(width);
+        for (int i = width - 1; i >= 0; i--) {
+            buffer[pos + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += width;
+    }
+
+    private void writeAscii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer[pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) {
+        if (pos == buffer.length) {
+            ensure(1);
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    private void ensure(int bytes) {
+        if (pos + bytes <= buffer.length) {
+            return;
+        }
+        if (out != null) {
+            flush();
+            if (bytes <= buffer.length) {
+                return;
+            }
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + bytes));
+    }
+}
@@ -1,3 +1,5 @@
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -19,16 +21,29 @@ public class Main {
             // Initialize resource controller
             Resource resource = new Resource();
             
+            // Request executor, selected by -Dserver.executor=pool|virtual|direct
+            ServerExecutor executor = ServerExecutor.fromConfig();
+            
             // Register API endpoints
-            server.createContext("/api/register", resource.registerHandler());
-            server.createContext("/api/login", resource.loginHandler());
-            server.createContext("/api/add-sale", resource.addSaleHandler());
-            server.createContext("/api/sales", resource.getSalesHandler());
-            server.createContext("/api/analytics", resource.getAnalyticsHandler());
-            server.createContext("/api/delete-sale", resource.deleteSaleHandler());
+            register(server, executor, "/api/register", resource.registerHandler());
+            register(server, executor, "/api/login", resource.loginHandler());
+            register(server, executor, "/api/add-sale", resource.addSaleHandler());
+            register(server, executor, "/api/add-sales-batch", resource.addSalesBatchHandler());
+            register(server, executor, "/api/sales", resource.getSalesHandler());
+            register(server, executor, "/api/analytics", resource.getAnalyticsHandler());
+            register(server, executor, "/api/delete-sale", resource.deleteSaleHandler());
+            register(server, executor, "/api/stream", resource.salesStreamHandler());
+            
+            // Frontend assets for every other path, from -Dstatic.root (default: working directory)
+            StaticFiles staticFiles = new StaticFiles();
+            register(server, executor, "/", staticFiles);
+            register(server, executor, "/api/cache-stats", resource.cacheStatsHandler());
+            register(server, executor, "/api/server-stats", resource.serverStatsHandler(executor));
+            register(server, executor, "/api/metrics", resource.metricsHandler());
+            register(server, executor, "/api/top-tasks", resource.topTasksHandler());
             
             // Set executor
-            server.setExecutor(null);
+            server.setExecutor(executor);
             
             // Start server
             server.start();
@@ -36,14 +51,22 @@ public class Main {
             System.out.println("═══════════════════════════════════════════════");
             System.out.println("  Sales Analytics Dashboard - Backend Server");
             System.out.println("═══════════════════════════════════════════════");
-            System.out.println("Server started successfully on port " + PORT);
+            System.out.println("Server started successfully on port " + PORT + " (executor: " + executor.getMode()
+                + ", storage: " + Database.getStorageEngine() + ")");
+            System.out.println("Dashboard: http://localhost:" + PORT + "/  (" + staticFiles.size() + " static files)");
             System.out.println("\nAvailable API Endpoints:");
             System.out.println("  • POST http://localhost:" + PORT + "/api/register");
             System.out.println("  • POST http://localhost:" + PORT + "/api/login");
             System.out.println("  • POST http://localhost:" + PORT + "/api/add-sale");
-            System.out.println("  • GET  http://localhost:" + PORT + "/api/sales?username=<username>");
-            System.out.println("  • GET  http://localhost:" + PORT + "/api/analytics?username=<username>");
+            System.out.println("  • POST http://localhost:" + PORT + "/api/add-sales-batch?username=<username>");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/sales?username=<username>[&from=&to=]");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/analytics?username=<username>[&from=&to=][&mode=approx]");
             System.out.println("  • POST http://localhost:" + PORT + "/api/delete-sale");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/stream?username=<username>  (server-sent events)");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/cache-stats");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/server-stats");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/metrics[?format=prometheus]");
+            System.out.println("  • GET  http://localhost:" + PORT + "/api/top-tasks[?limit=]");
             System.out.println("\nServer is running... Press Ctrl+C to stop.");
             System.out.println("═══════════════════════════════════════════════\n");
             
@@ -52,4 +75,13 @@ public class Main {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Register an endpoint behind the metrics filter and the executor's overload filter
+     */
+    private static void register(HttpServer server, ServerExecutor executor, String path, HttpHandler handler) {
+        HttpContext context = server.createContext(path, handler);
+        context.getFilters().add(Metrics.filter(path.equals("/") ? "static" : path));
+        context.getFilters().add(executor.overloadFilter());
+    }
 }
\ No newline at end of file
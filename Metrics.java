@@ -0,0 +1,392 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics - Request and storage instrumentation
+ * Every endpoint is wrapped by filter(), which times the exchange and counts
+ * request/response bytes, status classes and the rows parsed while serving it.
+ * Database operations (reads, parses, appends, deletes) are timed through
+ * operation() handles and report the bytes and rows they touched; rows read by a
+ * parsing operation are also charged to the request running on the same thread.
+ *
+ * Everything is counters and LatencyHistograms: recording takes no locks. The
+ * last metrics.recentRequests requests are kept in a ring for topTasks().
+ */
+public final class Metrics {
+    private static final long STARTED = System.currentTimeMillis();
+    private static final int RECENT_REQUESTS = Integer.getInteger("metrics.recentRequests", 1024);
+
+    private static final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private static final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private static final AtomicReferenceArray<Request> recent = new AtomicReferenceArray<>(RECENT_REQUESTS);
+    private static final AtomicLong recentCount = new AtomicLong();
+
+    private static final ThreadLocal<Request> current = new ThreadLocal<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Filter timing every exchange of one endpoint
+     */
+    public static Filter filter(String endpointName) {
+        Endpoint endpoint = endpoints.computeIfAbsent(endpointName, Endpoint::new);
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                Request request = new Request(endpoint.name, exchange.getRequestMethod(),
+                    queryUser(exchange.getRequestURI().getRawQuery()));
+                exchange.setStreams(new CountingInputStream(exchange.getRequestBody(), endpoint.bytesIn),
+                    new CountingOutputStream(exchange.getResponseBody(), endpoint.bytesOut, request));
+                current.set(request);
+                long start = System.nanoTime();
+                try {
+                    chain.doFilter(exchange);
+                    request.status = exchange.getResponseCode();
+                } catch (IOException | RuntimeException e) {
+                    request.status = 500;
+                    throw e;
+                } finally {
+                    current.remove();
+                    request.nanos = System.nanoTime() - start;
+                    endpoint.finish(request);
+                    recent.set((int) (recentCount.getAndIncrement() % RECENT_REQUESTS), request);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Records latency and byte counts for " + endpoint.name;
+            }
+        };
+    }
+
+    /**
+     * Handle for timing one kind of storage operation
+     */
+    public static Operation operation(String name) {
+        return operations.computeIfAbsent(name, k -> new Operation(k, false));
+    }
+
+    /**
+     * Handle for an operation that parses rows, counted as rows parsed by the request
+     */
+    public static Operation parseOperation(String name) {
+        return operations.computeIfAbsent(name, k -> new Operation(k, true));
+    }
+
+    /**
+     * Name the user of the current request, for handlers that read it from a body
+     */
+    public static void setUser(String username) {
+        Request request = current.get();
+        if (request != null && username != null) {
+            request.user = username;
+        }
+    }
+
+    private static String queryUser(String rawQuery) {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.startsWith("username=")) {
+                try {
+                    return URLDecoder.decode(pair.substring(9), "UTF-8");
+                } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+                    return pair.substring(9);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Slowest of the recent requests, slowest first
+     */
+    public static List<Request> topTasks(int limit) {
+        List<Request> requests = new ArrayList<>(RECENT_REQUESTS);
+        for (int i = 0; i < RECENT_REQUESTS; i++) {
+            Request request = recent.get(i);
+            if (request != null) {
+                requests.add(request);
+            }
+        }
+        requests.sort(Comparator.comparingLong((Request r) -> r.nanos).reversed());
+        return requests.subList(0, Math.min(limit, requests.size()));
+    }
+
+    public static String topTasksJSON(int limit) {
+        JsonWriter json = new JsonWriter().beginArray();
+        for (Request request : topTasks(limit)) {
+            json.beginObject()
+                .field("endpoint", request.endpoint)
+                .field("method", request.method)
+                .field("user", request.user)
+                .field("status", request.status)
+                .field("durationMicros", request.nanos / 1000)
+                .field("bytesOut", request.bytesOut)
+                .field("rowsParsed", request.rowsParsed)
+                .field("timestamp", request.startedAt)
+                .endObject();
+        }
+        return json.endArray().toString();
+    }
+
+    /**
+     * All endpoint and operation metrics as JSON; latencies in microseconds
+     */
+    public static String toJSON() {
+        JsonWriter json = new JsonWriter().beginObject()
+            .field("uptimeSeconds", (System.currentTimeMillis() - STARTED) / 1000);
+        json.name("endpoints").beginObject();
+        for (Endpoint endpoint : new TreeMap<>(endpoints).values()) {
+            json.name(endpoint.name).beginObject()
+                .field("requests", endpoint.latency.getCount())
+                .field("clientErrors", endpoint.clientErrors.sum())
+                .field("serverErrors", endpoint.serverErrors.sum())
+                .field("bytesIn", endpoint.bytesIn.sum())
+                .field("bytesOut", endpoint.bytesOut.sum())
+                .field("rowsParsed", endpoint.rowsParsed.sum());
+            writeLatency(json, endpoint.latency);
+            json.endObject();
+        }
+        json.endObject();
+        json.name("database").beginObject();
+        for (Operation operation : new TreeMap<>(operations).values()) {
+            json.name(operation.name).beginObject()
+                .field("count", operation.latency.getCount())
+                .field("bytes", operation.bytes.sum())
+                .field("rows", operation.rows.sum());
+            writeLatency(json, operation.latency);
+            json.endObject();
+        }
+        json.endObject();
+        return json.endObject().toString();
+    }
+
+    private static void writeLatency(JsonWriter json, LatencyHistogram latency) {
+        json.name("latencyMicros").beginObject()
+            .field("mean", latency.getMean() / 1000)
+            .field("p50", latency.percentile(0.50) / 1000)
+            .field("p99", latency.percentile(0.99) / 1000)
+            .field("p999", latency.percentile(0.999) / 1000)
+            .field("max", latency.getMax() / 1000)
+            .endObject();
+    }
+
+    /**
+     * All endpoint and operation metrics in the Prometheus text exposition format
+     */
+    public static String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        List<Endpoint> byName = new ArrayList<>(new TreeMap<>(endpoints).values());
+        List<Operation> opsByName = new ArrayList<>(new TreeMap<>(operations).values());
+
+        out.append("# HELP http_request_duration_seconds Time to handle a request, by endpoint\n");
+        out.append("# TYPE http_request_duration_seconds summary\n");
+        for (Endpoint endpoint : byName) {
+            summary(out, "http_request_duration_seconds", "endpoint", endpoint.name, endpoint.latency);
+        }
+        counter(out, "http_request_bytes_total", "Request body bytes read", "endpoint");
+        for (Endpoint endpoint : byName) {
+            sample(out, "http_request_bytes_total", "endpoint", endpoint.name, endpoint.bytesIn.sum());
+        }
+        counter(out, "http_response_bytes_total", "Response body bytes written", "endpoint");
+        for (Endpoint endpoint : byName) {
+            sample(out, "http_response_bytes_total", "endpoint", endpoint.name, endpoint.bytesOut.sum());
+        }
+        counter(out, "http_rows_parsed_total", "Sales rows parsed while serving requests", "endpoint");
+        for (Endpoint endpoint : byName) {
+            sample(out, "http_rows_parsed_total", "endpoint", endpoint.name, endpoint.rowsParsed.sum());
+        }
+        counter(out, "http_errors_total", "Responses with a 4xx or 5xx status", "endpoint");
+        for (Endpoint endpoint : byName) {
+            out.append("http_errors_total{endpoint=\"").append(endpoint.name).append("\",class=\"4xx\"} ")
+                .append(endpoint.clientErrors.sum()).append('\n');
+            out.append("http_errors_total{endpoint=\"").append(endpoint.name).append("\",class=\"5xx\"} ")
+                .append(endpoint.serverErrors.sum()).append('\n');
+        }
+
+        out.append("# HELP db_operation_duration_seconds Time spent in a storage operation\n");
+        out.append("# TYPE db_operation_duration_seconds summary\n");
+        for (Operation operation : opsByName) {
+            summary(out, "db_operation_duration_seconds", "op", operation.name, operation.latency);
+        }
+        counter(out, "db_bytes_total", "Bytes read or written by a storage operation", "op");
+        for (Operation operation : opsByName) {
+            sample(out, "db_bytes_total", "op", operation.name, operation.bytes.sum());
+        }
+        counter(out, "db_rows_total", "Rows read, parsed or written by a storage operation", "op");
+        for (Operation operation : opsByName) {
+            sample(out, "db_rows_total", "op", operation.name, operation.rows.sum());
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String metric, String help, String label) {
+        out.append("# HELP ").append(metric).append(' ').append(help).append(", by ").append(label).append('\n');
+        out.append("# TYPE ").append(metric).append(" counter\n");
+    }
+
+    private static void sample(StringBuilder out, String metric, String label, String value, long sample) {
+        out.append(metric).append('{').append(label).append("=\"").append(value).append("\"} ").append(sample).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String metric, String label, String value, LatencyHistogram latency) {
+        String labels = label + "=\"" + value + "\"";
+        double[] quantiles = {0.5, 0.99, 0.999};
+        for (double quantile : quantiles) {
+            out.append(metric).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                .append(seconds(latency.percentile(quantile))).append('\n');
+        }
+        out.append(metric).append("_sum{").append(labels).append("} ").append(seconds(latency.getSum())).append('\n');
+        out.append(metric).append("_count{").append(labels).append("} ").append(latency.getCount()).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * One endpoint's counters
+     */
+    private static final class Endpoint {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder clientErrors = new LongAdder();
+        final LongAdder serverErrors = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder rowsParsed = new LongAdder();
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        void finish(Request request) {
+            latency.record(request.nanos);
+            rowsParsed.add(request.rowsParsed);
+            if (request.status >= 500) {
+                serverErrors.increment();
+            } else if (request.status >= 400) {
+                clientErrors.increment();
+            }
+        }
+    }
+
+    /**
+     * One kind of storage operation: time it with start()/finish()
+     */
+    public static final class Operation {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final boolean parses;
+
+        Operation(String name, boolean parses) {
+            this.name = name;
+            this.parses = parses;
+        }
+
+        public long start() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Record an operation begun at start
+         */
+        public void finish(long start, long bytesTouched, long rowsTouched) {
+            latency.record(System.nanoTime() - start);
+            bytes.add(bytesTouched);
+            rows.add(rowsTouched);
+            Request request = parses ? current.get() : null;
+            if (request != null) {
+                request.rowsParsed += rowsTouched;
+            }
+        }
+    }
+
+    /**
+     * One handled request, as listed by topTasks
+     */
+    public static final class Request {
+        final String endpoint;
+        final String method;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        volatile String user;
+        volatile int status;
+        volatile long nanos;
+        volatile long bytesOut;
+        volatile long rowsParsed;
+
+        Request(String endpoint, String method, String user) {
+            this.endpoint = endpoint;
+            this.method = method;
+            this.user = user;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final LongAdder bytes;
+
+        CountingInputStream(InputStream in, LongAdder bytes) {
+            super(in);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) bytes.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) bytes.add(n);
+            return n;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder bytes;
+        private final Request request;
+
+        CountingOutputStream(OutputStream out, LongAdder bytes, Request request) {
+            super(out);
+            this.bytes = bytes;
+            this.request = request;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes.increment();
+            request.bytesOut++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            bytes.add(length);
+            request.bytesOut += length;
+        }
+    }
+}
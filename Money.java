@@ -0,0 +1,47 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money - Two-decimal rounding shared by the file format and JSON output
+ * Rounds half-up on the shortest decimal form of the double, exactly as %.2f does,
+ * but with long arithmetic except for rare near-ties.
+ */
+public final class Money {
+    private Money() {}
+
+    /**
+     * Round a finite amount to whole cents. Throws IllegalArgumentException for NaN
+     * or infinity, which have no cents; callers write those some other way.
+     */
+    public static long toCents(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Not a finite amount: " + value);
+        }
+        double scaled = Math.abs(value) * 100;
+        double fraction = scaled - Math.floor(scaled);
+        if (scaled >= 1e15 || Math.abs(fraction - 0.5) < 1e-6) {
+            // Too large for exact cents, or a near tie where binary rounding could disagree
+            // with %.2f: take the exact slow path
+            return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+        long cents = Math.round(scaled);
+        return value < 0 ? -cents : cents;
+    }
+
+    /**
+     * Append an amount as d.dd; NaN and infinity as "NaN" and "Infinity", as %.2f does
+     */
+    public static StringBuilder append(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(value);
+        }
+        long cents = toCents(value);
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        int centsPart = (int) (cents % 100);
+        return out.append((char) ('0' + centsPart / 10)).append((char) ('0' + centsPart % 10));
+    }
+}
@@ -0,0 +1,713 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * OffHeapSalesStore - Resident sales held outside the Java heap
+ * Used instead of SalesCache when sales.offheap is set. Each user's sales are
+ * fixed-width rows in direct ByteBuffers, so a resident tenant costs the heap a
+ * few buffer objects rather than a Product and LocalDateTime per sale, and the
+ * garbage collector never traces or copies them. Product names and categories are
+ * SalesDictionary codes and customer names codes in the table's own dictionary,
+ * which is dropped with the table; timestamps are kept to the second, as the sales
+ * file stores them.
+ *
+ * Rows are read through Cursors, which create no objects per row. Date-range
+ * reads go through a per-table date order, an int[] of row positions sorted by
+ * (timestamp, id) that is built on the first range read and kept up to date by
+ * appends; it costs the heap 4 bytes a row and goes away with the table. Tables are
+ * bounded by sales.offheap.maxBytes of buffer memory in total (default 1 GiB)
+ * and evicted least recently used first. An evicted or invalidated table frees
+ * its buffers as soon as the last cursor open on it is closed. An optional
+ * listener hears about users evicted to stay within the budget.
+ */
+public class OffHeapSalesStore {
+    private static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+    // Row layout. Bytes 21-23 are padding so amounts and timestamps stay 8-byte aligned.
+    static final int ROW_BYTES = 40;
+    private static final int ID = 0;
+    private static final int PRODUCT = 4;
+    private static final int CATEGORY = 8;
+    private static final int CUSTOMER = 12;
+    private static final int QUANTITY = 16;
+    private static final int DELETED = 20;
+    private static final int AMOUNT = 24;
+    private static final int EPOCH_SECOND = 32;
+
+    // Rows per full chunk; the last chunk starts small and doubles up to this
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int MIN_CHUNK_ROWS = 256;
+
+    private final long maxBytes;
+    // Called with the store lock held, so it must not block or take other locks
+    private final Consumer<String> evicted;
+    private final LinkedHashMap<String, Table> tables = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Buffer memory held by resident tables, which the budget applies to, and all
+    // buffer memory allocated, which also counts released buffers still being read
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public OffHeapSalesStore() {
+        this(username -> { });
+    }
+
+    public OffHeapSalesStore(Consumer<String> evicted) {
+        this(Long.getLong("sales.offheap.maxBytes", DEFAULT_MAX_BYTES), evicted);
+    }
+
+    public OffHeapSalesStore(long maxBytes) {
+        this(maxBytes, username -> { });
+    }
+
+    public OffHeapSalesStore(long maxBytes, Consumer<String> evicted) {
+        this.maxBytes = maxBytes;
+        this.evicted = evicted;
+    }
+
+    /**
+     * Open a cursor over a user's resident sales, or null if they are not resident.
+     * The caller must close it.
+     */
+    public synchronized Cursor cursor(String username) {
+        Table table = tables.get(username);
+        if (table == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return table.cursor();
+    }
+
+    /**
+     * A user's resident table, or null. Tables that are evicted later can no longer
+     * be read, so hold one only as long as a request does.
+     */
+    public synchronized Table get(String username) {
+        return tables.get(username);
+    }
+
+    /**
+     * Snapshot of a user's resident sales, or null if they are not resident.
+     * The caller must close it.
+     */
+    public synchronized Snapshot snapshot(String username) {
+        Table table = tables.get(username);
+        if (table == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return table.snapshot();
+    }
+
+    /**
+     * Snapshot of a user's resident sales with fromSecond <= timestamp < toSecond
+     * (epoch seconds, UTC), in date order, or null if they are not resident.
+     * The caller must close it.
+     */
+    public synchronized Snapshot range(String username, long fromSecond, long toSecond) {
+        Table table = tables.get(username);
+        if (table == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return table.range(fromSecond, toSecond);
+    }
+
+    /**
+     * Make a user's sales resident, replacing any previous table, and evict least
+     * recently used users if over budget. Returns the table, or null if the user
+     * alone would exceed the budget.
+     */
+    public synchronized Table put(String username, List<Product> sales) {
+        invalidate(username);
+        if ((long) sales.size() * ROW_BYTES > maxBytes) {
+            return null;
+        }
+        Table table = new Table(this);
+        table.append(sales);
+        tables.put(username, table);
+        evictIfNeeded();
+        return tables.get(username);
+    }
+
+    /**
+     * Write-through for newly saved sales. Only updates users that are already resident.
+     */
+    public void addSales(String username, List<Product> added) {
+        Table table = get(username);
+        if (table != null && table.append(added)) {
+            synchronized (this) {
+                evictIfNeeded();
+            }
+        }
+    }
+
+    /**
+     * Drop a user's table and release its memory
+     */
+    public synchronized void invalidate(String username) {
+        Table previous = tables.remove(username);
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Table>> it = tables.entrySet().iterator();
+        while (residentBytes.get() > maxBytes && it.hasNext()) {
+            Map.Entry<String, Table> eldest = it.next();
+            it.remove();
+            eldest.getValue().release();
+            evictions.incrementAndGet();
+            evicted.accept(eldest.getKey());
+        }
+    }
+
+    // Memory accounting and counters
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getMaxBytes() { return maxBytes; }
+    public long getResidentBytes() { return residentBytes.get(); }
+    public long getReservedBytes() { return reservedBytes.get(); }
+    public synchronized int getResidentUsers() { return tables.size(); }
+
+    /**
+     * Live rows across resident users
+     */
+    public synchronized long getResidentRecords() {
+        long records = 0;
+        for (Table table : tables.values()) {
+            records += table.liveCount();
+        }
+        return records;
+    }
+
+    /**
+     * Bytes of rows written across resident users, deleted rows included
+     */
+    public synchronized long getUsedBytes() {
+        long used = 0;
+        for (Table table : tables.values()) {
+            used += (long) table.rowCount() * ROW_BYTES;
+        }
+        return used;
+    }
+
+    public String toJSON() {
+        return new JsonWriter().beginObject()
+            .field("hits", getHits())
+            .field("misses", getMisses())
+            .field("evictions", getEvictions())
+            .field("cachedUsers", getResidentUsers())
+            .field("cachedRecords", getResidentRecords())
+            .field("usedBytes", getUsedBytes())
+            .field("residentBytes", getResidentBytes())
+            .field("reservedBytes", getReservedBytes())
+            .field("maxBytes", maxBytes)
+            .endObject()
+            .toString();
+    }
+
+    /**
+     * One user's rows. Appends and deletes are serialized on the table; cursors read
+     * without locking and see the rows that existed when they were opened.
+     */
+    public static final class Table implements SalesRows.Source {
+        private final OffHeapSalesStore store;
+        private final SalesDictionary.Local customers = new SalesDictionary.Local();
+        // Replaced, never modified in place, when a chunk is added or grown
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+        // Written after the rows it covers, so readers never see a half-written row
+        private volatile int rowCount = 0;
+        private int deletedCount = 0;
+
+        // Row positions in (timestamp, id) order, deleted rows included; null until
+        // the first range read. Guarded by this.
+        private int[] dateOrder = null;
+
+        // Guarded by this
+        private int readers = 0;
+        private boolean released = false;
+        private final List<ByteBuffer> retired = new ArrayList<>();
+
+        private Table(OffHeapSalesStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public int rowCount() { return rowCount; }
+        public synchronized int liveCount() { return rowCount - deletedCount; }
+        synchronized boolean isReleased() { return released; }
+
+        /**
+         * Append sales as rows. Returns false if the table has been released.
+         */
+        synchronized boolean append(List<Product> sales) {
+            if (released) {
+                return false;
+            }
+            ensureCapacity(rowCount + sales.size());
+            ByteBuffer[] current = chunks;
+            int row = rowCount;
+            for (Product sale : sales) {
+                ByteBuffer chunk = current[row >>> CHUNK_SHIFT];
+                int offset = (row & (CHUNK_ROWS - 1)) * ROW_BYTES;
+                chunk.putInt(offset + ID, sale.getId());
+                chunk.putInt(offset + PRODUCT, sale.getProductCode());
+                chunk.putInt(offset + CATEGORY, sale.getCategoryCode());
+                chunk.putInt(offset + CUSTOMER, customers.code(sale.getCustomerName()));
+                chunk.putInt(offset + QUANTITY, sale.getQuantity());
+                chunk.put(offset + DELETED, (byte) 0);
+                chunk.putDouble(offset + AMOUNT, sale.getSaleAmount());
+                chunk.putLong(offset + EPOCH_SECOND, sale.getSaleDate().toEpochSecond(ZoneOffset.UTC));
+                row++;
+            }
+            if (dateOrder != null) {
+                addToDateOrder(current, rowCount, row);
+            }
+            rowCount = row;
+            return true;
+        }
+
+        /**
+         * Whether a live row has this sale ID; false once the table has been released
+         */
+        synchronized boolean contains(int saleId) {
+            ByteBuffer[] current = chunks;
+            for (int row = rowCount - 1; row >= 0 && !released; row--) {
+                ByteBuffer chunk = current[row >>> CHUNK_SHIFT];
+                int offset = (row & (CHUNK_ROWS - 1)) * ROW_BYTES;
+                if (chunk.getInt(offset + ID) == saleId && chunk.get(offset + DELETED) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Write-through for a deleted sale: flag its live row and return it as a
+         * Product, or null if there is none or the table has been released
+         */
+        synchronized Product delete(int saleId) {
+            if (released) {
+                return null;
+            }
+            ByteBuffer[] current = chunks;
+            // Newest rows first: recent sales are the likeliest to be deleted
+            for (int row = rowCount - 1; row >= 0; row--) {
+                ByteBuffer chunk = current[row >>> CHUNK_SHIFT];
+                int offset = (row & (CHUNK_ROWS - 1)) * ROW_BYTES;
+                if (chunk.getInt(offset + ID) == saleId && chunk.get(offset + DELETED) == 0) {
+                    chunk.put(offset + DELETED, (byte) 1);
+                    deletedCount++;
+                    return product(chunk, offset, customers);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Open a cursor over the live rows. Throws IllegalStateException if the table
+         * has been released.
+         */
+        @Override
+        public Cursor cursor() {
+            return cursor(0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Open a cursor over the live rows among rows [from, to)
+         */
+        @Override
+        public synchronized Cursor cursor(int from, int to) {
+            if (released) {
+                throw new IllegalStateException("Sales table has been released");
+            }
+            readers++;
+            return new Cursor(this, chunks, null, from, Math.min(to, rowCount));
+        }
+
+        /**
+         * The rows that exist now, readable until the snapshot is closed even if the
+         * table is released meanwhile. Throws IllegalStateException if the table has
+         * already been released.
+         */
+        synchronized Snapshot snapshot() {
+            if (released) {
+                throw new IllegalStateException("Sales table has been released");
+            }
+            readers++;
+            return new Snapshot(this, chunks, rowCount);
+        }
+
+        /**
+         * The rows that exist now with fromSecond <= timestamp < toSecond, in date
+         * order, readable like a snapshot. Throws IllegalStateException if the table
+         * has already been released.
+         */
+        synchronized Snapshot range(long fromSecond, long toSecond) {
+            if (released) {
+                throw new IllegalStateException("Sales table has been released");
+            }
+            if (dateOrder == null) {
+                dateOrder = new int[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    dateOrder[row] = row;
+                }
+                sortByDate(chunks, dateOrder, 0, rowCount);
+            }
+            int start = lowerBound(fromSecond);
+            int end = Math.max(start, lowerBound(toSecond));
+            readers++;
+            return new Snapshot(this, chunks, Arrays.copyOfRange(dateOrder, start, end));
+        }
+
+        // First position in the date order whose timestamp is at or after epochSecond
+        private int lowerBound(long epochSecond) {
+            ByteBuffer[] current = chunks;
+            int low = 0;
+            int high = rowCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (epochSecond(current, dateOrder[mid]) < epochSecond) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // Rows [from, to) were just appended. They normally come in date order after
+        // the last row and are appended; back-dated ones are sorted and merged in.
+        private void addToDateOrder(ByteBuffer[] current, int from, int to) {
+            int[] order = dateOrder.length >= to ? dateOrder : Arrays.copyOf(dateOrder, Math.max(to, from * 2));
+            boolean inOrder = true;
+            for (int row = from; row < to; row++) {
+                order[row] = row;
+                int previous = row == 0 ? -1 : order[row - 1];
+                inOrder &= previous < 0 || compareByDate(current, previous, row) <= 0;
+            }
+            if (!inOrder) {
+                sortByDate(current, order, from, to);
+                int[] merged = new int[order.length];
+                int i = 0;
+                int j = from;
+                int k = 0;
+                while (i < from && j < to) {
+                    merged[k++] = compareByDate(current, order[i], order[j]) <= 0 ? order[i++] : order[j++];
+                }
+                System.arraycopy(order, i, merged, k, from - i);
+                k += from - i;
+                System.arraycopy(order, j, merged, k, to - j);
+                order = merged;
+            }
+            dateOrder = order;
+        }
+
+        private synchronized void openReader() {
+            readers++;
+        }
+
+        private void ensureCapacity(int rows) {
+            ByteBuffer[] current = chunks;
+            int capacity = capacity(current);
+            if (rows <= capacity) {
+                return;
+            }
+            ByteBuffer[] grown = Arrays.copyOf(current, (rows + CHUNK_ROWS - 1) >>> CHUNK_SHIFT);
+            int last = current.length - 1;
+            if (last >= 0 && current[last].capacity() < CHUNK_ROWS * ROW_BYTES) {
+                // Grow the partial last chunk in place of adding another
+                grown[last] = allocate(Math.min(CHUNK_ROWS, chunkRows(rows - last * CHUNK_ROWS)));
+                grown[last].put(current[last].duplicate().clear());
+                retire(current[last]);
+                if (readers == 0) {
+                    freeRetired();
+                }
+            }
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = allocate(Math.min(CHUNK_ROWS, chunkRows(rows - i * CHUNK_ROWS)));
+            }
+            chunks = grown;
+        }
+
+        private static int capacity(ByteBuffer[] chunks) {
+            if (chunks.length == 0) {
+                return 0;
+            }
+            return (chunks.length - 1) * CHUNK_ROWS + chunks[chunks.length - 1].capacity() / ROW_BYTES;
+        }
+
+        // Smallest power of two from MIN_CHUNK_ROWS that holds rows
+        private static int chunkRows(int rows) {
+            return Math.max(MIN_CHUNK_ROWS, Integer.highestOneBit(Math.max(1, rows - 1)) << 1);
+        }
+
+        private ByteBuffer allocate(int rows) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(rows * ROW_BYTES).order(ByteOrder.nativeOrder());
+            store.residentBytes.addAndGet(buffer.capacity());
+            store.reservedBytes.addAndGet(buffer.capacity());
+            return buffer;
+        }
+
+        /**
+         * Stop serving the table and free its buffers once no cursor is reading them
+         */
+        synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (ByteBuffer chunk : chunks) {
+                retire(chunk);
+            }
+            chunks = new ByteBuffer[0];
+            if (readers == 0) {
+                freeRetired();
+            }
+        }
+
+        // A replaced or released buffer may still be read by an open cursor
+        private void retire(ByteBuffer buffer) {
+            store.residentBytes.addAndGet(-buffer.capacity());
+            retired.add(buffer);
+        }
+
+        private synchronized void closeReader() {
+            if (--readers == 0) {
+                freeRetired();
+            }
+        }
+
+        private void freeRetired() {
+            for (ByteBuffer buffer : retired) {
+                store.reservedBytes.addAndGet(-buffer.capacity());
+                Buffers.free(buffer);
+            }
+            retired.clear();
+        }
+    }
+
+    /**
+     * A table's rows as of when it was taken, all of them or the positions of a date
+     * range. Its buffers are freed no earlier than when it and every cursor opened
+     * from it are closed.
+     */
+    public static final class Snapshot implements SalesRows.Snapshot {
+        private final Table table;
+        private final ByteBuffer[] chunks;
+        private final int rowCount;
+        // Row positions read in order, or null for rows 0, 1, 2, ...
+        private final int[] rows;
+        private boolean closed = false;
+
+        private Snapshot(Table table, ByteBuffer[] chunks, int rowCount) {
+            this.table = table;
+            this.chunks = chunks;
+            this.rowCount = rowCount;
+            this.rows = null;
+        }
+
+        private Snapshot(Table table, ByteBuffer[] chunks, int[] rows) {
+            this.table = table;
+            this.chunks = chunks;
+            this.rowCount = rows.length;
+            this.rows = rows;
+        }
+
+        @Override
+        public int rowCount() { return rowCount; }
+
+        /**
+         * Open a cursor over the live rows among rows [from, to)
+         */
+        @Override
+        public synchronized Cursor cursor(int from, int to) {
+            if (closed) {
+                throw new IllegalStateException("Sales snapshot has been closed");
+            }
+            // This snapshot's own reader keeps the buffers from being freed meanwhile
+            table.openReader();
+            return new Cursor(table, chunks, rows, from, Math.min(to, rowCount));
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                table.closeReader();
+            }
+        }
+    }
+
+    /**
+     * Forward-only iteration over a table's live rows. Accessors read the current
+     * row straight from the buffer. Not thread-safe; close it when done.
+     */
+    public static final class Cursor implements SalesRows {
+        private final Table table;
+        private final ByteBuffer[] chunks;
+        // Row positions to read, or null to read positions in order
+        private final int[] rows;
+        private final int end;
+        private int index;
+        private ByteBuffer chunk;
+        private int offset;
+        private boolean closed = false;
+
+        private Cursor(Table table, ByteBuffer[] chunks, int[] rows, int from, int end) {
+            this.table = table;
+            this.chunks = chunks;
+            this.rows = rows;
+            this.end = end;
+            this.index = from - 1;
+        }
+
+        /**
+         * Advance to the next live row; false when there are no more
+         */
+        @Override
+        public boolean next() {
+            while (++index < end) {
+                int row = rows == null ? index : rows[index];
+                chunk = chunks[row >>> CHUNK_SHIFT];
+                offset = (row & (CHUNK_ROWS - 1)) * ROW_BYTES;
+                if (chunk.get(offset + DELETED) == 0) {
+                    return true;
+                }
+            }
+            index = end;
+            return false;
+        }
+
+        @Override public int id() { return chunk.getInt(offset + ID); }
+        @Override public int productCode() { return chunk.getInt(offset + PRODUCT); }
+        @Override public int categoryCode() { return chunk.getInt(offset + CATEGORY); }
+        @Override public String customerName() { return table.customers.string(chunk.getInt(offset + CUSTOMER)); }
+        @Override public int quantity() { return chunk.getInt(offset + QUANTITY); }
+        @Override public double amount() { return chunk.getDouble(offset + AMOUNT); }
+        @Override public long epochSecond() { return chunk.getLong(offset + EPOCH_SECOND); }
+
+        /**
+         * The current row as a new Product
+         */
+        @Override
+        public Product product() {
+            return OffHeapSalesStore.product(chunk, offset, table.customers);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                table.closeReader();
+            }
+        }
+    }
+
+    private static long epochSecond(ByteBuffer[] chunks, int row) {
+        return chunks[row >>> CHUNK_SHIFT].getLong((row & (CHUNK_ROWS - 1)) * ROW_BYTES + EPOCH_SECOND);
+    }
+
+    // By timestamp, then sale ID, the order SalesTimeIndex keeps Products in
+    private static int compareByDate(ByteBuffer[] chunks, int row, int other) {
+        int byDate = Long.compare(epochSecond(chunks, row), epochSecond(chunks, other));
+        if (byDate != 0) {
+            return byDate;
+        }
+        return Integer.compare(chunks[row >>> CHUNK_SHIFT].getInt((row & (CHUNK_ROWS - 1)) * ROW_BYTES + ID),
+            chunks[other >>> CHUNK_SHIFT].getInt((other & (CHUNK_ROWS - 1)) * ROW_BYTES + ID));
+    }
+
+    // Stable merge sort of row positions [from, to) by date; a run already in order
+    // costs one pass
+    private static void sortByDate(ByteBuffer[] chunks, int[] rows, int from, int to) {
+        boolean sorted = true;
+        for (int i = from + 1; i < to && sorted; i++) {
+            sorted = compareByDate(chunks, rows[i - 1], rows[i]) <= 0;
+        }
+        if (sorted) {
+            return;
+        }
+        int[] source = Arrays.copyOfRange(rows, from, to);
+        int[] target = new int[source.length];
+        for (int width = 1; width < source.length; width *= 2) {
+            for (int low = 0; low < source.length; low += 2 * width) {
+                int mid = Math.min(low + width, source.length);
+                int high = Math.min(low + 2 * width, source.length);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    target[k++] = compareByDate(chunks, source[i], source[j]) <= 0 ? source[i++] : source[j++];
+                }
+                while (i < mid) target[k++] = source[i++];
+                while (j < high) target[k++] = source[j++];
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        System.arraycopy(source, 0, rows, from, source.length);
+    }
+
+    private static Product product(ByteBuffer chunk, int offset, SalesDictionary.Local customers) {
+        return Product.ofCodes(chunk.getInt(offset + ID), chunk.getInt(offset + PRODUCT),
+            chunk.getInt(offset + CATEGORY), chunk.getDouble(offset + AMOUNT), chunk.getInt(offset + QUANTITY),
+            LocalDateTime.ofEpochSecond(chunk.getLong(offset + EPOCH_SECOND), 0, ZoneOffset.UTC),
+            customers.string(chunk.getInt(offset + CUSTOMER)));
+    }
+
+    /**
+     * Frees direct buffers right away through Unsafe.invokeCleaner where the JDK
+     * allows it; otherwise they are freed when the garbage collector finds them
+     * unreachable.
+     */
+    private static final class Buffers {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.err.println("Off-heap sales buffers will be freed by the garbage collector: " + e);
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        static void free(ByteBuffer buffer) {
+            if (INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Error freeing off-heap sales buffer: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,13 +1,15 @@
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Product/Sale Model - Represents a single sale transaction
+ * Product name and category are held as SalesDictionary codes, so sales share one
+ * copy of each distinct string; the getters decode them. The customer name is kept
+ * as a string, as customers are too many to share process-wide.
  */
 public class Product {
     private int id;
-    private String productName;
-    private String category;
+    private int productCode;
+    private int categoryCode;
     private double saleAmount;
     private int quantity;
     private LocalDateTime saleDate;
@@ -15,24 +17,49 @@ public class Product {
 
     public Product(int id, String productName, String category, double saleAmount, 
                    int quantity, LocalDateTime saleDate, String customerName) {
+        this(id, SalesDictionary.code(productName), SalesDictionary.code(category), saleAmount,
+            quantity, saleDate, customerName);
+    }
+
+    private Product(int id, int productCode, int categoryCode, double saleAmount,
+                    int quantity, LocalDateTime saleDate, String customerName) {
         this.id = id;
-        this.productName = productName;
-        this.category = category;
+        this.productCode = productCode;
+        this.categoryCode = categoryCode;
         this.saleAmount = saleAmount;
         this.quantity = quantity;
         this.saleDate = saleDate;
         this.customerName = customerName;
     }
 
+    /**
+     * Sale whose product name and category are already SalesDictionary codes
+     */
+    static Product ofCodes(int id, int productCode, int categoryCode, double saleAmount,
+                           int quantity, LocalDateTime saleDate, String customerName) {
+        return new Product(id, productCode, categoryCode, saleAmount, quantity, saleDate, customerName);
+    }
+
     // Getters
     public int getId() { return id; }
-    public String getProductName() { return productName; }
-    public String getCategory() { return category; }
+    public String getProductName() { return SalesDictionary.string(productCode); }
+    public String getCategory() { return SalesDictionary.string(categoryCode); }
     public double getSaleAmount() { return saleAmount; }
     public int getQuantity() { return quantity; }
     public LocalDateTime getSaleDate() { return saleDate; }
     public String getCustomerName() { return customerName; }
 
+    // SalesDictionary codes, for grouping without touching the strings
+    public int getProductCode() { return productCode; }
+    public int getCategoryCode() { return categoryCode; }
+
+    /**
+     * Copy of this sale with a different ID
+     */
+    public Product withId(int newId) {
+        return new Product(newId, productCode, categoryCode, saleAmount, quantity, saleDate, customerName);
+    }
+
     // Get month name from sale date
     public String getMonthName() {
         return saleDate.getMonth().toString();
@@ -50,45 +77,42 @@ public class Product {
 
     /**
      * Convert to file format: id,productName,category,saleAmount,quantity,saleDate,customerName
+     * Text fields containing a comma or quote are quoted CSV-style.
      */
     public String toFileString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return String.format("%d,%s,%s,%.2f,%d,%s,%s",
-            id, productName, category, saleAmount, quantity, 
-            saleDate.format(formatter), customerName);
+        StringBuilder line = new StringBuilder(64);
+        line.append(id).append(',');
+        SalesRecordParser.appendText(line, getProductName()).append(',');
+        SalesRecordParser.appendText(line, getCategory()).append(',');
+        Money.append(line, saleAmount).append(',');
+        line.append(quantity).append(',');
+        SalesRecordParser.appendTimestamp(line, saleDate).append(',');
+        SalesRecordParser.appendText(line, getCustomerName());
+        return line.toString();
     }
 
     /**
      * Parse from file format
      */
     public static Product fromFileString(String line) {
-        try {
-            String[] parts = line.split(",");
-            if (parts.length >= 7) {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                return new Product(
-                    Integer.parseInt(parts[0]),
-                    parts[1],
-                    parts[2],
-                    Double.parseDouble(parts[3]),
-                    Integer.parseInt(parts[4]),
-                    LocalDateTime.parse(parts[5], formatter),
-                    parts[6]
-                );
-            }
-        } catch (Exception e) {
-            System.err.println("Error parsing product: " + line);
-        }
-        return null;
+        return SalesRecordParser.parseRecord(line);
     }
 
     public String toJSON() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return String.format(
-            "{\"id\":%d,\"productName\":\"%s\",\"category\":\"%s\",\"saleAmount\":%.2f," +
-            "\"quantity\":%d,\"saleDate\":\"%s\",\"customerName\":\"%s\"}",
-            id, productName, category, saleAmount, quantity, 
-            saleDate.format(formatter), customerName
-        );
+        JsonWriter json = new JsonWriter();
+        writeJSON(json);
+        return json.toString();
+    }
+
+    public void writeJSON(JsonWriter json) {
+        json.beginObject()
+            .field("id", id)
+            .field("productName", getProductName())
+            .field("category", getCategory())
+            .fieldMoney("saleAmount", saleAmount)
+            .field("quantity", quantity)
+            .field("saleDate", saleDate)
+            .field("customerName", getCustomerName())
+            .endObject();
     }
 }
\ No newline at end of file
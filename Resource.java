@@ -11,6 +11,18 @@ import java.util.*;
  * Resource - REST API Controller
  */
 public class Resource {
+    private static final int MAX_BATCH_ROWS = Integer.getInteger("sales.batch.maxRows", 100_000);
+
+    // Sales lists up to this size are rendered in memory and cached; larger ones are streamed
+    private static final int MAX_CACHED_ROWS = Integer.getInteger("http.responseCache.maxRows", 2000);
+
+    // ETags are "<server start>-<sales version>", so versions restarting at 0 never collide.
+    // Weak, as the same tag covers the compressed and uncompressed bodies.
+    private static final String ETAG_PREFIX = "W/\"" + Long.toString(System.currentTimeMillis(), 36) + "-";
+
+    private final ResponseCache responses = new ResponseCache();
+
+    private static final Metrics.Operation BATCH_PARSE = Metrics.parseOperation("sales.batch.parse");
 
     /**
      * Handle user registration
@@ -22,6 +34,7 @@ public class Resource {
             if ("POST".equals(exchange.getRequestMethod())) {
                 String body = readRequestBody(exchange);
                 Map<String, String> params = parseFormData(body);
+                Metrics.setUser(params.get("username"));
                 
                 String response = AuthService.register(
                     params.get("username"),
@@ -47,6 +60,7 @@ public class Resource {
             if ("POST".equals(exchange.getRequestMethod())) {
                 String body = readRequestBody(exchange);
                 Map<String, String> params = parseFormData(body);
+                Metrics.setUser(params.get("username"));
                 
                 String response = AuthService.login(
                     params.get("username"),
@@ -70,8 +84,20 @@ public class Resource {
             if ("POST".equals(exchange.getRequestMethod())) {
                 String body = readRequestBody(exchange);
                 Map<String, String> params = parseFormData(body);
+                Metrics.setUser(params.get("username"));
                 
                 String username = params.get("username");
+                String amount = params.get("saleAmount");
+                String quantity = params.get("quantity");
+                // Non-finite amounts cannot be written to the sales file, so refuse them here
+                double saleAmount = amount == null ? Double.NaN
+                    : SalesRecordParser.parseDouble(amount.toCharArray(), 0, amount.length());
+                long saleQuantity = quantity == null ? SalesRecordParser.MALFORMED
+                    : SalesRecordParser.parseSignedInt(quantity.toCharArray(), 0, quantity.length());
+                if (Double.isNaN(saleAmount) || saleQuantity == SalesRecordParser.MALFORMED) {
+                    sendResponse(exchange, 400, "{\"success\":false,\"message\":\"Invalid saleAmount or quantity\"}");
+                    return;
+                }
                 int saleId = Database.getNextSaleId(username);
                 
                 DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -86,8 +112,8 @@ public class Resource {
                     saleId,
                     params.get("productName"),
                     params.get("category"),
-                    Double.parseDouble(params.get("saleAmount")),
-                    Integer.parseInt(params.get("quantity")),
+                    saleAmount,
+                    (int) saleQuantity,
                     saleDate,
                     params.get("customerName")
                 );
@@ -106,7 +132,68 @@ public class Resource {
     }
 
     /**
-     * Get user's sales data
+     * Add a batch of sales in one request.
+     * Body is CSV (text/csv) or NDJSON (application/x-ndjson), parsed as it streams in;
+     * the username is passed in the query string.
+     */
+    public HttpHandler addSalesBatchHandler() {
+        return exchange -> {
+            setCORS(exchange);
+            
+            if ("POST".equals(exchange.getRequestMethod())) {
+                Map<String, String> params = parseQueryString(exchange.getRequestURI().getQuery());
+                String username = params.get("username");
+                if (username == null || username.isEmpty()) {
+                    sendResponse(exchange, 400, "{\"success\":false,\"message\":\"Username is required\"}");
+                    return;
+                }
+                
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                boolean ndjson = contentType != null && contentType.contains("ndjson");
+                List<Product> parsed;
+                long parseStart = BATCH_PARSE.start();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                    parsed = SalesBatchParser.parse(reader, ndjson, MAX_BATCH_ROWS);
+                    BATCH_PARSE.finish(parseStart, 0, parsed.size());
+                } catch (IllegalArgumentException e) {
+                    sendJSON(exchange, 400, new JsonWriter().beginObject()
+                        .field("success", false)
+                        .field("message", e.getMessage())
+                        .endObject());
+                    return;
+                }
+                
+                // Allocate IDs for the whole batch at once
+                int firstId = parsed.isEmpty() ? 0 : Database.allocateSaleIds(username, parsed.size());
+                List<Product> sales = new ArrayList<>(parsed.size());
+                for (int i = 0; i < parsed.size(); i++) {
+                    sales.add(parsed.get(i).withId(firstId + i));
+                }
+                
+                boolean success = Database.saveSales(username, sales);
+                JsonWriter json = new JsonWriter().beginObject()
+                    .field("success", success)
+                    .field("message", success ? "Sales added successfully" : "Failed to add sales")
+                    .field("added", success ? sales.size() : 0);
+                if (success && !sales.isEmpty()) {
+                    json.field("firstId", firstId).field("lastId", firstId + sales.size() - 1);
+                }
+                sendJSON(exchange, 200, json.endObject());
+            } else {
+                sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        };
+    }
+
+    /**
+     * Get user's sales data.
+     * Optional from/to dates (yyyy-MM-dd or yyyy-MM-dd HH:mm:ss, both inclusive)
+     * restrict the range. Optional limit, cursor and sort (id, -id, date, -date)
+     * parameters page through it; the cursor for the next page is returned in X-Next-Cursor.
+     * Responses carry the user's sales version as an ETag: a matching If-None-Match
+     * gets 304 without touching the sales, and unchanged responses are resent from
+     * the response cache. Large lists are streamed with chunked encoding instead.
      */
     public HttpHandler getSalesHandler() {
         return exchange -> {
@@ -117,10 +204,53 @@ public class Resource {
                 Map<String, String> params = parseQueryString(query);
                 String username = params.get("username");
                 
-                List<Product> sales = Database.getUserSales(username);
-                String response = salesToJSON(sales);
+                long version = Database.getSalesVersion(username);
+                String cacheKey = "sales?" + query;
+                if (sendCached(exchange, username, cacheKey, version)) {
+                    return;
+                }
                 
-                sendResponse(exchange, 200, response);
+                LocalDateTime from;
+                LocalDateTime to;
+                try {
+                    from = SalesTimeIndex.parseBound(params.get("from"), false);
+                    to = SalesTimeIndex.parseBound(params.get("to"), true);
+                } catch (IllegalArgumentException e) {
+                    sendResponse(exchange, 400, "{\"error\":\"Invalid from or to date\"}");
+                    return;
+                }
+                // Read as rows, so off-heap sales become Products only as they are
+                // written out or enter a page
+                SalesRows.Snapshot sales = Database.getSalesRows(username, from, to);
+                String nextCursor = null;
+                if (params.containsKey("limit") || params.containsKey("cursor") || params.containsKey("sort")) {
+                    SalesPage page;
+                    try (SalesRows.Snapshot rows = sales) {
+                        int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : 0;
+                        page = SalesPage.select(rows, SalesPage.Sort.parse(params.get("sort")), params.get("cursor"), limit);
+                    } catch (IllegalArgumentException e) {
+                        sendResponse(exchange, 400, "{\"error\":\"Invalid limit, cursor or sort\"}");
+                        return;
+                    }
+                    nextCursor = page.getNextCursor();
+                    sales = SalesRows.of(page.getItems());
+                }
+                
+                try (SalesRows.Snapshot rows = sales) {
+                    // Off-heap row counts include deleted rows, which only errs towards streaming
+                    if (rows.rowCount() > MAX_CACHED_ROWS) {
+                        if (nextCursor != null) {
+                            exchange.getResponseHeaders().add("X-Next-Cursor", nextCursor);
+                        }
+                        setValidators(exchange, version);
+                        streamSales(exchange, rows);
+                        return;
+                    }
+                    JsonWriter json = new JsonWriter().beginArray();
+                    writeSales(json, rows);
+                    sendRendered(exchange, username, cacheKey, version,
+                        new ResponseCache.Response(json.endArray().toByteArray(), nextCursor));
+                }
             } else {
                 sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
             }
@@ -128,7 +258,9 @@ public class Resource {
     }
 
     /**
-     * Get analytics for user
+     * Get analytics for user, optionally restricted to a from/to date range.
+     * mode=approx returns sketch-based top products and distinct customers instead.
+     * Revalidated and cached by sales version like getSalesHandler.
      */
     public HttpHandler getAnalyticsHandler() {
         return exchange -> {
@@ -139,11 +271,65 @@ public class Resource {
                 Map<String, String> params = parseQueryString(query);
                 String username = params.get("username");
                 
-                List<Product> sales = Database.getUserSales(username);
-                SalesAnalytics analytics = new SalesAnalytics(sales);
-                String response = analytics.getAnalyticsJSON();
+                long version = Database.getSalesVersion(username);
+                String cacheKey = "analytics?" + query;
+                if (sendCached(exchange, username, cacheKey, version)) {
+                    return;
+                }
                 
-                sendResponse(exchange, 200, response);
+                LocalDateTime from;
+                LocalDateTime to;
+                try {
+                    from = SalesTimeIndex.parseBound(params.get("from"), false);
+                    to = SalesTimeIndex.parseBound(params.get("to"), true);
+                } catch (IllegalArgumentException e) {
+                    sendResponse(exchange, 400, "{\"error\":\"Invalid from or to date\"}");
+                    return;
+                }
+                
+                JsonWriter json = new JsonWriter();
+                if ("approx".equals(params.get("mode"))) {
+                    // Bounded-memory sketches, kept incrementally for the whole history
+                    SalesSketches sketches;
+                    if (from == null && to == null) {
+                        sketches = Database.getSalesSketches(username);
+                    } else {
+                        try (SalesRows.Snapshot sales = Database.getSalesRows(username, from, to)) {
+                            sketches = SalesSketches.of(sales);
+                        }
+                    }
+                    sketches.writeJSON(json);
+                } else if (from == null && to == null) {
+                    // Served from running aggregates, no scan of the raw sales
+                    Database.getSalesAggregates(username).writeJSON(json);
+                } else {
+                    // Combined from hour/day/month rollups, raw sales only for partial hours
+                    Database.getSalesAnalytics(username, from, to).writeJSON(json);
+                }
+                
+                sendRendered(exchange, username, cacheKey, version, new ResponseCache.Response(json.toByteArray(), null));
+            } else {
+                sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        };
+    }
+
+    /**
+     * Stream the user's sales changes as server-sent events. The exchange stays
+     * open after the handler returns and is written by SalesEventHub.
+     */
+    public HttpHandler salesStreamHandler() {
+        return exchange -> {
+            setCORS(exchange);
+            
+            if ("GET".equals(exchange.getRequestMethod())) {
+                String username = parseQueryString(exchange.getRequestURI().getQuery()).get("username");
+                if (username == null || username.isEmpty()) {
+                    sendResponse(exchange, 400, "{\"error\":\"Username is required\"}");
+                } else if (!Database.getSalesEvents().subscribe(username, exchange)) {
+                    exchange.getResponseHeaders().add("Retry-After", "5");
+                    sendResponse(exchange, 503, "{\"error\":\"Too many open streams\"}");
+                }
             } else {
                 sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
             }
@@ -160,13 +346,18 @@ public class Resource {
             if ("POST".equals(exchange.getRequestMethod())) {
                 String body = readRequestBody(exchange);
                 Map<String, String> params = parseFormData(body);
+                Metrics.setUser(params.get("username"));
                 
                 String username = params.get("username");
                 int saleId = Integer.parseInt(params.get("saleId"));
                 
-                boolean success = Database.deleteSale(username, saleId);
+                Database.DeleteResult result = Database.deleteSale(username, saleId);
                 
-                String response = success ?
+                if (result == Database.DeleteResult.NOT_FOUND) {
+                    sendResponse(exchange, 404, "{\"success\":false,\"message\":\"Sale not found\"}");
+                    return;
+                }
+                String response = result == Database.DeleteResult.DELETED ?
                     "{\"success\":true,\"message\":\"Sale deleted successfully\"}" :
                     "{\"success\":false,\"message\":\"Failed to delete sale\"}";
                 
@@ -177,11 +368,88 @@ public class Resource {
         };
     }
 
+    /**
+     * Get sales cache statistics
+     */
+    public HttpHandler cacheStatsHandler() {
+        return exchange -> {
+            setCORS(exchange);
+            
+            if ("GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, 200, Database.getSalesCacheStats());
+            } else {
+                sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        };
+    }
+
+    /**
+     * Get request executor gauges
+     */
+    public HttpHandler serverStatsHandler(ServerExecutor executor) {
+        return exchange -> {
+            setCORS(exchange);
+            
+            if ("GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, 200, executor.toJSON());
+            } else {
+                sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        };
+    }
+
+    /**
+     * Request and storage metrics: JSON by default, Prometheus text with
+     * format=prometheus or an Accept header asking for text/plain
+     */
+    public HttpHandler metricsHandler() {
+        return exchange -> {
+            setCORS(exchange);
+            
+            if ("GET".equals(exchange.getRequestMethod())) {
+                String format = parseQueryString(exchange.getRequestURI().getQuery()).get("format");
+                String accept = exchange.getRequestHeaders().getFirst("Accept");
+                if ("prometheus".equals(format) || (format == null && accept != null && accept.startsWith("text/plain"))) {
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    sendResponse(exchange, 200, Metrics.toPrometheus());
+                } else {
+                    sendResponse(exchange, 200, Metrics.toJSON());
+                }
+            } else {
+                sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        };
+    }
+
+    /**
+     * Slowest recent requests with endpoint and user; limit defaults to 10
+     */
+    public HttpHandler topTasksHandler() {
+        return exchange -> {
+            setCORS(exchange);
+            
+            if ("GET".equals(exchange.getRequestMethod())) {
+                int limit;
+                try {
+                    String value = parseQueryString(exchange.getRequestURI().getQuery()).get("limit");
+                    limit = value == null ? 10 : Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    sendResponse(exchange, 400, "{\"error\":\"Invalid limit\"}");
+                    return;
+                }
+                sendResponse(exchange, 200, Metrics.topTasksJSON(Math.max(0, limit)));
+            } else {
+                sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        };
+    }
+
     // Helper methods
     private void setCORS(HttpExchange exchange) {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
         exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "X-Next-Cursor, ETag");
         exchange.getResponseHeaders().add("Content-Type", "application/json");
     }
 
@@ -222,19 +490,127 @@ public class Resource {
     }
 
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
+        sendResponse(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendJSON(HttpExchange exchange, int statusCode, JsonWriter json) throws IOException {
+        sendResponse(exchange, statusCode, json.toByteArray());
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        String encoding = negotiateEncoding(exchange, body.length);
+        sendBody(exchange, statusCode, encoding == null ? body : ContentEncoding.encode(body, encoding), encoding);
+    }
+
+    /**
+     * Encoding to send a body of the given length with, or null to send it as is.
+     * Bodies big enough to compress vary by Accept-Encoding, so caches are told so.
+     */
+    private String negotiateEncoding(HttpExchange exchange, long length) {
+        if (length >= 0 && length < ContentEncoding.MIN_BYTES) {
+            return null;
+        }
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    private void sendBody(HttpExchange exchange, int statusCode, byte[] body, String encoding) throws IOException {
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
         OutputStream os = exchange.getResponseBody();
-        os.write(response.getBytes());
+        os.write(body);
         os.close();
     }
 
-    private String salesToJSON(List<Product> sales) {
-        StringBuilder json = new StringBuilder("[");
-        for (int i = 0; i < sales.size(); i++) {
-            json.append(sales.get(i).toJSON());
-            if (i < sales.size() - 1) json.append(",");
+    /**
+     * Answer from the sales version alone if possible: 304 when If-None-Match holds
+     * the current ETag, or the cached body rendered at this version. Returns false if
+     * the response still has to be rendered. Only successful responses get the ETag,
+     * so errors are never revalidated or cached by clients.
+     */
+    private boolean sendCached(HttpExchange exchange, String username, String cacheKey, long version) throws IOException {
+        String etag = etag(version);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                // Weak comparison: the W/ prefix is ignored on both sides
+                String tag = candidate.trim();
+                if (!tag.startsWith("W/")) {
+                    tag = "W/" + tag;
+                }
+                if (tag.equals(etag) || tag.equals("W/*")) {
+                    setValidators(exchange, version);
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return true;
+                }
+            }
+        }
+        
+        ResponseCache.Response cached = responses.get(username, cacheKey, version);
+        if (cached == null) {
+            return false;
+        }
+        setValidators(exchange, version);
+        sendRendered(exchange, cached);
+        return true;
+    }
+
+    private static String etag(long version) {
+        return ETAG_PREFIX + version + "\"";
+    }
+
+    // For 200 and 304 responses only
+    private void setValidators(HttpExchange exchange, long version) {
+        exchange.getResponseHeaders().set("ETag", etag(version));
+        // Revalidate on every use, so a browser always asks with If-None-Match
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    }
+
+    private void sendRendered(HttpExchange exchange, String username, String cacheKey, long version,
+                              ResponseCache.Response response) throws IOException {
+        responses.put(username, cacheKey, version, response);
+        setValidators(exchange, version);
+        sendRendered(exchange, response);
+    }
+
+    // Compressed bodies are kept with the cached response, so each is compressed once per version
+    private void sendRendered(HttpExchange exchange, ResponseCache.Response response) throws IOException {
+        if (response.getNextCursor() != null) {
+            exchange.getResponseHeaders().add("X-Next-Cursor", response.getNextCursor());
+        }
+        String encoding = negotiateEncoding(exchange, response.getBody().length);
+        sendBody(exchange, 200, encoding == null ? response.getBody() : response.getBody(encoding), encoding);
+    }
+
+    /**
+     * Write sales as a JSON array straight to the response with chunked encoding,
+     * compressed on the way out if negotiated
+     */
+    private void streamSales(HttpExchange exchange, SalesRows.Source sales) throws IOException {
+        String encoding = negotiateEncoding(exchange, -1);
+        OutputStream out = exchange.getResponseBody();
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            exchange.sendResponseHeaders(200, 0);
+            out = ContentEncoding.wrap(out, encoding);
+        } else {
+            exchange.sendResponseHeaders(200, 0);
+        }
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginArray();
+            writeSales(json, sales);
+            json.endArray();
+        }
+    }
+
+    private static void writeSales(JsonWriter json, SalesRows.Source sales) {
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                rows.product().writeJSON(json);
+            }
         }
-        json.append("]");
-        return json.toString();
     }
 }
\ No newline at end of file
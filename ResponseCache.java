@@ -0,0 +1,115 @@
+import java.util.*;
+
+/**
+ * ResponseCache - Rendered API responses per user, valid for one sales version
+ * Entries are keyed by endpoint and query string and tagged with the user's sales
+ * version when they were rendered; a newer version replaces all of a user's
+ * entries. Bounded by total body bytes, evicting least recently used users.
+ * Compressed copies are made once per entry on first request and are not counted.
+ */
+public class ResponseCache {
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, UserResponses> users = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+
+    public ResponseCache() {
+        this(Long.getLong("http.responseCache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cached response for the user's key at exactly this version, or null
+     */
+    public synchronized Response get(String username, String key, long version) {
+        UserResponses entry = users.get(username);
+        if (entry == null || entry.version != version) {
+            return null;
+        }
+        return entry.responses.get(key);
+    }
+
+    /**
+     * Cache a response rendered at the given version. Responses for an older version
+     * than the one cached are dropped, as are single bodies over 1/8 of the budget.
+     */
+    public synchronized void put(String username, String key, long version, Response response) {
+        if (response.body.length > maxBytes / 8) {
+            return;
+        }
+        UserResponses entry = users.get(username);
+        if (entry != null && entry.version > version) {
+            return;
+        }
+        if (entry == null || entry.version < version) {
+            if (entry != null) {
+                cachedBytes -= entry.bytes;
+            }
+            entry = new UserResponses(version);
+            users.put(username, entry);
+        }
+        Response previous = entry.responses.put(key, response);
+        long delta = response.body.length - (previous == null ? 0 : previous.body.length);
+        entry.bytes += delta;
+        cachedBytes += delta;
+        evictIfNeeded();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<UserResponses> it = users.values().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            cachedBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * A rendered JSON body and the X-Next-Cursor header sent with it, if any
+     */
+    public static final class Response {
+        private final byte[] body;
+        private final String nextCursor;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        public Response(byte[] body, String nextCursor) {
+            this.body = body;
+            this.nextCursor = nextCursor;
+        }
+
+        public byte[] getBody() { return body; }
+        public String getNextCursor() { return nextCursor; }
+
+        /**
+         * The body compressed with a ContentEncoding encoding, compressed on first use
+         */
+        public byte[] getBody(String encoding) {
+            if ("gzip".equals(encoding)) {
+                byte[] encoded = gzip;
+                if (encoded == null) {
+                    gzip = encoded = ContentEncoding.encode(body, encoding);
+                }
+                return encoded;
+            }
+            byte[] encoded = deflate;
+            if (encoded == null) {
+                deflate = encoded = ContentEncoding.encode(body, encoding);
+            }
+            return encoded;
+        }
+    }
+
+    private static final class UserResponses {
+        final long version;
+        final Map<String, Response> responses = new HashMap<>();
+        long bytes = 0;
+
+        UserResponses(long version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * SaleIdAllocator - Per-user sale ID allocation without re-reading the sales file
+ * Each user has an atomic counter. A high-water mark is persisted beside the sales
+ * file in blocks, so after a restart IDs continue above anything handed out before.
+ * The first allocation for a user recovers from the high-water mark and the highest
+ * ID in storage (by default a scan of the tail of the sales file, tombstones
+ * included up to the high-water mark), whichever is larger. The mark is written to a temporary file, synced
+ * and renamed over the old one, so a crash leaves either the old or the new mark.
+ */
+public class SaleIdAllocator {
+    private static final int RESERVE_BLOCK = 100;
+    private static final int TAIL_SCAN_BYTES = 64 * 1024;
+
+    private final String filePrefix;
+    private final ToIntFunction<String> storedMaxId;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public SaleIdAllocator(String filePrefix) {
+        this.filePrefix = filePrefix;
+        this.storedMaxId = this::scanTailMaxId;
+    }
+
+    /**
+     * Allocator for a storage engine that can report its highest stored ID itself
+     */
+    public SaleIdAllocator(String filePrefix, ToIntFunction<String> storedMaxId) {
+        this.filePrefix = filePrefix;
+        this.storedMaxId = storedMaxId;
+    }
+
+    /**
+     * Allocate the next sale ID for a user
+     */
+    public int next(String username) {
+        return nextBlock(username, 1);
+    }
+
+    /**
+     * Highest ID that may have been handed out for a user, 0 if none
+     */
+    public int current(String username) {
+        return counters.computeIfAbsent(username, this::recover).last.get();
+    }
+
+    /**
+     * Allocate count consecutive IDs for a user, returning the first
+     */
+    public int nextBlock(String username, int count) {
+        Counter counter = counters.computeIfAbsent(username, this::recover);
+        int last = counter.last.addAndGet(count);
+        if (last > counter.reservedUpTo) {
+            reserve(username, counter, last);
+        }
+        return last - count + 1;
+    }
+
+    // Persist a new high-water mark before handing out IDs above the old one
+    private void reserve(String username, Counter counter, int last) {
+        synchronized (counter) {
+            if (last <= counter.reservedUpTo) {
+                return;
+            }
+            int reservedUpTo = last + RESERVE_BLOCK;
+            File file = hwmFile(username);
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(Integer.toString(reservedUpTo).getBytes(StandardCharsets.UTF_8));
+                    out.getFD().sync();
+                }
+                Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // The tail scan still recovers every ID that made it into the sales file
+                System.err.println("Error saving sale ID high-water mark: " + e.getMessage());
+            }
+            counter.reservedUpTo = reservedUpTo;
+        }
+    }
+
+    private Counter recover(String username) {
+        int last = Math.max(readHighWaterMark(username), storedMaxId.applyAsInt(username));
+        Counter counter = new Counter();
+        counter.last.set(last);
+        counter.reservedUpTo = last;
+        return counter;
+    }
+
+    private int readHighWaterMark(String username) {
+        File file = hwmFile(username);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            return line == null ? 0 : Integer.parseInt(line.trim());
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading sale ID high-water mark: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Max ID among the records and tombstones in the last TAIL_SCAN_BYTES of the
+     * sales file. Records are appended in allocation order, so the max is always near
+     * the tail; a deleted ID survives as its tombstone, which compaction keeps for
+     * the highest ID. Tombstones count only up to the high-water mark, which covers
+     * every ID handed out, as one may name an ID that was never issued.
+     */
+    private int scanTailMaxId(String username) {
+        File file = new File(filePrefix + username + ".txt");
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long start = Math.max(0, length - TAIL_SCAN_BYTES);
+            byte[] tail = new byte[(int) (length - start)];
+            raf.seek(start);
+            raf.readFully(tail);
+
+            int maxRecord = 0;
+            int maxTombstone = 0;
+            int pos = 0;
+            // Skip the partial first line unless the scan starts at the beginning of the file
+            if (start > 0) {
+                while (pos < tail.length && tail[pos] != '\n') pos++;
+                pos++;
+            }
+            while (pos < tail.length) {
+                boolean tombstone = tail[pos] == SalesRecordParser.TOMBSTONE;
+                if (tombstone) {
+                    pos++;
+                }
+                int id = 0;
+                boolean digits = false;
+                while (pos < tail.length && tail[pos] >= '0' && tail[pos] <= '9') {
+                    id = id * 10 + (tail[pos++] - '0');
+                    digits = true;
+                }
+                boolean endOfLine = pos >= tail.length || tail[pos] == '\n' || tail[pos] == '\r';
+                if (digits && tombstone && endOfLine) {
+                    maxTombstone = Math.max(maxTombstone, id);
+                } else if (digits && !tombstone && pos < tail.length && tail[pos] == ',') {
+                    maxRecord = Math.max(maxRecord, id);
+                }
+                while (pos < tail.length && tail[pos] != '\n') pos++;
+                pos++;
+            }
+            int mark = readHighWaterMark(username);
+            return Math.max(maxRecord, mark > 0 ? Math.min(maxTombstone, mark) : maxTombstone);
+        } catch (IOException e) {
+            System.err.println("Error scanning sales file: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private File hwmFile(String username) {
+        return new File(filePrefix + username + ".hwm");
+    }
+
+    private static final class Counter {
+        final AtomicInteger last = new AtomicInteger();
+        volatile int reservedUpTo;
+    }
+}
@@ -0,0 +1,388 @@
+import java.util.*;
+
+/**
+ * SalesAggregates - Running analytics for one user's sales
+ * Updated by Database.saveSale/deleteSale so the analytics summary can be
+ * served without re-reading or re-scanning the raw sales. A cold build at or above
+ * the analytics parallel threshold aggregates chunks on the AnalyticsKernel pool
+ * and merges them in order.
+ *
+ * Products and categories are keyed by their SalesDictionary text codes
+ * (SalesDictionary.textCode, so a null name groups as "null" like a reloaded
+ * file) and only decoded to names when JSON is written.
+ */
+public class SalesAggregates {
+    // Text codes in name order; decoding is an array read, so comparing allocates nothing
+    private static final Comparator<Integer> BY_NAME =
+        (a, b) -> SalesDictionary.string(a).compareTo(SalesDictionary.string(b));
+
+    private int totalSales = 0;
+    private double totalRevenue = 0.0;
+
+    // Quantity per product code, mirrored in an ordered set for top/least lookups
+    private final Map<Integer, ProductLine> products = new HashMap<>();
+    private final TreeSet<ProductQuantity> productRanking = new TreeSet<>();
+
+    // Sale amount -> product code occurrence counts, for max sale under deletes
+    private final TreeMap<Double, Map<Integer, Integer>> amountIndex = new TreeMap<>();
+
+    // Keyed by year * 12 + (month - 1) so iteration is chronological
+    private final TreeMap<Integer, Bucket> monthlySales = new TreeMap<>();
+    // Category code ordered by name, the order AnalyticsKernel writes categories in
+    private final Map<Integer, Bucket> categorySales = new TreeMap<>(BY_NAME);
+    private final double[] hourlyAmounts = new double[24];
+    private final int[] hourlyCounts = new int[24];
+
+    /**
+     * Build aggregates from a full sales list
+     */
+    public static SalesAggregates of(List<Product> sales) {
+        return of(SalesRows.of(sales));
+    }
+
+    /**
+     * Build aggregates from sales read through cursors, such as a columnar segment
+     * or an off-heap table, without creating Products
+     */
+    public static SalesAggregates of(SalesRows.Source sales) {
+        return AnalyticsKernel.forkJoin(sales.rowCount(), (from, to) -> scan(sales, from, to), SalesAggregates::merge);
+    }
+
+    private static SalesAggregates scan(SalesRows.Source sales, int from, int to) {
+        SalesAggregates aggregates = new SalesAggregates();
+        try (SalesRows rows = sales.cursor(from, to)) {
+            while (rows.next()) {
+                long epochSecond = rows.epochSecond();
+                aggregates.add(SalesDictionary.textCode(rows.productCode()),
+                    SalesDictionary.textCode(rows.categoryCode()), rows.amount(), rows.quantity(),
+                    AnalyticsKernel.monthKey(epochSecond), AnalyticsKernel.hourOf(epochSecond));
+            }
+        }
+        return aggregates;
+    }
+
+    // Fold in the aggregates for the sales that follow these, as if added one by one
+    private SalesAggregates merge(SalesAggregates next) {
+        totalSales += next.totalSales;
+        totalRevenue += next.totalRevenue;
+        for (Map.Entry<Integer, ProductLine> entry : next.products.entrySet()) {
+            adjustProduct(entry.getKey(), entry.getValue().quantity, entry.getValue().sales);
+        }
+        for (Map.Entry<Double, Map<Integer, Integer>> entry : next.amountIndex.entrySet()) {
+            Map<Integer, Integer> products = amountIndex.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>());
+            for (Map.Entry<Integer, Integer> product : entry.getValue().entrySet()) {
+                products.merge(product.getKey(), product.getValue(), Integer::sum);
+            }
+        }
+        mergeBuckets(monthlySales, next.monthlySales);
+        mergeBuckets(categorySales, next.categorySales);
+        for (int hour = 0; hour < 24; hour++) {
+            hourlyAmounts[hour] += next.hourlyAmounts[hour];
+            hourlyCounts[hour] += next.hourlyCounts[hour];
+        }
+        return this;
+    }
+
+    private static <K> void mergeBuckets(Map<K, Bucket> buckets, Map<K, Bucket> next) {
+        for (Map.Entry<K, Bucket> entry : next.entrySet()) {
+            Bucket bucket = buckets.computeIfAbsent(entry.getKey(), k -> new Bucket());
+            bucket.amount += entry.getValue().amount;
+            bucket.count += entry.getValue().count;
+        }
+    }
+
+    /**
+     * Account for a newly saved sale
+     */
+    public void add(Product sale) {
+        add(productCode(sale), categoryCode(sale), sale.getSaleAmount(),
+            sale.getQuantity(), monthKey(sale), sale.getHour());
+    }
+
+    private synchronized void add(int product, int category, double amount,
+                                  int quantity, int monthKey, int hour) {
+        totalSales++;
+        totalRevenue += amount;
+
+        adjustProduct(product, quantity, 1);
+
+        amountIndex.computeIfAbsent(amount, k -> new LinkedHashMap<>()).merge(product, 1, Integer::sum);
+
+        monthlySales.computeIfAbsent(monthKey, k -> new Bucket()).add(amount);
+        categorySales.computeIfAbsent(category, k -> new Bucket()).add(amount);
+
+        hourlyAmounts[hour] += amount;
+        hourlyCounts[hour]++;
+    }
+
+    /**
+     * Account for a deleted sale
+     */
+    public synchronized void remove(Product sale) {
+        totalSales--;
+        totalRevenue = totalSales == 0 ? 0.0 : totalRevenue - sale.getSaleAmount();
+
+        adjustProduct(productCode(sale), -sale.getQuantity(), -1);
+
+        Map<Integer, Integer> products = amountIndex.get(sale.getSaleAmount());
+        if (products != null) {
+            products.computeIfPresent(productCode(sale), (k, v) -> v > 1 ? v - 1 : null);
+            if (products.isEmpty()) {
+                amountIndex.remove(sale.getSaleAmount());
+            }
+        }
+
+        removeFromBucket(monthlySales, monthKey(sale), sale.getSaleAmount());
+        removeFromBucket(categorySales, categoryCode(sale), sale.getSaleAmount());
+
+        int hour = sale.getHour();
+        hourlyCounts[hour]--;
+        hourlyAmounts[hour] = hourlyCounts[hour] == 0 ? 0.0 : hourlyAmounts[hour] - sale.getSaleAmount();
+    }
+
+    private void adjustProduct(int product, int quantityDelta, int salesDelta) {
+        ProductLine line = products.get(product);
+        if (line == null) {
+            line = new ProductLine();
+            products.put(product, line);
+        } else {
+            productRanking.remove(new ProductQuantity(product, line.quantity));
+        }
+        line.quantity += quantityDelta;
+        line.sales += salesDelta;
+
+        // A product stays listed while it has live sales, even at zero quantity
+        if (line.sales <= 0) {
+            products.remove(product);
+        } else {
+            productRanking.add(new ProductQuantity(product, line.quantity));
+        }
+    }
+
+    private static <K> void removeFromBucket(Map<K, Bucket> buckets, K key, double amount) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null && bucket.remove(amount)) {
+            buckets.remove(key);
+        }
+    }
+
+    private static int productCode(Product sale) {
+        return SalesDictionary.textCode(sale.getProductCode());
+    }
+
+    private static int categoryCode(Product sale) {
+        return SalesDictionary.textCode(sale.getCategoryCode());
+    }
+
+    private static int monthKey(Product sale) {
+        return sale.getYear() * 12 + sale.getSaleDate().getMonthValue() - 1;
+    }
+
+    /**
+     * Generate complete analytics JSON, same shape as SalesAnalytics.getAnalyticsJSON
+     */
+    public String toJSON() {
+        JsonWriter json = new JsonWriter();
+        writeJSON(json);
+        return json.toString();
+    }
+
+    public synchronized void writeJSON(JsonWriter json) {
+        json.beginObject();
+
+        // Summary metrics
+        writeSummary(json);
+
+        // Top and least selling products
+        writeRankings(json);
+
+        // Monthly sales
+        json.name("monthlySales").beginObject();
+        for (Map.Entry<Integer, Bucket> entry : monthlySales.entrySet()) {
+            json.fieldMoney(AnalyticsKernel.monthLabel(entry.getKey()), entry.getValue().amount);
+        }
+        json.endObject();
+
+        // Category sales
+        json.name("categorySales").beginObject();
+        for (Map.Entry<Integer, Bucket> entry : categorySales.entrySet()) {
+            json.fieldMoney(SalesDictionary.string(entry.getKey()), entry.getValue().amount);
+        }
+        json.endObject();
+
+        // Hourly sales
+        json.name("hourlySales").beginObject();
+        for (int hour = 0; hour < 24; hour++) {
+            if (hourlyCounts[hour] > 0) {
+                json.fieldMoney(AnalyticsKernel.hourKey(hour), hourlyAmounts[hour]);
+            }
+        }
+        json.endObject();
+
+        json.endObject();
+    }
+
+    /**
+     * Write the summary and the month, category and hour cells touched by the given
+     * sales, as they stand now, as fields of an open object. A cell left without
+     * sales is written as null.
+     */
+    public synchronized void writeCells(JsonWriter json, List<Product> changed) {
+        TreeSet<Integer> months = new TreeSet<>();
+        Set<Integer> categories = new TreeSet<>(BY_NAME);
+        boolean[] hours = new boolean[24];
+        for (Product sale : changed) {
+            months.add(monthKey(sale));
+            categories.add(categoryCode(sale));
+            hours[sale.getHour()] = true;
+        }
+
+        writeSummary(json);
+
+        json.name("monthlySales").beginObject();
+        for (int month : months) {
+            writeCell(json, AnalyticsKernel.monthLabel(month), monthlySales.get(month));
+        }
+        json.endObject();
+
+        json.name("categorySales").beginObject();
+        for (int category : categories) {
+            writeCell(json, SalesDictionary.string(category), categorySales.get(category));
+        }
+        json.endObject();
+
+        json.name("hourlySales").beginObject();
+        for (int hour = 0; hour < 24; hour++) {
+            if (hours[hour]) {
+                json.name(AnalyticsKernel.hourKey(hour));
+                if (hourlyCounts[hour] > 0) {
+                    json.valueMoney(hourlyAmounts[hour]);
+                } else {
+                    json.value((String) null);
+                }
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * Write topProducts and leastProducts as fields of an open object
+     */
+    public synchronized void writeRankings(JsonWriter json) {
+        json.name("topProducts");
+        writeRanking(json, productRanking.descendingIterator(), 5);
+        json.name("leastProducts");
+        writeRanking(json, productRanking.iterator(), 5);
+    }
+
+    private void writeSummary(JsonWriter json) {
+        Map.Entry<Double, Map<Integer, Integer>> maxSale = amountIndex.lastEntry();
+        json.name("summary").beginObject()
+            .fieldMoney("totalRevenue", totalRevenue)
+            .field("totalSales", totalSales)
+            .fieldMoney("maxSaleAmount", maxSale == null ? 0.0 : maxSale.getKey())
+            .field("maxSaleProduct", maxSale == null ? "N/A"
+                : SalesDictionary.string(maxSale.getValue().keySet().iterator().next()))
+            .field("maxSaleMonth", maxSaleMonth())
+            .field("peakSalesHour", peakSalesHour())
+            .endObject();
+    }
+
+    private static void writeCell(JsonWriter json, String name, Bucket bucket) {
+        json.name(name);
+        if (bucket != null) {
+            json.valueMoney(bucket.amount);
+        } else {
+            json.value((String) null);
+        }
+    }
+
+    private String maxSaleMonth() {
+        String best = "N/A";
+        double bestAmount = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<Integer, Bucket> entry : monthlySales.entrySet()) {
+            if (entry.getValue().amount > bestAmount) {
+                bestAmount = entry.getValue().amount;
+                best = AnalyticsKernel.monthLabel(entry.getKey());
+            }
+        }
+        return best;
+    }
+
+    private int peakSalesHour() {
+        int peak = 0;
+        double peakAmount = Double.NEGATIVE_INFINITY;
+        for (int hour = 0; hour < 24; hour++) {
+            if (hourlyCounts[hour] > 0 && hourlyAmounts[hour] > peakAmount) {
+                peakAmount = hourlyAmounts[hour];
+                peak = hour;
+            }
+        }
+        return peak;
+    }
+
+    private static void writeRanking(JsonWriter json, Iterator<ProductQuantity> it, int limit) {
+        json.beginObject();
+        for (int i = 0; i < limit && it.hasNext(); i++) {
+            ProductQuantity entry = it.next();
+            json.field(SalesDictionary.string(entry.product), entry.quantity);
+        }
+        json.endObject();
+    }
+
+    /**
+     * Running amount and row count for one month/category
+     */
+    private static final class Bucket {
+        double amount;
+        int count;
+
+        void add(double value) {
+            amount += value;
+            count++;
+        }
+
+        // Returns true once the bucket is empty
+        boolean remove(double value) {
+            count--;
+            amount -= value;
+            return count <= 0;
+        }
+    }
+
+    private static final class ProductLine {
+        int quantity;
+        int sales;
+    }
+
+    /**
+     * Ranking entry ordered by quantity, then name for a stable total order
+     */
+    private static final class ProductQuantity implements Comparable<ProductQuantity> {
+        final int product;
+        final int quantity;
+
+        ProductQuantity(int product, int quantity) {
+            this.product = product;
+            this.quantity = quantity;
+        }
+
+        @Override
+        public int compareTo(ProductQuantity other) {
+            int byQuantity = Integer.compare(quantity, other.quantity);
+            return byQuantity != 0 ? byQuantity : BY_NAME.compare(product, other.product);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ProductQuantity)) return false;
+            ProductQuantity other = (ProductQuantity) o;
+            return quantity == other.quantity && product == other.product;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * product + quantity;
+        }
+    }
+}
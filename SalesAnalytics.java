@@ -1,56 +1,102 @@
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
 
 /**
  * SalesAnalytics - Generates insights from sales data
+ * Reads the sales through SalesRows, grouping by SalesDictionary code as
+ * AnalyticsKernel and SalesAggregates do, so it gives the same results for the
+ * same sales.
  */
 public class SalesAnalytics {
-    private List<Product> sales;
+    private final SalesRows.Source sales;
 
     public SalesAnalytics(List<Product> sales) {
-        this.sales = sales;
+        this.sales = SalesRows.of(sales);
     }
 
+    // Quantity, then name, matching the ranking in AnalyticsKernel and SalesAggregates
+    private static final Comparator<Map.Entry<String, Integer>> BY_QUANTITY =
+        Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey());
+
     /**
      * Get top selling products by quantity
      */
     public Map<String, Integer> getTopSellingProducts(int limit) {
-        Map<String, Integer> productSales = new HashMap<>();
-        
-        for (Product sale : sales) {
-            productSales.merge(sale.getProductName(), sale.getQuantity(), Integer::sum);
-        }
-        
-        return productSales.entrySet().stream()
-            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-            .limit(limit)
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            ));
+        return selectProducts(getQuantitiesByProduct(), limit, BY_QUANTITY.reversed());
     }
 
     /**
      * Get least selling products
      */
     public Map<String, Integer> getLeastSellingProducts(int limit) {
-        Map<String, Integer> productSales = new HashMap<>();
+        return selectProducts(getQuantitiesByProduct(), limit, BY_QUANTITY);
+    }
+
+    // Summed by dictionary code, decoded once per product; null names group as "null"
+    private Map<String, Integer> getQuantitiesByProduct() {
+        SalesDictionary.Slots products = new SalesDictionary.Slots();
+        int[] quantities = new int[16];
         
-        for (Product sale : sales) {
-            productSales.merge(sale.getProductName(), sale.getQuantity(), Integer::sum);
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                int slot = products.slot(SalesDictionary.textCode(rows.productCode()));
+                quantities = add(quantities, slot, rows.quantity());
+            }
         }
         
-        return productSales.entrySet().stream()
-            .sorted(Map.Entry.comparingByValue())
-            .limit(limit)
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            ));
+        Map<String, Integer> productSales = new HashMap<>();
+        for (int slot = 0; slot < products.size(); slot++) {
+            productSales.put(SalesDictionary.string(products.code(slot)), quantities[slot]);
+        }
+        return productSales;
+    }
+
+    // Add to a per-slot total, growing the array for a new slot
+    private static int[] add(int[] totals, int slot, int value) {
+        if (slot == totals.length) {
+            totals = Arrays.copyOf(totals, slot * 2);
+        }
+        totals[slot] += value;
+        return totals;
+    }
+
+    private static double[] add(double[] totals, int slot, double value) {
+        if (slot == totals.length) {
+            totals = Arrays.copyOf(totals, slot * 2);
+        }
+        totals[slot] += value;
+        return totals;
+    }
+
+    /**
+     * First limit entries in order, selected with a bounded heap in O(n log k)
+     * instead of sorting every product
+     */
+    static Map<String, Integer> selectProducts(Map<String, Integer> totals, int limit,
+                                               Comparator<Map.Entry<String, Integer>> order) {
+        if (limit <= 0) {
+            return new LinkedHashMap<>();
+        }
+        // Heap top is the entry that ranks last among those kept
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        for (Map.Entry<String, Integer> entry : totals.entrySet()) {
+            if (heap.size() < limit) {
+                heap.add(entry);
+            } else if (order.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        
+        List<Map.Entry<String, Integer>> selected = new ArrayList<>(heap);
+        selected.sort(order);
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : selected) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
     }
 
     /**
@@ -59,9 +105,18 @@ public class SalesAnalytics {
     public Map<String, Double> getSalesByMonth() {
         Map<String, Double> monthlySales = new HashMap<>();
         
-        for (Product sale : sales) {
-            String monthYear = sale.getMonthName() + " " + sale.getYear();
-            monthlySales.merge(monthYear, sale.getSaleAmount(), Double::sum);
+        // Rows are mostly in date order, so the label changes rarely
+        int lastKey = -1;
+        String monthYear = null;
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                int key = AnalyticsKernel.monthKey(rows.epochSecond());
+                if (key != lastKey) {
+                    lastKey = key;
+                    monthYear = AnalyticsKernel.monthLabel(key);
+                }
+                monthlySales.merge(monthYear, rows.amount(), Double::sum);
+            }
         }
         
         return monthlySales;
@@ -85,8 +140,10 @@ public class SalesAnalytics {
     public Map<Integer, Double> getSalesByHour() {
         Map<Integer, Double> hourlySales = new HashMap<>();
         
-        for (Product sale : sales) {
-            hourlySales.merge(sale.getHour(), sale.getSaleAmount(), Double::sum);
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                hourlySales.merge(AnalyticsKernel.hourOf(rows.epochSecond()), rows.amount(), Double::sum);
+            }
         }
         
         return hourlySales;
@@ -108,113 +165,85 @@ public class SalesAnalytics {
      * Get maximum single sale amount
      */
     public double getMaxSaleAmount() {
-        return sales.stream()
-            .mapToDouble(Product::getSaleAmount)
-            .max()
-            .orElse(0.0);
+        try (DoubleStream amounts = amounts()) {
+            return amounts.max().orElse(0.0);
+        }
     }
 
     /**
      * Get product with maximum sale amount
      */
     public String getMaxSaleProduct() {
-        return sales.stream()
-            .max(Comparator.comparingDouble(Product::getSaleAmount))
-            .map(Product::getProductName)
-            .orElse("N/A");
+        // First row with the highest amount
+        int product = SalesDictionary.NULL;
+        double max = 0.0;
+        boolean any = false;
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                if (!any || Double.compare(rows.amount(), max) > 0) {
+                    any = true;
+                    max = rows.amount();
+                    product = rows.productCode();
+                }
+            }
+        }
+        String name = SalesDictionary.string(product);
+        return name != null ? name : "N/A";
     }
 
     /**
      * Get total revenue
      */
     public double getTotalRevenue() {
-        return sales.stream()
-            .mapToDouble(Product::getSaleAmount)
-            .sum();
+        try (DoubleStream amounts = amounts()) {
+            return amounts.sum();
+        }
+    }
+
+    // Sale amounts in order, streamed from rows that are closed with the stream.
+    // DoubleStream.sum compensates for rounding error, which a plain loop would not.
+    private DoubleStream amounts() {
+        SalesRows rows = sales.cursor();
+        Spliterator.OfDouble spliterator = new Spliterators.AbstractDoubleSpliterator(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(DoubleConsumer action) {
+                if (!rows.next()) {
+                    return false;
+                }
+                action.accept(rows.amount());
+                return true;
+            }
+        };
+        return StreamSupport.doubleStream(spliterator, false).onClose(rows::close);
     }
 
     /**
      * Get sales by category
      */
     public Map<String, Double> getSalesByCategory() {
-        Map<String, Double> categorySales = new HashMap<>();
-        
-        for (Product sale : sales) {
-            categorySales.merge(sale.getCategory(), sale.getSaleAmount(), Double::sum);
+        SalesDictionary.Slots categories = new SalesDictionary.Slots();
+        double[] amounts = new double[8];
+        
+        // Null categories group as "null", as they read back from the sales file
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                int slot = categories.slot(SalesDictionary.textCode(rows.categoryCode()));
+                amounts = add(amounts, slot, rows.amount());
+            }
         }
         
+        Map<String, Double> categorySales = new HashMap<>();
+        for (int slot = 0; slot < categories.size(); slot++) {
+            categorySales.put(SalesDictionary.string(categories.code(slot)), amounts[slot]);
+        }
         return categorySales;
     }
 
     /**
-     * Generate complete analytics JSON
+     * Generate complete analytics JSON in a single pass over the sales
      */
     public String getAnalyticsJSON() {
-        StringBuilder json = new StringBuilder();
-        json.append("{");
-        
-        // Summary metrics
-        json.append("\"summary\":{");
-        json.append("\"totalRevenue\":").append(String.format("%.2f", getTotalRevenue())).append(",");
-        json.append("\"totalSales\":").append(sales.size()).append(",");
-        json.append("\"maxSaleAmount\":").append(String.format("%.2f", getMaxSaleAmount())).append(",");
-        json.append("\"maxSaleProduct\":\"").append(getMaxSaleProduct()).append("\",");
-        json.append("\"maxSaleMonth\":\"").append(getMaxSaleMonth()).append("\",");
-        json.append("\"peakSalesHour\":").append(getPeakSalesHour());
-        json.append("},");
-        
-        // Top selling products
-        json.append("\"topProducts\":").append(mapToJSON(getTopSellingProducts(5))).append(",");
-        
-        // Least selling products
-        json.append("\"leastProducts\":").append(mapToJSON(getLeastSellingProducts(5))).append(",");
-        
-        // Monthly sales
-        json.append("\"monthlySales\":").append(mapToJSONDouble(getSalesByMonth())).append(",");
-        
-        // Category sales
-        json.append("\"categorySales\":").append(mapToJSONDouble(getSalesByCategory())).append(",");
-        
-        // Hourly sales
-        json.append("\"hourlySales\":").append(mapToJSONIntDouble(getSalesByHour()));
-        
-        json.append("}");
-        return json.toString();
-    }
-
-    private String mapToJSON(Map<String, Integer> map) {
-        StringBuilder json = new StringBuilder("{");
-        boolean first = true;
-        for (Map.Entry<String, Integer> entry : map.entrySet()) {
-            if (!first) json.append(",");
-            first = false;
-            json.append("\"").append(entry.getKey()).append("\":").append(entry.getValue());
-        }
-        json.append("}");
-        return json.toString();
-    }
-
-    private String mapToJSONDouble(Map<String, Double> map) {
-        StringBuilder json = new StringBuilder("{");
-        boolean first = true;
-        for (Map.Entry<String, Double> entry : map.entrySet()) {
-            if (!first) json.append(",");
-            first = false;
-            json.append("\"").append(entry.getKey()).append("\":").append(String.format("%.2f", entry.getValue()));
-        }
-        json.append("}");
-        return json.toString();
-    }
-
-    private String mapToJSONIntDouble(Map<Integer, Double> map) {
-        StringBuilder json = new StringBuilder("{");
-        boolean first = true;
-        for (Map.Entry<Integer, Double> entry : map.entrySet()) {
-            if (!first) json.append(",");
-            first = false;
-            json.append("\"").append(entry.getKey()).append("\":").append(String.format("%.2f", entry.getValue()));
-        }
-        json.append("}");
-        return json.toString();
+        return AnalyticsKernel.run(sales).toJSON();
     }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * SalesBatchParser - Streaming parser for /api/add-sales-batch request bodies
+ *
+ * CSV (text/csv): productName,category,saleAmount,quantity,saleDate,customerName
+ *   one sale per line, text fields may be quoted, an optional header line is skipped.
+ * NDJSON (application/x-ndjson): one flat JSON object per line with the same keys.
+ *
+ * saleDate is yyyy-MM-dd HH:mm:ss and defaults to now, like /api/add-sale.
+ * Parsed sales carry ID 0; real IDs are allocated for the whole batch afterwards.
+ */
+public final class SalesBatchParser {
+    private static final int CSV_FIELDS = 6;
+
+    private SalesBatchParser() {}
+
+    /**
+     * Parse a batch body line by line. Throws IllegalArgumentException naming the
+     * first bad line, so a batch is accepted or rejected as a whole.
+     */
+    public static List<Product> parse(BufferedReader reader, boolean ndjson, int maxRows) throws IOException {
+        List<Product> sales = new ArrayList<>();
+        int[] bounds = new int[CSV_FIELDS * 2];
+        LocalDateTime now = LocalDateTime.now();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (!ndjson && lineNumber == 1 && line.startsWith("productName,")) {
+                continue; // Header
+            }
+            if (sales.size() == maxRows) {
+                throw new IllegalArgumentException("Batch exceeds " + maxRows + " sales");
+            }
+            try {
+                sales.add(ndjson ? parseJsonLine(line, now) : parseCsvLine(line, bounds, now));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return sales;
+    }
+
+    private static Product parseCsvLine(String line, int[] bounds, LocalDateTime now) {
+        char[] buf = line.toCharArray();
+        if (SalesRecordParser.splitFields(buf, 0, buf.length, bounds) < 4) {
+            throw new IllegalArgumentException("expected at least 4 fields");
+        }
+        String saleDate = bounds[9] > bounds[8] ? new String(buf, bounds[8], bounds[9] - bounds[8]) : null;
+        String customerName = bounds[11] > bounds[10] ? SalesRecordParser.parseText(buf, bounds[10], bounds[11]) : null;
+        Product sale = toProduct(
+            SalesRecordParser.parseText(buf, bounds[0], bounds[1]),
+            SalesRecordParser.parseText(buf, bounds[2], bounds[3]),
+            new String(buf, bounds[4], bounds[5] - bounds[4]),
+            new String(buf, bounds[6], bounds[7] - bounds[6]),
+            saleDate,
+            customerName,
+            now);
+        Arrays.fill(bounds, 0);
+        return sale;
+    }
+
+    private static Product parseJsonLine(String line, LocalDateTime now) {
+        Map<String, String> fields = parseFlatObject(line);
+        return toProduct(
+            fields.get("productName"),
+            fields.get("category"),
+            fields.get("saleAmount"),
+            fields.get("quantity"),
+            fields.get("saleDate"),
+            fields.get("customerName"),
+            now);
+    }
+
+    private static Product toProduct(String productName, String category, String saleAmount,
+                                     String quantity, String saleDate, String customerName, LocalDateTime now) {
+        if (productName == null || productName.isEmpty()) {
+            throw new IllegalArgumentException("productName is required");
+        }
+        double amount = saleAmount == null ? Double.NaN
+            : SalesRecordParser.parseDouble(saleAmount.toCharArray(), 0, saleAmount.length());
+        if (Double.isNaN(amount)) {
+            throw new IllegalArgumentException("invalid saleAmount");
+        }
+        long qty = quantity == null ? SalesRecordParser.MALFORMED
+            : SalesRecordParser.parseSignedInt(quantity.toCharArray(), 0, quantity.length());
+        if (qty == SalesRecordParser.MALFORMED) {
+            throw new IllegalArgumentException("invalid quantity");
+        }
+        LocalDateTime date = now;
+        if (saleDate != null && !saleDate.isEmpty()) {
+            date = SalesRecordParser.parseTimestamp(saleDate.toCharArray(), 0, saleDate.length());
+            if (date == null) {
+                throw new IllegalArgumentException("invalid saleDate");
+            }
+        }
+        return new Product(0, productName, category, amount, (int) qty, date,
+            customerName == null || customerName.isEmpty() ? "N/A" : customerName);
+    }
+
+    /**
+     * Parse a single-level JSON object with string, number, boolean or null values
+     */
+    static Map<String, String> parseFlatObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skipWhitespace(json, 0)};
+        expect(json, pos, '{');
+        pos[0] = skipWhitespace(json, pos[0]);
+        if (peek(json, pos[0]) == '}') {
+            return fields;
+        }
+        while (true) {
+            pos[0] = skipWhitespace(json, pos[0]);
+            String key = readString(json, pos);
+            pos[0] = skipWhitespace(json, pos[0]);
+            expect(json, pos, ':');
+            pos[0] = skipWhitespace(json, pos[0]);
+            String value;
+            if (peek(json, pos[0]) == '"') {
+                value = readString(json, pos);
+            } else {
+                int start = pos[0];
+                while (pos[0] < json.length() && ",} \t".indexOf(json.charAt(pos[0])) < 0) {
+                    pos[0]++;
+                }
+                value = json.substring(start, pos[0]);
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("missing value for " + key);
+                }
+                if ("null".equals(value)) {
+                    value = null;
+                }
+            }
+            fields.put(key, value);
+            pos[0] = skipWhitespace(json, pos[0]);
+            char c = peek(json, pos[0]);
+            pos[0]++;
+            if (c == '}') {
+                return fields;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("malformed JSON object");
+            }
+        }
+    }
+
+    private static String readString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder out = new StringBuilder();
+        while (pos[0] < json.length()) {
+            char c = json.charAt(pos[0]++);
+            if (c == '"') {
+                return out.toString();
+            }
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            char escaped = peek(json, pos[0]++);
+            switch (escaped) {
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > json.length()) {
+                        throw new IllegalArgumentException("malformed JSON escape");
+                    }
+                    try {
+                        out.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("malformed JSON escape");
+                    }
+                    pos[0] += 4;
+                    break;
+                default: out.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("unterminated JSON string");
+    }
+
+    private static void expect(String json, int[] pos, char expected) {
+        if (peek(json, pos[0]) != expected) {
+            throw new IllegalArgumentException("expected '" + expected + "'");
+        }
+        pos[0]++;
+    }
+
+    private static char peek(String json, int pos) {
+        if (pos >= json.length()) {
+            throw new IllegalArgumentException("unexpected end of JSON");
+        }
+        return json.charAt(pos);
+    }
+
+    private static int skipWhitespace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * SalesCache - Size-bounded LRU cache of parsed sales lists keyed by username
+ * Bounded by the total number of cached records across all users.
+ * Cached lists are immutable snapshots. Write-through appends fill spare room in
+ * the backing array of the newest snapshot, so an insert costs O(1) amortized
+ * instead of a copy of the user's whole list.
+ * An optional listener hears about users evicted to stay within the budget.
+ */
+public class SalesCache {
+    private static final int DEFAULT_MAX_RECORDS = 1_000_000;
+
+    private final int maxRecords;
+    // Called with the cache lock held, so it must not block or take other locks
+    private final Consumer<String> evicted;
+    private final LinkedHashMap<String, Snapshot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedRecords = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SalesCache() {
+        this(username -> { });
+    }
+
+    public SalesCache(Consumer<String> evicted) {
+        this(Integer.getInteger("sales.cache.maxRecords", DEFAULT_MAX_RECORDS), evicted);
+    }
+
+    public SalesCache(int maxRecords) {
+        this(maxRecords, username -> { });
+    }
+
+    public SalesCache(int maxRecords, Consumer<String> evicted) {
+        this.maxRecords = maxRecords;
+        this.evicted = evicted;
+    }
+
+    /**
+     * Get the cached sales list for a user, or null on a miss.
+     * Cached lists are immutable and safe to share between requests.
+     */
+    public synchronized List<Product> get(String username) {
+        List<Product> sales = entries.get(username);
+        if (sales == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return sales;
+    }
+
+    /**
+     * Like get, but not counted as a hit or miss; for internal residency checks
+     */
+    public synchronized List<Product> peek(String username) {
+        return entries.get(username);
+    }
+
+    /**
+     * Cache the sales list for a user, evicting least recently used users if over budget
+     */
+    public synchronized void put(String username, List<Product> sales) {
+        if (sales.size() > maxRecords) {
+            invalidate(username);
+            return;
+        }
+        store(username, Snapshot.of(sales));
+    }
+
+    /**
+     * Write-through for newly saved sales. Only updates users that are already cached.
+     */
+    public synchronized void addSales(String username, List<Product> added) {
+        Snapshot sales = entries.get(username);
+        if (sales != null) {
+            store(username, sales.append(added));
+        }
+    }
+
+    /**
+     * Write-through for a deleted sale. Only updates users that are already cached.
+     */
+    public synchronized void removeSale(String username, int saleId) {
+        Snapshot sales = entries.get(username);
+        if (sales != null) {
+            store(username, sales.without(saleId));
+        }
+    }
+
+    /**
+     * Drop a user's entry
+     */
+    public synchronized void invalidate(String username) {
+        List<Product> previous = entries.remove(username);
+        if (previous != null) {
+            cachedRecords -= previous.size();
+        }
+    }
+
+    // Takes ownership of the snapshot
+    private void store(String username, Snapshot snapshot) {
+        if (snapshot.size() > maxRecords) {
+            // Never cache a single user that would blow the whole budget
+            invalidate(username);
+            return;
+        }
+        List<Product> previous = entries.put(username, snapshot);
+        if (previous != null) {
+            cachedRecords -= previous.size();
+        }
+        cachedRecords += snapshot.size();
+        evictIfNeeded();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Snapshot>> it = entries.entrySet().iterator();
+        while (cachedRecords > maxRecords && it.hasNext()) {
+            Map.Entry<String, Snapshot> eldest = it.next();
+            cachedRecords -= eldest.getValue().size();
+            it.remove();
+            evictions.incrementAndGet();
+            evicted.accept(eldest.getKey());
+        }
+    }
+
+    // Counters for sizing the cache
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public int getMaxRecords() { return maxRecords; }
+    public synchronized long getCachedRecords() { return cachedRecords; }
+    public synchronized int getCachedUsers() { return entries.size(); }
+
+    public String toJSON() {
+        return new JsonWriter().beginObject()
+            .field("hits", getHits())
+            .field("misses", getMisses())
+            .field("evictions", getEvictions())
+            .field("cachedUsers", getCachedUsers())
+            .field("cachedRecords", getCachedRecords())
+            .field("maxRecords", maxRecords)
+            .endObject()
+            .toString();
+    }
+
+    /**
+     * Immutable view of the first size elements of an array. Snapshots taken over
+     * one array share it: elements below a snapshot's size are never written again,
+     * and only the snapshot that ends where the array is filled up to may append
+     * into the room after it. Appends and removals happen under the cache lock.
+     */
+    private static final class Snapshot extends AbstractList<Product> implements RandomAccess {
+        private final Product[] elements;
+        private final int size;
+        // Shared by every snapshot over elements: how many slots are filled
+        private final int[] filled;
+
+        private Snapshot(Product[] elements, int size, int[] filled) {
+            this.elements = elements;
+            this.size = size;
+            this.filled = filled;
+        }
+
+        static Snapshot of(List<Product> sales) {
+            Product[] elements = sales.toArray(new Product[0]);
+            return new Snapshot(elements, elements.length, new int[] {elements.length});
+        }
+
+        Snapshot append(List<Product> added) {
+            int newSize = size + added.size();
+            if (filled[0] == size && newSize <= elements.length) {
+                for (Product sale : added) {
+                    elements[filled[0]++] = sale;
+                }
+                return new Snapshot(elements, newSize, filled);
+            }
+            Product[] grown = new Product[Math.max(newSize, size + (size >> 1) + 16)];
+            System.arraycopy(elements, 0, grown, 0, size);
+            for (int i = 0; i < added.size(); i++) {
+                grown[size + i] = added.get(i);
+            }
+            return new Snapshot(grown, newSize, new int[] {newSize});
+        }
+
+        Snapshot without(int saleId) {
+            Product[] kept = new Product[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (elements[i].getId() != saleId) {
+                    kept[count++] = elements[i];
+                }
+            }
+            return new Snapshot(kept, count, new int[] {count});
+        }
+
+        @Override
+        public Product get(int index) {
+            Objects.checkIndex(index, size);
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * SalesCompactor - Background compaction of tombstoned sales files
+ * Deletes append a tombstone line instead of rewriting the file. Once the share of
+ * tombstones in a file passes the configured ratio, the file is rewritten with only
+ * the live records to a temp file, which is then atomically renamed over the original.
+ *
+ * The bulk of the rewrite runs without the user's lock: appends only ever add bytes
+ * past the snapshot length, so the lock is held just to copy that tail and rename.
+ */
+public class SalesCompactor {
+    private static final double DEFAULT_TOMBSTONE_RATIO = 0.25;
+    private static final int DEFAULT_MIN_TOMBSTONES = 64;
+
+    private final String filePrefix;
+    private final double tombstoneRatio;
+    private final int minTombstones;
+
+    // Record and tombstone line counts per user file, when known
+    private final Map<String, FileStats> stats = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sales-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SalesCompactor(String filePrefix) {
+        this.filePrefix = filePrefix;
+        this.tombstoneRatio = Double.parseDouble(
+            System.getProperty("sales.compaction.tombstoneRatio", String.valueOf(DEFAULT_TOMBSTONE_RATIO)));
+        this.minTombstones = Integer.getInteger("sales.compaction.minTombstones", DEFAULT_MIN_TOMBSTONES);
+    }
+
+    /**
+     * Record exact line counts after a full read of a user's file
+     */
+    public void fileLoaded(String username, int records, int tombstones) {
+        stats.put(username, new FileStats(records, tombstones));
+    }
+
+    public void recordAppended(String username, int count) {
+        FileStats fileStats = stats.get(username);
+        if (fileStats != null) {
+            fileStats.add(count, 0);
+        }
+    }
+
+    /**
+     * Count a tombstone and schedule compaction if the file has crossed the threshold.
+     * Users whose counts are unknown are counted by the background task instead.
+     */
+    public void tombstoneAppended(String username) {
+        FileStats fileStats = stats.get(username);
+        if (fileStats == null || fileStats.add(0, 1)) {
+            schedule(username);
+        }
+    }
+
+    private void schedule(String username) {
+        if (pending.add(username)) {
+            executor.execute(() -> {
+                pending.remove(username);
+                try {
+                    compactIfNeeded(username);
+                } catch (IOException e) {
+                    System.err.println("Error compacting sales: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void compactIfNeeded(String username) throws IOException {
+        File file = new File(filePrefix + username + ".txt");
+        if (!file.exists()) {
+            return;
+        }
+
+        FileStats fileStats = stats.get(username);
+        if (fileStats == null) {
+            fileStats = countLines(file);
+            stats.put(username, fileStats);
+        }
+        if (fileStats.needsCompaction()) {
+            compact(username, file);
+        }
+    }
+
+    /**
+     * Rewrite a user's sales file without deleted records
+     */
+    public void compact(String username, File file) throws IOException {
+        long snapshotLength;
+        synchronized (Database.salesLock(username)) {
+            snapshotLength = file.length();
+        }
+
+        // Collect live records from the stable prefix of the file
+        Set<Integer> deleted = new HashSet<>();
+        List<String> records = new ArrayList<>();
+        List<Integer> recordIds = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new BoundedInputStream(new FileInputStream(file), snapshotLength)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (Database.isTombstone(line)) {
+                    deleted.add(Database.tombstoneId(line));
+                } else if (!line.isEmpty()) {
+                    records.add(line);
+                    recordIds.add(leadingId(line));
+                }
+            }
+        }
+
+        File temp = new File(file.getPath() + ".compact");
+        int live = 0;
+        int maxLiveId = 0;
+        int maxId = 0;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            for (int i = 0; i < records.size(); i++) {
+                maxId = Math.max(maxId, recordIds.get(i));
+                if (!deleted.contains(recordIds.get(i))) {
+                    writer.write(records.get(i));
+                    writer.newLine();
+                    live++;
+                    maxLiveId = Math.max(maxLiveId, recordIds.get(i));
+                }
+            }
+            // Keep the highest ID visible to SaleIdAllocator's tail scan if it was deleted.
+            // Only record IDs count: a tombstone may name an ID that was never issued.
+            if (maxId > maxLiveId) {
+                writer.write(SalesRecordParser.TOMBSTONE + Integer.toString(maxId));
+                writer.newLine();
+            }
+        }
+        int keptTombstones = maxId > maxLiveId ? 1 : 0;
+
+        synchronized (Database.salesLock(username)) {
+            // Carry over anything appended while the prefix was being rewritten
+            FileStats tailStats = new FileStats(0, 0);
+            try (RandomAccessFile source = new RandomAccessFile(file, "r");
+                 FileOutputStream target = new FileOutputStream(temp, true)) {
+                source.seek(snapshotLength);
+                byte[] tail = new byte[(int) (source.length() - snapshotLength)];
+                source.readFully(tail);
+                target.write(tail);
+                target.getFD().sync();
+                tailStats = countLines(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(tail))));
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stats.put(username, new FileStats(live + tailStats.records, keptTombstones + tailStats.tombstones));
+        }
+    }
+
+    private FileStats countLines(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            return countLines(reader);
+        }
+    }
+
+    private FileStats countLines(BufferedReader reader) throws IOException {
+        int records = 0;
+        int tombstones = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (Database.isTombstone(line)) {
+                tombstones++;
+            } else if (!line.isEmpty()) {
+                records++;
+            }
+        }
+        return new FileStats(records, tombstones);
+    }
+
+    private static int leadingId(String line) {
+        int comma = line.indexOf(',');
+        try {
+            return Integer.parseInt(comma < 0 ? line : line.substring(0, comma));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private final class FileStats {
+        private int records;
+        private int tombstones;
+
+        FileStats(int records, int tombstones) {
+            this.records = records;
+            this.tombstones = tombstones;
+        }
+
+        // Returns true if the file should now be compacted
+        synchronized boolean add(int recordDelta, int tombstoneDelta) {
+            records += recordDelta;
+            tombstones += tombstoneDelta;
+            return needsCompaction();
+        }
+
+        synchronized boolean needsCompaction() {
+            return tombstones >= minTombstones && records > 0
+                && (double) tombstones / records >= tombstoneRatio;
+        }
+    }
+
+    /**
+     * Reads at most limit bytes from the wrapped stream
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SalesDictionary - Process-wide string dictionary for product names and categories
+ * These repeat heavily across sales, so each distinct string is stored once and
+ * sales hold its int code. Codes are dense, assigned in first-seen order and never
+ * reused; strings are never removed, so the dictionary grows with the number of
+ * distinct names, not rows. NULL (-1) stands for a null field.
+ *
+ * Customer names are kept out of it: there can be a new one for nearly every sale,
+ * and a process-wide dictionary would keep them after their tenant is evicted.
+ * Holders of many sales intern them in a Local dictionary of their own instead,
+ * which goes away with its holder.
+ *
+ * Lookups by string are lock-free; only new strings take the lock.
+ * Decoding is an array read and returns the same String instance every time.
+ */
+public final class SalesDictionary {
+    public static final int NULL = -1;
+
+    private static final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // Written under the class lock; republished after every add so a code read
+    // from codes always finds its string
+    private static volatile String[] strings = new String[1024];
+    private static int size = 0;
+
+    // "null", which is what a null field reads back as from the sales file
+    private static final int NULL_TEXT = code("null");
+
+    private SalesDictionary() {
+    }
+
+    /**
+     * Code for a string, adding it if new; NULL for null
+     */
+    public static int code(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    private static synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = strings;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        strings = current;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * String for a code, or null for NULL
+     */
+    public static String string(int code) {
+        return code == NULL ? null : strings[code];
+    }
+
+    /**
+     * Code of String.valueOf(string(code)): NULL becomes the code of "null".
+     * For grouping the way the sales file does after a reload.
+     */
+    public static int textCode(int code) {
+        return code == NULL ? NULL_TEXT : code;
+    }
+
+    /**
+     * Number of distinct strings; every code is below this
+     */
+    public static synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Dense slots 0, 1, 2, ... for the codes one aggregation sees, in first-seen
+     * order, so per-code totals can live in primitive arrays indexed by slot
+     * instead of maps keyed by string. Not thread-safe.
+     */
+    static final class Slots {
+        // code + 2 per table entry (NULL included), 0 for empty; linear probing
+        private int[] keys = new int[16];
+        private int[] slots = new int[16];
+        private int[] codes = new int[8];
+        private int size = 0;
+
+        /**
+         * Slot for a code, assigning the next one if the code is new
+         */
+        int slot(int code) {
+            int mask = keys.length - 1;
+            for (int i = spread(code * 0x9E3779B9) & mask; ; i = (i + 1) & mask) {
+                int key = keys[i];
+                if (key == code + 2) {
+                    return slots[i];
+                }
+                if (key == 0) {
+                    keys[i] = code + 2;
+                    slots[i] = size;
+                    if (size == codes.length) {
+                        codes = Arrays.copyOf(codes, size * 2);
+                    }
+                    codes[size] = code;
+                    if (++size * 2 > keys.length) {
+                        grow();
+                    }
+                    return size - 1;
+                }
+            }
+        }
+
+        /**
+         * Code held in a slot
+         */
+        int code(int slot) {
+            return codes[slot];
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            keys = new int[keys.length * 2];
+            slots = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int slot = 0; slot < size; slot++) {
+                int i = spread(codes[slot] * 0x9E3779B9) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = codes[slot] + 2;
+                slots[i] = slot;
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Dictionary owned by one table or one parse, with the same codes, NULL and
+     * thread-safety as the process-wide one. Released with its owner.
+     */
+    static final class Local {
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        // Written under this; republished after every add as in the process-wide one
+        private volatile String[] strings = new String[64];
+        private int size = 0;
+
+        /**
+         * Code for a string, adding it if new; NULL for null
+         */
+        int code(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            Integer code = codes.get(value);
+            return code != null ? code : add(value);
+        }
+
+        private synchronized int add(String value) {
+            Integer existing = codes.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            String[] current = strings;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            strings = current;
+            codes.put(value, size);
+            return size++;
+        }
+
+        /**
+         * String for a code, or null for NULL
+         */
+        String string(int code) {
+            return code == NULL ? null : strings[code];
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Per-parse cache from characters to codes, so a parser can look up a field
+     * straight from its buffer and create a String only for a value it has not
+     * seen before. Not thread-safe; use one per parse.
+     */
+    static final class Lookup {
+        // Where codes come from; null for the process-wide dictionary
+        private final Local dictionary;
+        // code + 1 per slot, 0 for empty; linear probing on String.hashCode
+        private int[] table = new int[256];
+        private int count = 0;
+
+        Lookup() {
+            this(null);
+        }
+
+        Lookup(Local dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * String for a code this lookup returned
+         */
+        String string(int code) {
+            return dictionary != null ? dictionary.string(code) : SalesDictionary.string(code);
+        }
+
+        int code(char[] buf, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buf[i];
+            }
+            int mask = table.length - 1;
+            for (int slot = spread(hash * 0x9E3779B9) & mask; ; slot = (slot + 1) & mask) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    String value = new String(buf, start, end - start);
+                    int code = dictionary != null ? dictionary.code(value) : SalesDictionary.code(value);
+                    table[slot] = code + 1;
+                    if (++count * 2 > table.length) {
+                        grow();
+                    }
+                    return code;
+                }
+                if (matches(string(entry - 1), buf, start, end)) {
+                    return entry - 1;
+                }
+            }
+        }
+
+        private void grow() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            int mask = table.length - 1;
+            for (int entry : old) {
+                if (entry != 0) {
+                    int slot = spread(string(entry - 1).hashCode() * 0x9E3779B9) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        }
+
+        private static boolean matches(String value, char[] buf, int start, int end) {
+            if (value.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) != buf[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
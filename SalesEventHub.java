@@ -0,0 +1,303 @@
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * SalesEventHub - Server-sent event streams of sales changes, per user
+ * Database publishes one event per add or delete carrying only what changed: the
+ * sale rows, the new summary, the touched month/category/hour cells, and the
+ * top/least products when they moved since the previous event on that stream, so a
+ * stream's first delta always has them. A change that cannot be sent as a delta is
+ * published as sales-reload.
+ *
+ * Open streams hold no thread. The handler returns once the exchange is registered.
+ * Each stream has its own queue, drained in order by a pooled writer thread only
+ * while it has something to send, so a slow client delays only its own stream.
+ * A heartbeat thread queues keep-alive comments and never writes itself. A stream
+ * whose connection fails, that falls more than sse.maxPending events behind, or
+ * whose write has been blocked for sse.writeTimeoutMs is closed at once and gets
+ * no more events; the dashboard reconnects and reloads. Closing is logical: the
+ * server API gives no socket timeout, so a writer blocked on a client that stopped
+ * reading keeps its pooled thread until the connection itself fails. The timeout
+ * frees the stream's slot and queue, not that thread.
+ */
+public class SalesEventHub {
+    private static final int MAX_STREAMS = Integer.getInteger("sse.maxStreams", 1000);
+    private static final int MAX_PENDING = Integer.getInteger("sse.maxPending", 256);
+    private static final long HEARTBEAT_SECONDS = Long.getLong("sse.heartbeatSeconds", 15);
+    private static final long WRITE_TIMEOUT_MILLIS = Long.getLong("sse.writeTimeoutMs", 10_000);
+    private static final int RETRY_MILLIS = 3000;
+
+    // Rows sent with an added-sales event; a large batch sends only its newest rows
+    private static final int MAX_EVENT_ROWS = 100;
+
+    private final Map<String, Set<Stream>> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final AtomicLong eventIds = new AtomicLong();
+
+    // Created on the first subscription so servers without dashboards start no thread
+    private volatile ScheduledExecutorService heartbeats;
+    private volatile ExecutorService writers;
+
+    /**
+     * Start an event stream on the exchange. Returns false, without sending
+     * anything, if the open stream limit is reached.
+     */
+    public boolean subscribe(String username, HttpExchange exchange) throws IOException {
+        if (openStreams.incrementAndGet() > MAX_STREAMS) {
+            openStreams.decrementAndGet();
+            return false;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        Stream stream = new Stream(username, exchange);
+        streams.compute(username, (k, userStreams) -> {
+            Set<Stream> updated = userStreams != null ? userStreams : ConcurrentHashMap.newKeySet();
+            updated.add(stream);
+            return updated;
+        });
+        send(stream, ("retry: " + RETRY_MILLIS + "\n\n").getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    public boolean hasSubscribers(String username) {
+        Set<Stream> userStreams = streams.get(username);
+        return userStreams != null && !userStreams.isEmpty();
+    }
+
+    public int getOpenStreams() {
+        return openStreams.get();
+    }
+
+    /**
+     * Publish newly saved sales; aggregates must already include them
+     */
+    public void salesAdded(String username, List<Product> sales, SalesAggregates aggregates) {
+        publishChanges(username, "sale-added", json -> {
+            json.field("type", "sale-added")
+                .field("count", sales.size())
+                .name("sales").beginArray();
+            for (int i = sales.size() - 1; i >= Math.max(0, sales.size() - MAX_EVENT_ROWS); i--) {
+                sales.get(i).writeJSON(json);
+            }
+            json.endArray();
+        }, sales, aggregates);
+    }
+
+    /**
+     * Tell the user's streams to reload everything, for a change whose rows are not known
+     */
+    public void salesChanged(String username) {
+        Set<Stream> userStreams = streams.get(username);
+        if (userStreams == null || userStreams.isEmpty()) {
+            return;
+        }
+        byte[] message = message("sales-reload", new JsonWriter().beginObject().field("type", "sales-reload").endObject());
+        for (Stream stream : userStreams) {
+            stream.lastRankings = null;
+            send(stream, message);
+        }
+    }
+
+    /**
+     * Publish a deleted sale; aggregates must already exclude it
+     */
+    public void saleDeleted(String username, Product sale, SalesAggregates aggregates) {
+        publishChanges(username, "sale-deleted", json -> json
+            .field("type", "sale-deleted")
+            .field("saleId", sale.getId()), Collections.singletonList(sale), aggregates);
+    }
+
+    // Each stream gets the rankings only if they differ from the last ones it was
+    // sent, so the event is rendered at most twice: with and without them
+    private void publishChanges(String username, String event, Consumer<JsonWriter> fields,
+                                List<Product> sales, SalesAggregates aggregates) {
+        Set<Stream> userStreams = streams.get(username);
+        if (userStreams == null || userStreams.isEmpty()) {
+            return;
+        }
+        JsonWriter rankingsJson = new JsonWriter().beginObject();
+        aggregates.writeRankings(rankingsJson);
+        String rankings = rankingsJson.endObject().toString();
+        byte[] withRankings = null;
+        byte[] withoutRankings = null;
+        for (Stream stream : userStreams) {
+            if (!rankings.equals(stream.lastRankings)) {
+                if (withRankings == null) {
+                    withRankings = message(event, changes(fields, sales, aggregates, true));
+                }
+                stream.lastRankings = rankings;
+                send(stream, withRankings);
+            } else {
+                if (withoutRankings == null) {
+                    withoutRankings = message(event, changes(fields, sales, aggregates, false));
+                }
+                send(stream, withoutRankings);
+            }
+        }
+    }
+
+    private static JsonWriter changes(Consumer<JsonWriter> fields, List<Product> sales,
+                                      SalesAggregates aggregates, boolean rankings) {
+        JsonWriter json = new JsonWriter().beginObject();
+        fields.accept(json);
+        aggregates.writeCells(json, sales);
+        if (rankings) {
+            aggregates.writeRankings(json);
+        }
+        return json.endObject();
+    }
+
+    private byte[] message(String event, JsonWriter data) {
+        return ("id: " + eventIds.incrementAndGet() + "\nevent: " + event
+            + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void send(Stream stream, byte[] message) {
+        if (stream.closed) {
+            return;
+        }
+        if (stream.pending.incrementAndGet() > MAX_PENDING) {
+            // Too far behind: closing makes the client reconnect and reload
+            close(stream);
+            return;
+        }
+        stream.queue.add(message);
+        startDrain(stream);
+    }
+
+    private void startDrain(Stream stream) {
+        if (stream.draining.compareAndSet(false, true)) {
+            writers().execute(() -> drain(stream));
+        }
+    }
+
+    // Write a stream's queued messages in order. At most one drain runs per stream,
+    // and only its thread writes to or closes the exchange.
+    private void drain(Stream stream) {
+        while (true) {
+            byte[] message;
+            while (!stream.closed && (message = stream.queue.poll()) != null) {
+                stream.pending.decrementAndGet();
+                write(stream, message);
+            }
+            if (stream.closed) {
+                // Keep draining set so no later drain touches the closed exchange
+                stream.queue.clear();
+                stream.exchange.close();
+                return;
+            }
+            stream.draining.set(false);
+            // Anything queued, or a close requested, after the checks above would
+            // otherwise wait for a drain that is never started
+            if ((stream.queue.isEmpty() && !stream.closed) || !stream.draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    // Comment lines keep proxies from timing the stream out and detect closed connections.
+    // Also closes streams stuck in a write, which frees them from the user's set at once.
+    private void heartbeat() {
+        byte[] comment = ":\n\n".getBytes(StandardCharsets.UTF_8);
+        long now = System.nanoTime();
+        for (Set<Stream> userStreams : streams.values()) {
+            for (Stream stream : userStreams) {
+                long since = stream.writingSince;
+                if (since != 0 && now - since > TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MILLIS)) {
+                    close(stream);
+                } else if (stream.pending.get() == 0) {
+                    send(stream, comment);
+                }
+            }
+        }
+    }
+
+    // Drain thread only
+    private void write(Stream stream, byte[] message) {
+        stream.writingSince = System.nanoTime();
+        try {
+            stream.out.write(message);
+            stream.out.flush();
+        } catch (IOException e) {
+            close(stream);
+        } finally {
+            stream.writingSince = 0;
+        }
+    }
+
+    private void close(Stream stream) {
+        synchronized (stream) {
+            if (stream.closed) {
+                return;
+            }
+            stream.closed = true;
+        }
+        openStreams.decrementAndGet();
+        streams.computeIfPresent(stream.username, (k, userStreams) -> {
+            userStreams.remove(stream);
+            if (userStreams.isEmpty()) {
+                return null;
+            }
+            return userStreams;
+        });
+        // Closing flushes the final chunk, so it is left to the stream's drain, which
+        // does it after any write in progress returns
+        startDrain(stream);
+    }
+
+    private ExecutorService writers() {
+        ExecutorService current = writers;
+        if (current == null) {
+            synchronized (this) {
+                current = writers;
+                if (current == null) {
+                    AtomicInteger threads = new AtomicInteger();
+                    current = Executors.newCachedThreadPool(r -> {
+                        Thread thread = new Thread(r, "sse-writer-" + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "sse-heartbeat");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    heartbeats.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                    writers = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static final class Stream {
+        final String username;
+        final HttpExchange exchange;
+        final OutputStream out;
+        final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger();
+        // Set while a drain is scheduled or running
+        final AtomicBoolean draining = new AtomicBoolean();
+        // When the write in progress started (System.nanoTime), 0 when not writing
+        volatile long writingSince = 0;
+        volatile boolean closed = false;
+        // Rankings JSON last sent on this stream, null before the first delta
+        volatile String lastRankings;
+
+        Stream(String username, HttpExchange exchange) {
+            this.username = username;
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+        }
+    }
+}
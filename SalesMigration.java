@@ -0,0 +1,75 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * SalesMigration - One-shot conversion of text sales files to columnar segments
+ * Reads every data/sales_<user>.txt, drops tombstoned records and writes
+ * data/sales_<user>.col/.dict for use with -Dsales.storage=columnar.
+ * The text files are left in place, so the text engine keeps working.
+ *
+ * Usage: java SalesMigration [dataDir] [--force]
+ * Users that already have a segment are skipped unless --force is given.
+ * Run it while the server is stopped.
+ */
+public class SalesMigration {
+
+    public static void main(String[] args) throws IOException {
+        String dataDir = "data";
+        boolean force = false;
+        for (String arg : args) {
+            if ("--force".equals(arg)) {
+                force = true;
+            } else {
+                dataDir = arg;
+            }
+        }
+
+        File[] files = new File(dataDir).listFiles((dir, name) -> name.startsWith("sales_") && name.endsWith(".txt"));
+        if (files == null) {
+            System.err.println("No data directory: " + dataDir);
+            System.exit(1);
+        }
+        Arrays.sort(files);
+
+        ColumnarSalesStore store = new ColumnarSalesStore(new File(dataDir, "sales_").getPath());
+        int migrated = 0;
+        long rows = 0;
+        for (File file : files) {
+            String name = file.getName();
+            String username = name.substring("sales_".length(), name.length() - ".txt".length());
+            if (!force && store.segmentFile(username).exists()) {
+                System.out.println("  skip " + username + " (segment exists)");
+                continue;
+            }
+            List<Product> sales = readLiveSales(file);
+            store.replace(username, sales);
+            System.out.println("  " + username + ": " + sales.size() + " sales");
+            migrated++;
+            rows += sales.size();
+        }
+        System.out.println("Migrated " + migrated + " users, " + rows + " sales");
+    }
+
+    // Same rules as Database: a tombstone removes every record with its ID
+    private static List<Product> readLiveSales(File file) throws IOException {
+        List<Product> sales = new ArrayList<>();
+        Set<Integer> deleted = new HashSet<>();
+        try (Reader reader = new FileReader(file)) {
+            SalesRecordParser.parse(reader, new SalesRecordParser.Sink() {
+                @Override
+                public void record(Product product) {
+                    sales.add(product);
+                }
+
+                @Override
+                public void tombstone(int saleId) {
+                    deleted.add(saleId);
+                }
+            });
+        }
+        if (!deleted.isEmpty()) {
+            sales.removeIf(p -> deleted.contains(p.getId()));
+        }
+        return sales;
+    }
+}
@@ -0,0 +1,144 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * SalesPage - One page of a user's sales for /api/sales
+ * Pages are keyset-paginated: the cursor is the sort key of the last row returned,
+ * so rows added or deleted between requests do not shift later pages.
+ * A page of k rows is selected with a bounded heap in O(n log k), without sorting
+ * the whole history. Rows are compared by their sort key first, so a Product is
+ * created only for rows that enter the page.
+ */
+public class SalesPage {
+    private final List<Product> items;
+    private final String nextCursor;
+
+    private SalesPage(List<Product> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Product> getItems() { return items; }
+    public String getNextCursor() { return nextCursor; }
+
+    /**
+     * Sort orders accepted by the sort parameter
+     */
+    public enum Sort {
+        ID, ID_DESC, DATE, DATE_DESC;
+
+        public static Sort parse(String value) {
+            if (value == null || value.isEmpty() || "id".equals(value)) return ID;
+            if ("-id".equals(value)) return ID_DESC;
+            if ("date".equals(value)) return DATE;
+            if ("-date".equals(value)) return DATE_DESC;
+            throw new IllegalArgumentException("Unknown sort: " + value);
+        }
+
+        // Dates compare to the second, as the sales file and page cursors store them
+        Comparator<Product> comparator() {
+            Comparator<Product> byId = Comparator.comparingInt(Product::getId);
+            Comparator<Product> byDate = Comparator.comparingLong(sale -> sale.getSaleDate().toEpochSecond(ZoneOffset.UTC));
+            switch (this) {
+                case ID_DESC: return byId.reversed();
+                case DATE: return byDate.thenComparing(byId);
+                case DATE_DESC: return byDate.thenComparing(byId).reversed();
+                default: return byId;
+            }
+        }
+    }
+
+    /**
+     * Select the page after cursor (or the first page if cursor is null).
+     * A limit of 0 or less returns every remaining row.
+     */
+    public static SalesPage select(List<Product> sales, Sort sort, String cursor, int limit) {
+        return select(SalesRows.of(sales), sort, cursor, limit);
+    }
+
+    /**
+     * Select the page after cursor from sales rows
+     */
+    public static SalesPage select(SalesRows.Source sales, Sort sort, String cursor, int limit) {
+        Comparator<Product> order = sort.comparator();
+        Product after = cursor == null || cursor.isEmpty() ? null : decodeCursor(sort, cursor);
+
+        if (limit <= 0) {
+            List<Product> all = new ArrayList<>();
+            try (SalesRows rows = sales.cursor()) {
+                while (rows.next()) {
+                    if (after == null || compare(sort, rows, after) > 0) {
+                        all.add(rows.product());
+                    }
+                }
+            }
+            all.sort(order);
+            return new SalesPage(all, null);
+        }
+
+        // Max-heap on the sort order keeps the limit smallest rows after the cursor
+        PriorityQueue<Product> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        int remaining = 0;
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                if (after != null && compare(sort, rows, after) <= 0) {
+                    continue;
+                }
+                remaining++;
+                if (heap.size() < limit) {
+                    heap.add(rows.product());
+                } else if (compare(sort, rows, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(rows.product());
+                }
+            }
+        }
+
+        List<Product> page = new ArrayList<>(heap);
+        page.sort(order);
+        String next = remaining > limit ? encodeCursor(sort, page.get(page.size() - 1)) : null;
+        return new SalesPage(page, next);
+    }
+
+    // The current row against a Product in sort order, as sort.comparator() would
+    private static int compare(Sort sort, SalesRows row, Product sale) {
+        int byId = Integer.compare(row.id(), sale.getId());
+        switch (sort) {
+            case ID_DESC:
+                return -byId;
+            case DATE:
+            case DATE_DESC: {
+                int byDate = Long.compare(row.epochSecond(), sale.getSaleDate().toEpochSecond(ZoneOffset.UTC));
+                int result = byDate != 0 ? byDate : byId;
+                return sort == Sort.DATE ? result : -result;
+            }
+            default:
+                return byId;
+        }
+    }
+
+    // Cursor is "<id>" for id sorts and "<epochSecond>:<id>" for date sorts
+    private static String encodeCursor(Sort sort, Product last) {
+        if (sort == Sort.DATE || sort == Sort.DATE_DESC) {
+            return last.getSaleDate().toEpochSecond(ZoneOffset.UTC) + ":" + last.getId();
+        }
+        return Integer.toString(last.getId());
+    }
+
+    // Decodes a cursor into a probe row carrying only the sort key
+    private static Product decodeCursor(Sort sort, String cursor) {
+        try {
+            if (sort == Sort.DATE || sort == Sort.DATE_DESC) {
+                int colon = cursor.indexOf(':');
+                long epochSecond = Long.parseLong(cursor.substring(0, colon));
+                int id = Integer.parseInt(cursor.substring(colon + 1));
+                return new Product(id, null, null, 0, 0,
+                    LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC), null);
+            }
+            return new Product(Integer.parseInt(cursor), null, null, 0, 0, null, null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * SalesRecordParser - Single-pass parser for the sales file format
+ * Record layout: id,productName,category,saleAmount,quantity,yyyy-MM-dd HH:mm:ss,customerName
+ * Text fields may be quoted CSV-style ("a,b" with "" for a quote). Tombstone lines
+ * are a '-' followed by the deleted ID.
+ *
+ * Files are read through a reusable char buffer; numbers and timestamps are parsed
+ * straight from char ranges, and text fields are looked up in SalesDictionary from
+ * the buffer, so a string is only created the first time a file uses it.
+ */
+public final class SalesRecordParser {
+    static final char TOMBSTONE = '-';
+    // parseSignedInt result for a malformed or out-of-range number
+    static final long MALFORMED = Long.MIN_VALUE;
+
+    private static final int FIELDS = 7;
+    private static final int TIMESTAMP_LENGTH = 19;
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * Receives each parsed line of a sales file
+     */
+    public interface Sink {
+        void record(Product product);
+
+        void tombstone(int saleId);
+    }
+
+    private SalesRecordParser() {}
+
+    /**
+     * Parse every line from in, reporting records and tombstones to sink.
+     * Malformed lines are logged and skipped.
+     */
+    public static void parse(Reader in, Sink sink) throws IOException {
+        char[] buf = new char[64 * 1024];
+        int[] bounds = new int[FIELDS * 2];
+        SalesDictionary.Lookup lookup = new SalesDictionary.Lookup();
+        // Customer names are shared within this parse only
+        SalesDictionary.Lookup customers = new SalesDictionary.Lookup(new SalesDictionary.Local());
+        int start = 0;
+        int end = 0;
+        int read;
+        while ((read = in.read(buf, end, buf.length - end)) != -1) {
+            end += read;
+            int lineStart = start;
+            for (int i = start; i < end; i++) {
+                if (buf[i] == '\n') {
+                    parseLine(buf, lineStart, i, bounds, lookup, customers, sink);
+                    lineStart = i + 1;
+                }
+            }
+            // Move the partial last line to the front, growing for very long lines
+            int remaining = end - lineStart;
+            if (remaining == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            } else if (lineStart > 0) {
+                System.arraycopy(buf, lineStart, buf, 0, remaining);
+            }
+            start = 0;
+            end = remaining;
+        }
+        if (end > 0) {
+            parseLine(buf, 0, end, bounds, lookup, customers, sink);
+        }
+    }
+
+    /**
+     * Parse a single record line, or return null if it is malformed or a tombstone
+     */
+    public static Product parseRecord(String line) {
+        char[] chars = line.toCharArray();
+        return parseRecord(chars, 0, chars.length);
+    }
+
+    private static void parseLine(char[] buf, int start, int end, int[] bounds, SalesDictionary.Lookup lookup,
+                                  SalesDictionary.Lookup customers, Sink sink) {
+        if (end > start && buf[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return;
+        }
+        if (buf[start] == TOMBSTONE) {
+            int id = parseInt(buf, start + 1, end);
+            if (id >= 0) {
+                sink.tombstone(id);
+            } else {
+                System.err.println("Error parsing tombstone: " + new String(buf, start, end - start));
+            }
+            return;
+        }
+        Product product = parseRecord(buf, start, end, bounds, lookup, customers);
+        if (product != null) {
+            sink.record(product);
+        }
+    }
+
+    /**
+     * Parse a record from buf[start, end)
+     */
+    public static Product parseRecord(char[] buf, int start, int end) {
+        return parseRecord(buf, start, end, new int[FIELDS * 2], null, null);
+    }
+
+    // bounds receives the [start, end) offsets of each field; lookups may be null
+    private static Product parseRecord(char[] buf, int start, int end, int[] bounds, SalesDictionary.Lookup lookup,
+                                       SalesDictionary.Lookup customers) {
+        if (splitFields(buf, start, end, bounds) < FIELDS) {
+            System.err.println("Error parsing product: " + new String(buf, start, end - start));
+            return null;
+        }
+
+        int id = parseInt(buf, bounds[0], bounds[1]);
+        double saleAmount = parseDouble(buf, bounds[6], bounds[7]);
+        long quantity = parseSignedInt(buf, bounds[8], bounds[9]);
+        LocalDateTime saleDate = parseTimestamp(buf, bounds[10], bounds[11]);
+        if (id < 0 || quantity == MALFORMED || Double.isNaN(saleAmount) || saleDate == null) {
+            System.err.println("Error parsing product: " + new String(buf, start, end - start));
+            return null;
+        }
+
+        return Product.ofCodes(
+            id,
+            textCode(buf, bounds[2], bounds[3], lookup),
+            textCode(buf, bounds[4], bounds[5], lookup),
+            saleAmount,
+            (int) quantity,
+            saleDate,
+            customerName(buf, bounds[12], bounds[13], customers)
+        );
+    }
+
+    // Unquoted fields are looked up from the buffer; quoted ones need unquoting first
+    private static int textCode(char[] buf, int start, int end, SalesDictionary.Lookup lookup) {
+        if (lookup != null && (end == start || buf[start] != '"')) {
+            return lookup.code(buf, start, end);
+        }
+        return SalesDictionary.code(parseText(buf, start, end));
+    }
+
+    private static String customerName(char[] buf, int start, int end, SalesDictionary.Lookup customers) {
+        if (customers != null && (end == start || buf[start] != '"')) {
+            return customers.string(customers.code(buf, start, end));
+        }
+        return parseText(buf, start, end);
+    }
+
+    /**
+     * Locate up to bounds.length / 2 comma-separated fields in buf[start, end),
+     * storing [start, end) offsets pairwise. Quoted fields may contain commas.
+     * Returns the number of fields found.
+     */
+    static int splitFields(char[] buf, int start, int end, int[] bounds) {
+        int maxFields = bounds.length / 2;
+        int field = 0;
+        int pos = start;
+        while (field < maxFields && pos <= end) {
+            int fieldStart = pos;
+            if (pos < end && buf[pos] == '"') {
+                pos++;
+                while (pos < end && !(buf[pos] == '"' && (pos + 1 >= end || buf[pos + 1] != '"'))) {
+                    pos += buf[pos] == '"' ? 2 : 1;
+                }
+                pos++;
+            }
+            while (pos < end && buf[pos] != ',') {
+                pos++;
+            }
+            bounds[field * 2] = fieldStart;
+            bounds[field * 2 + 1] = Math.min(pos, end);
+            field++;
+            pos++;
+        }
+        return field;
+    }
+
+    /**
+     * Non-negative int from buf[start, end), or -1 if not all digits
+     */
+    static int parseInt(char[] buf, int start, int end) {
+        if (start >= end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Signed int from buf[start, end), as Integer.parseInt accepts it, or MALFORMED.
+     * Quantities may be negative (returns), so they cannot use parseInt.
+     */
+    static long parseSignedInt(char[] buf, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+            negative = buf[pos] == '-';
+            pos++;
+        }
+        if (pos >= end || end - pos > 10) {
+            return MALFORMED;
+        }
+        long value = 0;
+        for (int i = pos; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return MALFORMED;
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? MALFORMED : value;
+    }
+
+    /**
+     * Plain decimal from buf[start, end), or NaN if malformed or not finite
+     * ("Infinity", "NaN", "1e309"), as no amount can be written back as one.
+     * Up to 15 significant digits are parsed exactly with one correctly rounded division;
+     * anything else falls back to Double.parseDouble.
+     */
+    static double parseDouble(char[] buf, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+            negative = buf[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDot = false;
+        for (; pos < end; pos++) {
+            char c = buf[pos];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenDot) scale++;
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (pos < end || digits > 15) {
+            return parseDoubleSlow(buf, start, end);
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(char[] buf, int start, int end) {
+        try {
+            double value = Double.parseDouble(new String(buf, start, end - start));
+            return Double.isInfinite(value) ? Double.NaN : value;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Fixed-layout yyyy-MM-dd HH:mm:ss, or null if malformed
+     */
+    static LocalDateTime parseTimestamp(char[] buf, int start, int end) {
+        if (end - start != TIMESTAMP_LENGTH
+                || buf[start + 4] != '-' || buf[start + 7] != '-' || buf[start + 10] != ' '
+                || buf[start + 13] != ':' || buf[start + 16] != ':') {
+            return null;
+        }
+        int year = parseInt(buf, start, start + 4);
+        int month = parseInt(buf, start + 5, start + 7);
+        int day = parseInt(buf, start + 8, start + 10);
+        int hour = parseInt(buf, start + 11, start + 13);
+        int minute = parseInt(buf, start + 14, start + 16);
+        int second = parseInt(buf, start + 17, start + 19);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Text field from buf[start, end), unquoting it if quoted
+     */
+    static String parseText(char[] buf, int start, int end) {
+        if (end - start < 2 || buf[start] != '"' || buf[end - 1] != '"') {
+            return new String(buf, start, end - start);
+        }
+        StringBuilder text = new StringBuilder(end - start - 2);
+        for (int i = start + 1; i < end - 1; i++) {
+            text.append(buf[i]);
+            if (buf[i] == '"' && i + 1 < end - 1 && buf[i + 1] == '"') {
+                i++;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Append a text field, quoting it if it contains a comma or quote.
+     * Line breaks cannot be stored in the line-based format and become spaces.
+     */
+    public static StringBuilder appendText(StringBuilder out, String value) {
+        String text = String.valueOf(value);
+        if (text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            text = text.replace('\r', ' ').replace('\n', ' ');
+        }
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0) {
+            return out.append(text);
+        }
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') out.append('"');
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Append a timestamp as yyyy-MM-dd HH:mm:ss
+     */
+    public static StringBuilder appendTimestamp(StringBuilder out, LocalDateTime value) {
+        appendDigits(out, value.getYear(), 4).append('-');
+        appendDigits(out, value.getMonthValue(), 2).append('-');
+        appendDigits(out, value.getDayOfMonth(), 2).append(' ');
+        appendDigits(out, value.getHour(), 2).append(':');
+        appendDigits(out, value.getMinute(), 2).append(':');
+        return appendDigits(out, value.getSecond(), 2);
+    }
+
+    private static StringBuilder appendDigits(StringBuilder out, int value, int width) {
+        for (int divisor = (int) POWERS_OF_TEN[width - 1]; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (value / divisor) % 10));
+        }
+        return out;
+    }
+}
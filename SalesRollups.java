@@ -0,0 +1,615 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * SalesRollups - Pre-aggregated hour/day/month rollups of each user's sales
+ * Every bucket holds revenue, sale count, the largest sale, quantity per product
+ * and revenue per category; day and month buckets also keep an hour-of-day profile.
+ * A date-range query is answered from the coarsest buckets that fit inside it:
+ * whole months, then whole days, then whole hours at the edges, and raw sales only
+ * for partial hours at the very ends. A 5-year range touches about 60 month buckets.
+ *
+ * Rollups are loaded on first use and kept current by Database.saveSale/deleteSale.
+ * They are persisted to data/sales_<user>.rollup in the background, stamped with the
+ * state of the sales storage they were built from; a missing or stale file is rebuilt
+ * from the sales on the next load.
+ *
+ * All access to a user's rollups happens under Database.salesLock.
+ */
+public class SalesRollups {
+    private static final int MAGIC = 0x524F4C4C; // "ROLL"
+    private static final int VERSION = 1;
+    private static final long HOUR = 3600;
+    private static final long DAY = 86400;
+
+    private final String filePrefix;
+    private final long saveDelayMillis;
+    private final Map<String, Cube> cubes = new ConcurrentHashMap<>();
+    private final Set<String> pendingSaves = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sales-rollups");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SalesRollups(String filePrefix) {
+        this.filePrefix = filePrefix;
+        this.saveDelayMillis = Long.getLong("sales.rollups.saveDelayMs", 1000L);
+    }
+
+    /**
+     * Analytics for sales with from <= saleDate < to; either bound may be null
+     */
+    public AnalyticsKernel query(String username, LocalDateTime from, LocalDateTime to) {
+        synchronized (Database.salesLock(username)) {
+            Cube cube = cubes.get(username);
+            if (cube == null) {
+                cube = loadOrRebuild(username);
+                cubes.put(username, cube);
+            }
+            return cube.query(username, from, to);
+        }
+    }
+
+    /**
+     * Account for newly saved sales. Called under the user's sales lock.
+     */
+    public void added(String username, List<Product> sales) {
+        Cube cube = cubes.get(username);
+        if (cube != null) {
+            for (Product sale : sales) {
+                cube.add(sale);
+            }
+            scheduleSave(username);
+        }
+    }
+
+    /**
+     * Account for a deleted sale. Called under the user's sales lock, after the
+     * sale is gone from Database's cached lists.
+     */
+    public void removed(String username, Product sale) {
+        Cube cube = cubes.get(username);
+        if (cube != null) {
+            cube.remove(username, sale);
+            scheduleSave(username);
+        }
+    }
+
+    /**
+     * Drop a user's in-memory rollups; the next query reloads or rebuilds them
+     */
+    public void invalidate(String username) {
+        cubes.remove(username);
+    }
+
+    private Cube loadOrRebuild(String username) {
+        File file = rollupFile(username);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                Cube cube = Cube.read(in, Database.storageStamp(username));
+                if (cube != null) {
+                    return cube;
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading sales rollups: " + e.getMessage());
+            }
+        }
+        Cube cube;
+        try (SalesRows.Snapshot sales = Database.getSalesRows(username)) {
+            cube = Cube.of(sales);
+        }
+        scheduleSave(username);
+        return cube;
+    }
+
+    private void scheduleSave(String username) {
+        if (pendingSaves.add(username)) {
+            saver.schedule(() -> {
+                pendingSaves.remove(username);
+                try {
+                    save(username);
+                } catch (IOException e) {
+                    System.err.println("Error saving sales rollups: " + e.getMessage());
+                }
+            }, saveDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Snapshot under the lock so the stamp matches the buckets, write outside it
+    private void save(String username) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        synchronized (Database.salesLock(username)) {
+            Cube cube = cubes.get(username);
+            String stamp = Database.storageStamp(username);
+            if (cube == null || stamp == null) {
+                return;
+            }
+            cube.write(new DataOutputStream(bytes), stamp);
+        }
+        File file = rollupFile(username);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            bytes.writeTo(out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File rollupFile(String username) {
+        return new File(filePrefix + username + ".rollup");
+    }
+
+    /**
+     * One user's rollups: hour, day and month buckets keyed by epoch hour,
+     * epoch day and year * 12 + month - 1
+     */
+    static final class Cube {
+        private final TreeMap<Integer, Bucket> hours = new TreeMap<>();
+        private final TreeMap<Integer, Bucket> days = new TreeMap<>();
+        private final TreeMap<Integer, Bucket> months = new TreeMap<>();
+
+        // Product and category names, dictionary-coded
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        /**
+         * Build rollups from sales read through cursors, in chunks on the
+         * AnalyticsKernel pool at or above its parallel threshold
+         */
+        static Cube of(SalesRows.Source sales) {
+            return AnalyticsKernel.forkJoin(sales.rowCount(), (from, to) -> scan(sales, from, to), Cube::merge);
+        }
+
+        private static Cube scan(SalesRows.Source sales, int from, int to) {
+            Cube cube = new Cube();
+            try (SalesRows rows = sales.cursor(from, to)) {
+                while (rows.next()) {
+                    cube.add(cube.code(SalesDictionary.string(rows.productCode())),
+                        cube.code(SalesDictionary.string(rows.categoryCode())),
+                        rows.amount(), rows.quantity(), rows.epochSecond());
+                }
+            }
+            return cube;
+        }
+
+        // Fold in the rollups for the sales that follow these
+        private Cube merge(Cube next) {
+            int[] codeMap = new int[next.names.size()];
+            for (int code = 0; code < codeMap.length; code++) {
+                codeMap[code] = code(next.names.get(code));
+            }
+            mergeLevel(hours, next.hours, codeMap);
+            mergeLevel(days, next.days, codeMap);
+            mergeLevel(months, next.months, codeMap);
+            return this;
+        }
+
+        private static void mergeLevel(TreeMap<Integer, Bucket> level, TreeMap<Integer, Bucket> next, int[] codeMap) {
+            for (Bucket bucket : next.values()) {
+                bucket(level, bucket.key, bucket.hourAmounts != null).merge(bucket, codeMap);
+            }
+        }
+
+        void add(Product sale) {
+            add(code(sale.getProductName()), code(sale.getCategory()), sale.getSaleAmount(), sale.getQuantity(),
+                sale.getSaleDate().toEpochSecond(ZoneOffset.UTC));
+        }
+
+        private void add(int product, int category, double amount, int quantity, long epochSecond) {
+            int hourOfDay = AnalyticsKernel.hourOf(epochSecond);
+            bucket(hours, hourKey(epochSecond), false).add(product, category, amount, quantity, hourOfDay);
+            bucket(days, dayKey(epochSecond), true).add(product, category, amount, quantity, hourOfDay);
+            bucket(months, AnalyticsKernel.monthKey(epochSecond), true)
+                .add(product, category, amount, quantity, hourOfDay);
+        }
+
+        void remove(String username, Product sale) {
+            long epochSecond = sale.getSaleDate().toEpochSecond(ZoneOffset.UTC);
+            Integer product = codes.get(String.valueOf(sale.getProductName()));
+            Integer category = codes.get(String.valueOf(sale.getCategory()));
+            if (product == null || category == null) {
+                return;
+            }
+            int hour = hourKey(epochSecond);
+            int day = dayKey(epochSecond);
+            int month = AnalyticsKernel.monthKey(epochSecond);
+            double amount = sale.getSaleAmount();
+            int quantity = sale.getQuantity();
+            int hourOfDay = sale.getHour();
+
+            // Buckets that lost their largest sale re-derive it, finest level first
+            if (removeFrom(hours, hour, product, category, amount, quantity, hourOfDay)) {
+                Bucket bucket = hours.get(hour);
+                bucket.resetMax();
+                LocalDateTime start = LocalDateTime.ofEpochSecond(hour * HOUR, 0, ZoneOffset.UTC);
+                try (SalesRows.Snapshot remaining = Database.getSalesRows(username, start, start.plusHours(1));
+                     SalesRows rows = remaining.cursor()) {
+                    while (rows.next()) {
+                        bucket.offerMax(rows.amount(), code(SalesDictionary.string(rows.productCode())));
+                    }
+                }
+            }
+            if (removeFrom(days, day, product, category, amount, quantity, hourOfDay)) {
+                deriveMax(days.get(day), hours.subMap(day * 24, day * 24 + 24).values());
+            }
+            if (removeFrom(months, month, product, category, amount, quantity, hourOfDay)) {
+                deriveMax(months.get(month), days.subMap(firstDay(month), firstDay(month + 1)).values());
+            }
+        }
+
+        // Returns true if the bucket is still live but its largest sale may have gone
+        private static boolean removeFrom(TreeMap<Integer, Bucket> level, int key, int product, int category,
+                                          double amount, int quantity, int hourOfDay) {
+            Bucket bucket = level.get(key);
+            if (bucket == null) {
+                return false;
+            }
+            bucket.remove(product, category, amount, quantity, hourOfDay);
+            if (bucket.count <= 0) {
+                level.remove(key);
+                return false;
+            }
+            return amount >= bucket.maxAmount;
+        }
+
+        private static void deriveMax(Bucket bucket, Collection<Bucket> children) {
+            bucket.resetMax();
+            for (Bucket child : children) {
+                bucket.offerMax(child.maxAmount, child.maxProduct);
+            }
+        }
+
+        /**
+         * Combine buckets for [from, to) in chronological order: raw sales, hours,
+         * days, months, days, hours, raw sales
+         */
+        AnalyticsKernel query(String username, LocalDateTime from, LocalDateTime to) {
+            AnalyticsKernel kernel = new AnalyticsKernel();
+            if (hours.isEmpty()) {
+                return kernel;
+            }
+            long start = from == null ? hours.firstKey() * HOUR : from.toEpochSecond(ZoneOffset.UTC);
+            long end = to == null ? (hours.lastKey() + 1) * HOUR : to.toEpochSecond(ZoneOffset.UTC);
+            if (start >= end) {
+                return kernel;
+            }
+
+            long hourStart = Math.floorDiv(start + HOUR - 1, HOUR);
+            long hourEnd = Math.floorDiv(end, HOUR);
+            if (hourStart >= hourEnd) {
+                addRaw(kernel, username, start, end);
+                return kernel;
+            }
+            addRaw(kernel, username, start, hourStart * HOUR);
+
+            long dayStart = Math.floorDiv(hourStart + 23, 24);
+            long dayEnd = Math.floorDiv(hourEnd, 24);
+            if (dayStart >= dayEnd) {
+                addHours(kernel, hourStart, hourEnd);
+            } else {
+                addHours(kernel, hourStart, dayStart * 24);
+
+                int monthStart = monthOfDay(dayStart);
+                if (firstDay(monthStart) < dayStart) {
+                    monthStart++;
+                }
+                int monthEnd = monthOfDay(dayEnd);
+                if (monthStart >= monthEnd) {
+                    addDays(kernel, (int) dayStart, (int) dayEnd);
+                } else {
+                    addDays(kernel, (int) dayStart, firstDay(monthStart));
+                    addMonths(kernel, monthStart, monthEnd);
+                    addDays(kernel, firstDay(monthEnd), (int) dayEnd);
+                }
+
+                addHours(kernel, dayEnd * 24, hourEnd);
+            }
+            addRaw(kernel, username, hourEnd * HOUR, end);
+            return kernel;
+        }
+
+        private void addRaw(AnalyticsKernel kernel, String username, long start, long end) {
+            if (start >= end) {
+                return;
+            }
+            try (SalesRows.Snapshot sales = Database.getSalesRows(username,
+                    LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC),
+                    LocalDateTime.ofEpochSecond(end, 0, ZoneOffset.UTC));
+                 SalesRows rows = sales.cursor()) {
+                while (rows.next()) {
+                    kernel.accept(rows);
+                }
+            }
+        }
+
+        private void addHours(AnalyticsKernel kernel, long from, long to) {
+            if (from >= to) {
+                return;
+            }
+            for (Bucket bucket : hours.subMap((int) from, (int) to).values()) {
+                addCommon(kernel, bucket);
+                kernel.addMonth(AnalyticsKernel.monthKey(bucket.key * HOUR), bucket.amount, bucket.count);
+                kernel.addHour(Math.floorMod(bucket.key, 24), bucket.amount, bucket.count);
+            }
+        }
+
+        private void addDays(AnalyticsKernel kernel, int from, int to) {
+            if (from >= to) {
+                return;
+            }
+            for (Bucket bucket : days.subMap(from, to).values()) {
+                addCommon(kernel, bucket);
+                addHourProfile(kernel, bucket);
+                kernel.addMonth(AnalyticsKernel.monthKey(bucket.key * DAY), bucket.amount, bucket.count);
+            }
+        }
+
+        private void addMonths(AnalyticsKernel kernel, int from, int to) {
+            for (Bucket bucket : months.subMap(from, to).values()) {
+                addCommon(kernel, bucket);
+                addHourProfile(kernel, bucket);
+                kernel.addMonth(bucket.key, bucket.amount, bucket.count);
+            }
+        }
+
+        private static void addHourProfile(AnalyticsKernel kernel, Bucket bucket) {
+            for (int hour = 0; hour < 24; hour++) {
+                if (bucket.hourCounts[hour] > 0) {
+                    kernel.addHour(hour, bucket.hourAmounts[hour], bucket.hourCounts[hour]);
+                }
+            }
+        }
+
+        private void addCommon(AnalyticsKernel kernel, Bucket bucket) {
+            kernel.addTotals(bucket.amount, bucket.count);
+            kernel.offerMax(bucket.maxAmount, names.get(bucket.maxProduct));
+            for (Map.Entry<Integer, int[]> product : bucket.products.entrySet()) {
+                kernel.addProduct(names.get(product.getKey()), product.getValue()[0]);
+            }
+            for (Map.Entry<Integer, double[]> category : bucket.categories.entrySet()) {
+                kernel.addCategory(names.get(category.getKey()), category.getValue()[0]);
+            }
+        }
+
+        private int code(String name) {
+            String text = String.valueOf(name);
+            Integer code = codes.get(text);
+            if (code == null) {
+                code = names.size();
+                names.add(text);
+                codes.put(text, code);
+            }
+            return code;
+        }
+
+        private static Bucket bucket(TreeMap<Integer, Bucket> level, int key, boolean hourProfile) {
+            Bucket bucket = level.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(key, hourProfile);
+                level.put(key, bucket);
+            }
+            return bucket;
+        }
+
+        // Persistence
+
+        void write(DataOutputStream out, String stamp) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(stamp);
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            writeLevel(out, hours);
+            writeLevel(out, days);
+            writeLevel(out, months);
+            out.flush();
+        }
+
+        /**
+         * Read rollups saved with the given stamp, or null if they were saved from
+         * a different state of the sales storage
+         */
+        static Cube read(DataInputStream in, String stamp) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || stamp == null || !stamp.equals(in.readUTF())) {
+                return null;
+            }
+            Cube cube = new Cube();
+            int nameCount = in.readInt();
+            for (int i = 0; i < nameCount; i++) {
+                cube.code(in.readUTF());
+            }
+            readLevel(in, cube.hours, false);
+            readLevel(in, cube.days, true);
+            readLevel(in, cube.months, true);
+            return cube;
+        }
+
+        private static void writeLevel(DataOutputStream out, TreeMap<Integer, Bucket> level) throws IOException {
+            out.writeInt(level.size());
+            for (Bucket bucket : level.values()) {
+                bucket.write(out);
+            }
+        }
+
+        private static void readLevel(DataInputStream in, TreeMap<Integer, Bucket> level, boolean hourProfile)
+                throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Bucket bucket = Bucket.read(in, hourProfile);
+                level.put(bucket.key, bucket);
+            }
+        }
+    }
+
+    /**
+     * Totals for one hour, day or month
+     */
+    static final class Bucket {
+        final int key;
+        double amount;
+        int count;
+        double maxAmount;
+        int maxProduct = -1;
+        // Product code -> {quantity, sales}; category code -> {amount, sales}
+        final Map<Integer, int[]> products = new HashMap<>();
+        final Map<Integer, double[]> categories = new HashMap<>();
+        // Hour-of-day profile, day and month buckets only
+        final double[] hourAmounts;
+        final int[] hourCounts;
+
+        Bucket(int key, boolean hourProfile) {
+            this.key = key;
+            this.hourAmounts = hourProfile ? new double[24] : null;
+            this.hourCounts = hourProfile ? new int[24] : null;
+        }
+
+        void add(int product, int category, double saleAmount, int quantity, int hourOfDay) {
+            amount += saleAmount;
+            count++;
+            offerMax(saleAmount, product);
+            int[] productLine = products.computeIfAbsent(product, k -> new int[2]);
+            productLine[0] += quantity;
+            productLine[1]++;
+            double[] categoryLine = categories.computeIfAbsent(category, k -> new double[2]);
+            categoryLine[0] += saleAmount;
+            categoryLine[1]++;
+            if (hourAmounts != null) {
+                hourAmounts[hourOfDay] += saleAmount;
+                hourCounts[hourOfDay]++;
+            }
+        }
+
+        void remove(int product, int category, double saleAmount, int quantity, int hourOfDay) {
+            amount -= saleAmount;
+            count--;
+            int[] productLine = products.get(product);
+            if (productLine != null) {
+                productLine[0] -= quantity;
+                if (--productLine[1] <= 0) {
+                    products.remove(product);
+                }
+            }
+            double[] categoryLine = categories.get(category);
+            if (categoryLine != null) {
+                categoryLine[0] -= saleAmount;
+                if (--categoryLine[1] <= 0) {
+                    categories.remove(category);
+                }
+            }
+            if (hourAmounts != null) {
+                hourAmounts[hourOfDay] = --hourCounts[hourOfDay] == 0 ? 0.0 : hourAmounts[hourOfDay] - saleAmount;
+            }
+        }
+
+        // Fold in the same bucket's totals for later sales, whose name codes map through codeMap
+        void merge(Bucket next, int[] codeMap) {
+            amount += next.amount;
+            count += next.count;
+            if (next.maxProduct >= 0) {
+                offerMax(next.maxAmount, codeMap[next.maxProduct]);
+            }
+            for (Map.Entry<Integer, int[]> entry : next.products.entrySet()) {
+                int[] productLine = products.computeIfAbsent(codeMap[entry.getKey()], k -> new int[2]);
+                productLine[0] += entry.getValue()[0];
+                productLine[1] += entry.getValue()[1];
+            }
+            for (Map.Entry<Integer, double[]> entry : next.categories.entrySet()) {
+                double[] categoryLine = categories.computeIfAbsent(codeMap[entry.getKey()], k -> new double[2]);
+                categoryLine[0] += entry.getValue()[0];
+                categoryLine[1] += entry.getValue()[1];
+            }
+            if (hourAmounts != null) {
+                for (int hour = 0; hour < 24; hour++) {
+                    hourAmounts[hour] += next.hourAmounts[hour];
+                    hourCounts[hour] += next.hourCounts[hour];
+                }
+            }
+        }
+
+        // Strictly greater keeps the earliest sale on ties
+        void offerMax(double saleAmount, int product) {
+            if (maxProduct < 0 || saleAmount > maxAmount) {
+                maxAmount = saleAmount;
+                maxProduct = product;
+            }
+        }
+
+        void resetMax() {
+            maxAmount = 0.0;
+            maxProduct = -1;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(key);
+            out.writeDouble(amount);
+            out.writeInt(count);
+            out.writeDouble(maxAmount);
+            out.writeInt(maxProduct);
+            out.writeInt(products.size());
+            for (Map.Entry<Integer, int[]> entry : products.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue()[0]);
+                out.writeInt(entry.getValue()[1]);
+            }
+            out.writeInt(categories.size());
+            for (Map.Entry<Integer, double[]> entry : categories.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeDouble(entry.getValue()[0]);
+                out.writeInt((int) entry.getValue()[1]);
+            }
+            if (hourAmounts != null) {
+                for (int hour = 0; hour < 24; hour++) {
+                    out.writeDouble(hourAmounts[hour]);
+                    out.writeInt(hourCounts[hour]);
+                }
+            }
+        }
+
+        static Bucket read(DataInputStream in, boolean hourProfile) throws IOException {
+            Bucket bucket = new Bucket(in.readInt(), hourProfile);
+            bucket.amount = in.readDouble();
+            bucket.count = in.readInt();
+            bucket.maxAmount = in.readDouble();
+            bucket.maxProduct = in.readInt();
+            int productCount = in.readInt();
+            for (int i = 0; i < productCount; i++) {
+                bucket.products.put(in.readInt(), new int[] {in.readInt(), in.readInt()});
+            }
+            int categoryCount = in.readInt();
+            for (int i = 0; i < categoryCount; i++) {
+                bucket.categories.put(in.readInt(), new double[] {in.readDouble(), in.readInt()});
+            }
+            if (hourProfile) {
+                for (int hour = 0; hour < 24; hour++) {
+                    bucket.hourAmounts[hour] = in.readDouble();
+                    bucket.hourCounts[hour] = in.readInt();
+                }
+            }
+            return bucket;
+        }
+    }
+
+    private static int hourKey(long epochSecond) {
+        return (int) Math.floorDiv(epochSecond, HOUR);
+    }
+
+    private static int dayKey(long epochSecond) {
+        return (int) Math.floorDiv(epochSecond, DAY);
+    }
+
+    private static int monthOfDay(long epochDay) {
+        return AnalyticsKernel.monthKey(epochDay * DAY);
+    }
+
+    // Epoch day of the first day of a month key
+    private static int firstDay(int monthKey) {
+        return (int) LocalDate.of(Math.floorDiv(monthKey, 12), Math.floorMod(monthKey, 12) + 1, 1).toEpochDay();
+    }
+}
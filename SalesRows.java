@@ -0,0 +1,116 @@
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * SalesRows - Forward-only cursor over a user's sales, one row at a time
+ * Lets analytics read a sales list and an off-heap table through the same code.
+ * Product names and categories are SalesDictionary codes and timestamps epoch
+ * seconds (UTC), as OffHeapSalesStore stores them. Close the rows when done.
+ */
+public interface SalesRows extends AutoCloseable {
+
+    /**
+     * Sales that can be read, whole or by row range, any number of times
+     */
+    interface Source {
+        /**
+         * Number of row positions; a cursor skips positions that hold deleted rows
+         */
+        int rowCount();
+
+        /**
+         * Open a cursor over the rows in positions [from, to)
+         */
+        SalesRows cursor(int from, int to);
+
+        default SalesRows cursor() {
+            return cursor(0, rowCount());
+        }
+    }
+
+    /**
+     * Source that stays readable until closed, even if its sales are evicted meanwhile
+     */
+    interface Snapshot extends Source, AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Advance to the next row; false when there are no more
+     */
+    boolean next();
+
+    int id();
+    int productCode();
+    int categoryCode();
+    String customerName();
+    int quantity();
+    double amount();
+    long epochSecond();
+
+    /**
+     * The current row as a Product
+     */
+    Product product();
+
+    @Override
+    void close();
+
+    /**
+     * Source over a sales list; closing it does nothing
+     */
+    static Snapshot of(List<Product> sales) {
+        return new Snapshot() {
+            @Override
+            public int rowCount() {
+                return sales.size();
+            }
+
+            @Override
+            public SalesRows cursor(int from, int to) {
+                return new ListRows(sales, from, Math.min(to, sales.size()));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    final class ListRows implements SalesRows {
+        private final List<Product> sales;
+        private final int end;
+        private int index;
+        private Product sale;
+
+        private ListRows(List<Product> sales, int from, int end) {
+            this.sales = sales;
+            this.end = end;
+            this.index = from - 1;
+        }
+
+        @Override
+        public boolean next() {
+            if (index + 1 >= end) {
+                index = end;
+                return false;
+            }
+            sale = sales.get(++index);
+            return true;
+        }
+
+        @Override public int id() { return sale.getId(); }
+        @Override public int productCode() { return sale.getProductCode(); }
+        @Override public int categoryCode() { return sale.getCategoryCode(); }
+        @Override public String customerName() { return sale.getCustomerName(); }
+        @Override public int quantity() { return sale.getQuantity(); }
+        @Override public double amount() { return sale.getSaleAmount(); }
+        @Override public long epochSecond() { return sale.getSaleDate().toEpochSecond(ZoneOffset.UTC); }
+        @Override public Product product() { return sale; }
+
+        @Override
+        public void close() {
+        }
+    }
+}
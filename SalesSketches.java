@@ -0,0 +1,130 @@
+import java.io.*;
+import java.util.List;
+
+/**
+ * SalesSketches - Approximate analytics for one user's sales in bounded memory
+ * Top products come from a Space-Saving sketch weighted by quantity, and distinct
+ * customers from a HyperLogLog over customerName. Both are updated on every insert,
+ * can be merged across users or shards, and are reported with their error bounds.
+ * Deletes are subtracted from the product counts. Sales with a quantity below 1
+ * count as sales but add nothing to the product counts.
+ *
+ * analytics.sketch.capacity   product counters kept (default 1000)
+ * analytics.sketch.precision  HyperLogLog precision, 2^p registers (default 14)
+ */
+public class SalesSketches {
+    private static final int TOP_LIMIT = 5;
+    private static final int CAPACITY = Integer.getInteger("analytics.sketch.capacity", SpaceSavingSketch.DEFAULT_CAPACITY);
+    private static final int PRECISION = Integer.getInteger("analytics.sketch.precision", HyperLogLog.DEFAULT_PRECISION);
+
+    private final SpaceSavingSketch products;
+    private final HyperLogLog customers;
+    private long totalSales = 0;
+
+    public SalesSketches() {
+        this(new SpaceSavingSketch(CAPACITY), new HyperLogLog(PRECISION));
+    }
+
+    private SalesSketches(SpaceSavingSketch products, HyperLogLog customers) {
+        this.products = products;
+        this.customers = customers;
+    }
+
+    /**
+     * Build sketches from a sales list
+     */
+    public static SalesSketches of(List<Product> sales) {
+        return of(SalesRows.of(sales));
+    }
+
+    /**
+     * Build sketches from sales rows, without creating a Product per row
+     */
+    public static SalesSketches of(SalesRows.Source sales) {
+        SalesSketches sketches = new SalesSketches();
+        try (SalesRows rows = sales.cursor()) {
+            while (rows.next()) {
+                sketches.totalSales++;
+                sketches.products.add(SalesDictionary.string(rows.productCode()), rows.quantity());
+                sketches.customers.add(rows.customerName());
+            }
+        }
+        return sketches;
+    }
+
+    public synchronized void add(Product sale) {
+        totalSales++;
+        products.add(sale.getProductName(), sale.getQuantity());
+        customers.add(sale.getCustomerName());
+    }
+
+    /**
+     * Take a deleted sale back out. Product counts and the sale count are exact;
+     * HyperLogLog cannot forget a customer, so the distinct-customer estimate may
+     * still count this sale's customer until the sketches are rebuilt.
+     */
+    public synchronized void remove(Product sale) {
+        totalSales--;
+        products.remove(sale.getProductName(), sale.getQuantity());
+    }
+
+    public synchronized void merge(SalesSketches other) {
+        synchronized (other) {
+            totalSales += other.totalSales;
+            products.merge(other.products);
+            customers.merge(other.customers);
+        }
+    }
+
+    public synchronized long estimateDistinctCustomers() {
+        return customers.estimate();
+    }
+
+    public synchronized List<SpaceSavingSketch.Estimate> topProducts(int limit) {
+        return products.top(limit);
+    }
+
+    /**
+     * Approximate analytics JSON:
+     * {"approximate":true,"summary":{"totalSales":n},
+     *  "topProducts":{name:quantity},"topProductErrors":{name:maxOvercount},"topProductsMaxError":e,
+     *  "distinctCustomers":{"estimate":n,"relativeErrorPercent":p}}
+     */
+    public synchronized void writeJSON(JsonWriter json) {
+        List<SpaceSavingSketch.Estimate> top = products.top(TOP_LIMIT);
+        json.beginObject()
+            .field("approximate", true)
+            .name("summary").beginObject().field("totalSales", totalSales).endObject();
+
+        json.name("topProducts").beginObject();
+        for (SpaceSavingSketch.Estimate estimate : top) {
+            json.field(estimate.getItem(), estimate.getCount());
+        }
+        json.endObject();
+        json.name("topProductErrors").beginObject();
+        for (SpaceSavingSketch.Estimate estimate : top) {
+            json.field(estimate.getItem(), estimate.getError());
+        }
+        json.endObject();
+        json.field("topProductsMaxError", products.maxError());
+
+        json.name("distinctCustomers").beginObject()
+            .field("estimate", customers.estimate())
+            .fieldMoney("relativeErrorPercent", customers.relativeError() * 100)
+            .endObject();
+        json.endObject();
+    }
+
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(totalSales);
+        products.writeTo(out);
+        customers.writeTo(out);
+    }
+
+    public static SalesSketches readFrom(DataInputStream in) throws IOException {
+        long totalSales = in.readLong();
+        SalesSketches sketches = new SalesSketches(SpaceSavingSketch.readFrom(in), HyperLogLog.readFrom(in));
+        sketches.totalSales = totalSales;
+        return sketches;
+    }
+}
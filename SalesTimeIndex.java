@@ -0,0 +1,159 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * SalesTimeIndex - One user's sales ordered by (saleDate, id)
+ * Date-range lookups binary-search both ends and copy only the matching rows,
+ * so a narrow range costs O(log n + k) whatever the size of the history.
+ *
+ * Sales normally arrive in date order and are appended. Back-dated sales are
+ * inserted at their position: a single one with one array shift, several at once
+ * with a sort of the batch and a linear merge.
+ */
+public class SalesTimeIndex {
+    private static final Comparator<Product> ORDER =
+        Comparator.comparing(Product::getSaleDate).thenComparingInt(Product::getId);
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private Product[] sales;
+    private int size;
+
+    private SalesTimeIndex(Product[] sales, int size) {
+        this.sales = sales;
+        this.size = size;
+    }
+
+    /**
+     * Build an index over a full sales list
+     */
+    public static SalesTimeIndex of(List<Product> sales) {
+        Product[] sorted = sales.toArray(new Product[Math.max(sales.size(), 16)]);
+        Arrays.sort(sorted, 0, sales.size(), ORDER);
+        return new SalesTimeIndex(sorted, sales.size());
+    }
+
+    /**
+     * Sales with from <= saleDate < to, in date order. Either bound may be null.
+     */
+    public synchronized List<Product> range(LocalDateTime from, LocalDateTime to) {
+        int start = from == null ? 0 : lowerBound(from);
+        int end = to == null ? size : lowerBound(to);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(sales, start, end)));
+    }
+
+    /**
+     * Add newly saved sales, keeping date order
+     */
+    public synchronized void add(List<Product> added) {
+        List<Product> backdated = null;
+        for (Product sale : added) {
+            if (size == 0 || ORDER.compare(sale, sales[size - 1]) >= 0) {
+                ensureCapacity(size + 1);
+                sales[size++] = sale;
+            } else {
+                if (backdated == null) {
+                    backdated = new ArrayList<>();
+                }
+                backdated.add(sale);
+            }
+        }
+        if (backdated == null) {
+            return;
+        }
+        if (backdated.size() == 1) {
+            insert(backdated.get(0));
+        } else {
+            merge(backdated);
+        }
+    }
+
+    /**
+     * Remove a deleted sale
+     */
+    public synchronized void remove(Product sale) {
+        int pos = Arrays.binarySearch(sales, 0, size, sale, ORDER);
+        if (pos >= 0) {
+            System.arraycopy(sales, pos + 1, sales, pos, size - pos - 1);
+            sales[--size] = null;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // First position whose saleDate is at or after date
+    private int lowerBound(LocalDateTime date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sales[mid].getSaleDate().isBefore(date)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insert(Product sale) {
+        int pos = Arrays.binarySearch(sales, 0, size, sale, ORDER);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(sales, pos, sales, pos + 1, size - pos);
+        sales[pos] = sale;
+        size++;
+    }
+
+    private void merge(List<Product> backdated) {
+        backdated.sort(ORDER);
+        Product[] merged = new Product[Math.max(sales.length, size + backdated.size())];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size && j < backdated.size()) {
+            merged[k++] = ORDER.compare(sales[i], backdated.get(j)) <= 0 ? sales[i++] : backdated.get(j++);
+        }
+        while (i < size) merged[k++] = sales[i++];
+        while (j < backdated.size()) merged[k++] = backdated.get(j++);
+        sales = merged;
+        size = k;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > sales.length) {
+            sales = Arrays.copyOf(sales, Math.max(capacity, sales.length * 2));
+        }
+    }
+
+    /**
+     * Parse a from/to query bound: yyyy-MM-dd or yyyy-MM-dd HH:mm:ss (a 'T' separator
+     * is also accepted). Both bounds are inclusive, so an upper bound is returned as
+     * the exclusive instant just after it: the next day for a date, the next second
+     * for a timestamp. Returns null for a missing bound.
+     */
+    public static LocalDateTime parseBound(String value, boolean upper) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            if (value.length() == 10) {
+                LocalDate date = LocalDate.parse(value);
+                return upper ? date.plusDays(1).atStartOfDay() : date.atStartOfDay();
+            }
+            LocalDateTime time = LocalDateTime.parse(value.replace('T', ' '), TIMESTAMP);
+            return upper ? time.plusSeconds(1) : time;
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerExecutor - Request executor for the HTTP server, selected at startup
+ *
+ * server.executor=pool     bounded platform thread pool (default)
+ * server.executor=virtual  one virtual thread per request (JDK 21+, falls back to pool)
+ * server.executor=direct   run on the HttpServer dispatcher thread (old behaviour)
+ *
+ * In pool mode, requests that do not fit in the queue are answered with 503 on the
+ * dispatcher thread by the overload filter instead of being queued.
+ */
+public class ServerExecutor implements Executor {
+    private static final ThreadLocal<Boolean> REJECTED = ThreadLocal.withInitial(() -> false);
+
+    private final String mode;
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor pool;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private ServerExecutor(String mode, ExecutorService delegate, ThreadPoolExecutor pool) {
+        this.mode = mode;
+        this.delegate = delegate;
+        this.pool = pool;
+    }
+
+    /**
+     * Create the executor configured by system properties
+     */
+    public static ServerExecutor fromConfig() {
+        String mode = System.getProperty("server.executor", "pool");
+        int threads = Integer.getInteger("server.threads", Runtime.getRuntime().availableProcessors() * 2);
+        int queueCapacity = Integer.getInteger("server.queueCapacity", 1000);
+
+        if ("direct".equals(mode)) {
+            return new ServerExecutor(mode, null, null);
+        }
+        if ("virtual".equals(mode)) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return new ServerExecutor(mode, virtual, null);
+            }
+            System.err.println("Virtual threads need JDK 21+, falling back to a bounded pool");
+            mode = "pool";
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            namedThreads("http-worker"),
+            new ThreadPoolExecutor.AbortPolicy());
+        return new ServerExecutor(mode, pool, pool);
+    }
+
+    // Looked up reflectively so the server still builds and runs on JDK 11/17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> new Thread(r, prefix + "-" + count.incrementAndGet());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (delegate == null) {
+            run(task);
+            return;
+        }
+        try {
+            delegate.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            // Queue is full: run the exchange here with the rejected flag so it only sends a 503
+            rejected.incrementAndGet();
+            REJECTED.set(true);
+            try {
+                task.run();
+            } finally {
+                REJECTED.set(false);
+            }
+        }
+    }
+
+    private void run(Runnable task) {
+        active.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            active.decrementAndGet();
+            completed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Filter that answers 503 for requests the executor could not accept
+     */
+    public Filter overloadFilter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (!REJECTED.get()) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                byte[] body = "{\"error\":\"Server busy, please retry\"}".getBytes();
+                exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Rejects requests with 503 when the executor queue is full";
+            }
+        };
+    }
+
+    // Gauges
+    public String getMode() { return mode; }
+    public int getActiveThreads() { return active.get(); }
+    public int getQueueDepth() { return pool == null ? 0 : pool.getQueue().size(); }
+    public int getPoolSize() { return pool == null ? 0 : pool.getPoolSize(); }
+    public long getCompleted() { return completed.get(); }
+    public long getRejected() { return rejected.get(); }
+
+    public String toJSON() {
+        return new JsonWriter().beginObject()
+            .field("mode", mode)
+            .field("activeThreads", getActiveThreads())
+            .field("queueDepth", getQueueDepth())
+            .field("poolSize", getPoolSize())
+            .field("completed", getCompleted())
+            .field("rejected", getRejected())
+            .endObject()
+            .toString();
+    }
+}
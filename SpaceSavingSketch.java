@@ -0,0 +1,205 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * SpaceSavingSketch - Approximate heaviest items of a weighted stream (Space-Saving)
+ * Keeps at most capacity counters. An unseen item takes over the smallest counter,
+ * inheriting its count as the item's error. Every reported count is an overestimate
+ * by at most its error, and the error is never more than totalWeight / capacity, so
+ * any item heavier than that is guaranteed to be tracked. Weight can be taken back
+ * out of a tracked item (a deleted sale) without breaking either bound. The bounds
+ * only hold for positive weights, so zero and negative weights (returns recorded as
+ * negative quantities) are skipped by both add and remove.
+ *
+ * Updates cost O(log capacity); memory is O(capacity) whatever the number of items.
+ */
+public class SpaceSavingSketch {
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    // Smallest counter first; ties ordered by key so the set is a total order
+    private final TreeSet<Counter> byCount = new TreeSet<>();
+    private long totalWeight = 0;
+    // Highest count any counter had when it was taken over; once removals can lower
+    // counts, this rather than the smallest count bounds what untracked items hold
+    private long evictedCount = 0;
+
+    public SpaceSavingSketch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add weight to an item; null counts as the string "null", as in the sales file
+     */
+    public void add(String item, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        String key = String.valueOf(item);
+        totalWeight += weight;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            byCount.add(counter);
+        } else if (counters.size() < capacity) {
+            put(new Counter(key, weight, 0));
+        } else {
+            Counter smallest = byCount.pollFirst();
+            counters.remove(smallest.key);
+            evictedCount = Math.max(evictedCount, smallest.count);
+            put(new Counter(key, smallest.count + weight, smallest.count));
+        }
+    }
+
+    /**
+     * Take weight back out of an item. A tracked count keeps its error, since both the
+     * estimate and the true count drop by the same weight; an untracked item's true
+     * count only gets smaller, so nothing changes for it.
+     */
+    public void remove(String item, long weight) {
+        if (weight <= 0) {
+            return; // Never added
+        }
+        String key = String.valueOf(item);
+        totalWeight -= weight;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count -= weight;
+            byCount.add(counter);
+        }
+    }
+
+    /**
+     * Up to k items with the highest estimated counts, highest first
+     */
+    public List<Estimate> top(int k) {
+        List<Estimate> top = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter> it = byCount.descendingIterator();
+        while (top.size() < k && it.hasNext()) {
+            Counter counter = it.next();
+            top.add(new Estimate(counter.key, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    /**
+     * Upper bound on the overestimate of any count, and on the true count of any
+     * item that is not tracked
+     */
+    public long maxError() {
+        return counters.size() < capacity ? 0 : Math.max(byCount.first().count, evictedCount);
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Fold another sketch into this one. An item missing from a full sketch may have
+     * had up to that sketch's smallest count, which is added to its count and error.
+     */
+    public void merge(SpaceSavingSketch other) {
+        long thisMissing = maxError();
+        long otherMissing = other.maxError();
+        Map<String, Counter> merged = new HashMap<>();
+        for (Counter counter : counters.values()) {
+            Counter theirs = other.counters.get(counter.key);
+            merged.put(counter.key, theirs != null
+                ? new Counter(counter.key, counter.count + theirs.count, counter.error + theirs.error)
+                : new Counter(counter.key, counter.count + otherMissing, counter.error + otherMissing));
+        }
+        for (Counter theirs : other.counters.values()) {
+            if (!merged.containsKey(theirs.key)) {
+                merged.put(theirs.key, new Counter(theirs.key, theirs.count + thisMissing, theirs.error + thisMissing));
+            }
+        }
+
+        TreeSet<Counter> ranked = new TreeSet<>(merged.values());
+        // An item missing from both sides may have had up to both missing counts
+        evictedCount = thisMissing + otherMissing;
+        counters.clear();
+        byCount.clear();
+        Iterator<Counter> it = ranked.descendingIterator();
+        while (counters.size() < capacity && it.hasNext()) {
+            put(it.next());
+        }
+        if (it.hasNext()) {
+            evictedCount = Math.max(evictedCount, it.next().count);
+        }
+        totalWeight += other.totalWeight;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(totalWeight);
+        out.writeInt(counters.size());
+        for (Counter counter : byCount) {
+            out.writeUTF(counter.key);
+            out.writeLong(counter.count);
+            out.writeLong(counter.error);
+        }
+    }
+
+    public static SpaceSavingSketch readFrom(DataInputStream in) throws IOException {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(in.readInt());
+        sketch.totalWeight = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            sketch.put(new Counter(in.readUTF(), in.readLong(), in.readLong()));
+        }
+        sketch.evictedCount = sketch.maxError();
+        return sketch;
+    }
+
+    private void put(Counter counter) {
+        counters.put(counter.key, counter);
+        byCount.add(counter);
+    }
+
+    /**
+     * An item's estimated count; the true count is between count - error and count
+     */
+    public static final class Estimate {
+        private final String item;
+        private final long count;
+        private final long error;
+
+        Estimate(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getItem() { return item; }
+        public long getCount() { return count; }
+        public long getError() { return error; }
+    }
+
+    private static final class Counter implements Comparable<Counter> {
+        final String key;
+        long count;
+        final long error;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        @Override
+        public int compareTo(Counter other) {
+            int byCount = Long.compare(count, other.count);
+            return byCount != 0 ? byCount : key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StaticFiles - Serves the frontend (HTML, JS, CSS, images) from static.root
+ * Only files with a known asset extension directly under the root or its
+ * non-hidden subdirectories are served; data/ never is. The asset index is built
+ * at startup, including any precompressed "<file>.gz" sitting next to an asset,
+ * and an entry is refreshed when its file's size or modification time changes.
+ *
+ * Files up to static.cache.maxFileBytes are kept in memory. Larger ones are sent
+ * with FileChannel.transferTo to the response stream. Responses carry a strong
+ * ETag built from size and modification time; HTML is revalidated on every load,
+ * everything else may be cached for static.maxAge seconds.
+ */
+public class StaticFiles implements HttpHandler {
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+    }
+
+    private final String index;
+    private final int maxAge;
+    private final int maxCachedBytes;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public StaticFiles() {
+        this(Path.of(System.getProperty("static.root", ".")),
+            System.getProperty("static.index", "login.html"),
+            Integer.getInteger("static.maxAge", 300),
+            Integer.getInteger("static.cache.maxFileBytes", 256 * 1024));
+    }
+
+    public StaticFiles(Path root, String index, int maxAge, int maxCachedBytes) {
+        this.index = index;
+        this.maxAge = maxAge;
+        this.maxCachedBytes = maxCachedBytes;
+        scan(root.toAbsolutePath().normalize().toFile(), "");
+    }
+
+    /**
+     * Number of assets found at startup
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+            sendStatus(exchange, 405);
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        Asset asset = lookup(path.equals("/") ? index : path.substring(1));
+        if (asset == null) {
+            sendStatus(exchange, 404);
+            return;
+        }
+
+        boolean gzip = asset.gzFile != null
+            && "gzip".equals(ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+        Variant variant = gzip ? asset.gz : asset.identity;
+        exchange.getResponseHeaders().set("Content-Type", asset.contentType);
+        exchange.getResponseHeaders().set("ETag", variant.etag);
+        exchange.getResponseHeaders().set("Cache-Control",
+            asset.contentType.startsWith("text/html") ? "no-cache" : "public, max-age=" + maxAge);
+        if (asset.gzFile != null) {
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        }
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), variant.etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(variant.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] cached = variant.bytes;
+        if (cached != null) {
+            exchange.sendResponseHeaders(200, cached.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(cached);
+            }
+            return;
+        }
+        try (FileChannel file = FileChannel.open(variant.file.toPath(), StandardOpenOption.READ)) {
+            long length = file.size();
+            exchange.sendResponseHeaders(200, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                WritableByteChannel channel = Channels.newChannel(out);
+                long position = 0;
+                while (position < length) {
+                    position += file.transferTo(position, length - position, channel);
+                }
+            }
+        }
+    }
+
+    // Resolve a request path to an asset, refreshing the entry if its file changed
+    private Asset lookup(String relative) {
+        Asset asset = assets.get(relative);
+        if (asset == null) {
+            return null;
+        }
+        File file = asset.identity.file;
+        if (!file.isFile()) {
+            assets.remove(relative);
+            return null;
+        }
+        if (file.length() != asset.identity.length || file.lastModified() != asset.lastModified) {
+            asset = load(file);
+            assets.put(relative, asset);
+        }
+        return asset;
+    }
+
+    private void scan(File dir, String prefix) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(".")) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                // Sales and user files live in data/ and must never be served
+                if (!(prefix.isEmpty() && name.equals("data"))) {
+                    scan(file, prefix + name + "/");
+                }
+            } else if (contentType(name) != null) {
+                assets.put(prefix + name, load(file));
+            }
+        }
+    }
+
+    private Asset load(File file) {
+        File gzFile = new File(file.getPath() + ".gz");
+        // A stale .gz would serve old content, so it must be at least as new as the file
+        if (!gzFile.isFile() || gzFile.lastModified() < file.lastModified()) {
+            gzFile = null;
+        }
+        return new Asset(file, gzFile, contentType(file.getName()));
+    }
+
+    private static String contentType(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private final class Asset {
+        final long lastModified;
+        final String contentType;
+        final File gzFile;
+        final Variant identity;
+        final Variant gz;
+
+        Asset(File file, File gzFile, String contentType) {
+            this.lastModified = file.lastModified();
+            this.contentType = contentType;
+            this.gzFile = gzFile;
+            String tag = Long.toHexString(file.length()) + "-" + Long.toHexString(lastModified);
+            this.identity = new Variant(file, "\"" + tag + "\"");
+            this.gz = gzFile == null ? null : new Variant(gzFile, "\"" + tag + "-gz\"");
+        }
+    }
+
+    private final class Variant {
+        final File file;
+        final long length;
+        final String etag;
+        final byte[] bytes;
+
+        Variant(File file, String etag) {
+            this.file = file;
+            this.length = file.length();
+            this.etag = etag;
+            this.bytes = length <= maxCachedBytes ? read(file) : null;
+        }
+    }
+
+    // Null if the file cannot be read now; it is then streamed from disk instead
+    private static byte[] read(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Error reading static file " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
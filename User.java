@@ -72,9 +72,16 @@ public class User {
     }
 
     public String toJSON() {
-        return String.format(
-            "{\"username\":\"%s\",\"fullName\":\"%s\",\"businessName\":\"%s\"}",
-            username, fullName, businessName
-        );
+        JsonWriter json = new JsonWriter();
+        writeJSON(json);
+        return json.toString();
+    }
+
+    public void writeJSON(JsonWriter json) {
+        json.beginObject()
+            .field("username", username)
+            .field("fullName", fullName)
+            .field("businessName", businessName)
+            .endObject();
     }
 }
\ No newline at end of file
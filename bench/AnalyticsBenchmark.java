@@ -0,0 +1,102 @@
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * AnalyticsBenchmark - Compares the single-pass AnalyticsKernel against the
+ * original multi-pass SalesAnalytics methods on a seeded synthetic dataset.
+ *
+ * Run from the project root:
+ *   javac -d out *.java bench/*.java
+ *   java -cp out AnalyticsBenchmark [rows] [iterations]
+ */
+public class AnalyticsBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<Product> sales = generateSales(rows, 42L);
+        System.out.println("Rows: " + rows + ", iterations: " + iterations);
+
+        // Warm up both paths before measuring
+        for (int i = 0; i < 3; i++) {
+            multiPass(sales);
+            singlePass(sales);
+        }
+
+        long multiPassNanos = time(() -> multiPass(sales), iterations);
+        long singlePassNanos = time(() -> singlePass(sales), iterations);
+
+        report("multi-pass (SalesAnalytics methods)", multiPassNanos, rows);
+        report("single-pass (AnalyticsKernel)", singlePassNanos, rows);
+        System.out.printf("Speedup: %.2fx%n", (double) multiPassNanos / singlePassNanos);
+    }
+
+    /**
+     * The work the original getAnalyticsJSON did, one SalesAnalytics call per metric
+     */
+    static int multiPass(List<Product> sales) {
+        SalesAnalytics analytics = new SalesAnalytics(sales);
+        int sink = 0;
+        sink += Double.hashCode(analytics.getTotalRevenue());
+        sink += Double.hashCode(analytics.getMaxSaleAmount());
+        sink += analytics.getMaxSaleProduct().length();
+        sink += analytics.getMaxSaleMonth().length();
+        sink += analytics.getPeakSalesHour();
+        sink += analytics.getTopSellingProducts(5).size();
+        sink += analytics.getLeastSellingProducts(5).size();
+        sink += analytics.getSalesByMonth().size();
+        sink += analytics.getSalesByCategory().size();
+        sink += analytics.getSalesByHour().size();
+        return sink;
+    }
+
+    static int singlePass(List<Product> sales) {
+        AnalyticsKernel kernel = AnalyticsKernel.run(sales);
+        int sink = 0;
+        sink += Double.hashCode(kernel.getTotalRevenue());
+        sink += Double.hashCode(kernel.getMaxSaleAmount());
+        sink += kernel.getMaxSaleProduct().length();
+        sink += kernel.getMaxSaleMonth().length();
+        sink += kernel.getPeakSalesHour();
+        sink += kernel.getTopProducts(5).length;
+        sink += kernel.getLeastProducts(5).length;
+        return sink;
+    }
+
+    static long time(Runnable task, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+
+    static void report(String label, long nanosPerRun, int rows) {
+        System.out.printf("%-40s %10.2f ms/run %12.0f rows/sec%n",
+            label, nanosPerRun / 1e6, rows / (nanosPerRun / 1e9));
+    }
+
+    /**
+     * Seeded synthetic sales: 500 products, 8 categories, 3 years of dates
+     */
+    static List<Product> generateSales(int rows, long seed) {
+        Random random = new Random(seed);
+        String[] categories = {"Electronics", "Clothing", "Food", "Books", "Home", "Sports", "Toys", "Beauty"};
+        LocalDateTime start = LocalDateTime.of(2022, 1, 1, 0, 0);
+        List<Product> sales = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int product = random.nextInt(500);
+            sales.add(new Product(
+                i + 1,
+                "Product " + product,
+                categories[product % categories.length],
+                Math.round(random.nextDouble() * 50_000) / 100.0,
+                1 + random.nextInt(10),
+                start.plusMinutes(random.nextInt(3 * 365 * 24 * 60)),
+                "Customer " + random.nextInt(10_000)
+            ));
+        }
+        return sales;
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * DataGenerator - Synthetic tenants for local load tests
+ * Appends users to data/users.txt and writes one data/sales_<user>.txt per user.
+ * SKU popularity is Zipf-distributed, each SKU has its own price and category,
+ * sales cluster around lunch and evening hours over the last --days days and
+ * are written in date order with IDs 1..rows, as the server would have
+ * appended them. Users are named <prefix>0001, <prefix>0002, ... and all share
+ * one password, which is what LoadGenerator logs in with.
+ *
+ * Usage: java DataGenerator [dataDir] [--users=20] [--rows=10000] [--skus=500]
+ *                           [--days=365] [--seed=42] [--prefix=load]
+ *                           [--password=loadtest] [--force]
+ * Existing users and sales files with the same names are left alone unless
+ * --force is given. Run it while the server is stopped, and SalesMigration
+ * afterwards to load test the columnar engine.
+ */
+public class DataGenerator {
+    static final String DEFAULT_PREFIX = "load";
+    static final String DEFAULT_PASSWORD = "loadtest";
+
+    private static final String[] CATEGORIES = {"Electronics", "Clothing", "Food", "Books", "Home", "Sports", "Toys", "Beauty"};
+    // Relative share of sales per hour of day: quiet nights, lunch and evening peaks
+    private static final int[] HOUR_WEIGHTS = {1, 1, 1, 1, 1, 2, 3, 5, 7, 8, 9, 11, 14, 13, 10, 9, 9, 10, 13, 14, 12, 8, 4, 2};
+
+    public static void main(String[] args) throws IOException {
+        String dataDir = "data";
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                dataDir = arg;
+            }
+        }
+        int users = intOption(options, "users", 20);
+        int rows = intOption(options, "rows", 10_000);
+        int skus = intOption(options, "skus", 500);
+        int days = intOption(options, "days", 365);
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        String prefix = options.getOrDefault("prefix", DEFAULT_PREFIX);
+        String password = options.getOrDefault("password", DEFAULT_PASSWORD);
+        boolean force = options.containsKey("force");
+
+        File dir = new File(dataDir);
+        dir.mkdirs();
+        File usersFile = new File(dir, "users.txt");
+        Set<String> existing = readUsernames(usersFile);
+
+        Random random = new Random(seed);
+        Catalog catalog = new Catalog(skus, random);
+        LocalDateTime end = LocalDate.now().atStartOfDay();
+        long start = System.nanoTime();
+        long totalRows = 0;
+        int created = 0;
+
+        try (BufferedWriter userWriter = new BufferedWriter(new FileWriter(usersFile, true))) {
+            for (int i = 1; i <= users; i++) {
+                String username = username(prefix, i);
+                File salesFile = new File(dir, "sales_" + username + ".txt");
+                if (!force && (existing.contains(username) || salesFile.exists())) {
+                    System.out.println("Skipping " + username + ": already exists (use --force to overwrite its sales)");
+                    continue;
+                }
+                if (!existing.contains(username)) {
+                    User user = new User(username, password, "Load Test " + i, "Tenant " + i);
+                    userWriter.write(user.toFileString());
+                    userWriter.newLine();
+                }
+                writeSales(salesFile, rows, days, end, catalog, random);
+                // A stale high-water mark would make new IDs jump (the allocator rescans the
+                // file without one), and old columnar segments no longer match the text file
+                for (String stale : new String[] {".hwm", ".col", ".dict"}) {
+                    new File(dir, "sales_" + username + stale).delete();
+                }
+                totalRows += rows;
+                created++;
+            }
+        }
+
+        System.out.printf("Generated %d users x %d rows (%d SKUs, %d days) in %s in %.1f s%n",
+            created, rows, skus, days, dir, (System.nanoTime() - start) / 1e9);
+        System.out.println("Total rows: " + totalRows + ", password: " + password);
+    }
+
+    /**
+     * Name of the i-th generated user (1-based)
+     */
+    static String username(String prefix, int i) {
+        return String.format("%s%04d", prefix, i);
+    }
+
+    private static void writeSales(File file, int rows, int days, LocalDateTime end, Catalog catalog, Random random)
+            throws IOException {
+        // Seconds before the end of the span, sorted so IDs follow sale dates
+        long[] offsets = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            long day = random.nextInt(Math.max(1, days));
+            int hour = weightedHour(random);
+            offsets[i] = day * 86_400 + (23 - hour) * 3_600L + random.nextInt(3_600);
+        }
+        Arrays.sort(offsets);
+
+        int customers = Math.max(10, rows / 20);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < rows; i++) {
+                int sku = catalog.sample(random);
+                int quantity = 1 + (int) Math.min(9, -Math.log(1 - random.nextDouble()) * 2);
+                double amount = Math.round(catalog.prices[sku] * quantity * (0.9 + random.nextDouble() * 0.2) * 100) / 100.0;
+                Product sale = new Product(
+                    i + 1,
+                    "Product " + sku,
+                    catalog.categories[sku],
+                    amount,
+                    quantity,
+                    end.minusSeconds(offsets[rows - 1 - i] + 1),
+                    "Customer " + random.nextInt(customers)
+                );
+                writer.write(sale.toFileString());
+                writer.newLine();
+            }
+        }
+    }
+
+    private static int weightedHour(Random random) {
+        int total = 0;
+        for (int weight : HOUR_WEIGHTS) {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        for (int hour = 0; hour < HOUR_WEIGHTS.length; hour++) {
+            pick -= HOUR_WEIGHTS[hour];
+            if (pick < 0) {
+                return hour;
+            }
+        }
+        return HOUR_WEIGHTS.length - 1;
+    }
+
+    private static Set<String> readUsernames(File usersFile) throws IOException {
+        Set<String> usernames = new HashSet<>();
+        if (!usersFile.exists()) {
+            return usernames;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(usersFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                User user = User.fromFileString(line);
+                if (user != null) {
+                    usernames.add(user.getUsername());
+                }
+            }
+        }
+        return usernames;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed = Integer.parseInt(value.replace("_", ""));
+        if (parsed < 1) {
+            throw new IllegalArgumentException("--" + name + " must be at least 1");
+        }
+        return parsed;
+    }
+
+    /**
+     * SKUs with a Zipf(1) popularity, a log-normal list price and a fixed category
+     */
+    private static final class Catalog {
+        final double[] prices;
+        final String[] categories;
+        private final double[] cumulative;
+
+        Catalog(int skus, Random random) {
+            prices = new double[skus];
+            categories = new String[skus];
+            cumulative = new double[skus];
+            double sum = 0;
+            for (int i = 0; i < skus; i++) {
+                prices[i] = Math.min(5_000, Math.exp(3.5 + random.nextGaussian()));
+                categories[i] = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                sum += 1.0 / (i + 1);
+                cumulative[i] = sum;
+            }
+        }
+
+        int sample(Random random) {
+            double target = random.nextDouble() * cumulative[cumulative.length - 1];
+            int index = Arrays.binarySearch(cumulative, target);
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+}
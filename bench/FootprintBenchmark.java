@@ -0,0 +1,145 @@
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * FootprintBenchmark - Heap retained by a parsed sales file: Products with
+ * SalesDictionary-coded text fields against the previous layout, where every
+ * record held its own copies of its three strings, and against the same sales
+ * resident in an OffHeapSalesStore table.
+ *
+ * Run from the project root, on a generated tenant or a seeded synthetic file:
+ *   javac -d out *.java bench/*.java
+ *   java -cp out DataGenerator /tmp/footprint --users=1 --rows=1000000
+ *   java -Xmx2g -cp out FootprintBenchmark /tmp/footprint/sales_load0001.txt
+ *   java -Xmx2g -cp out FootprintBenchmark 1000000
+ */
+public class FootprintBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File file;
+        if (args.length > 0 && new File(args[0]).isFile()) {
+            file = new File(args[0]);
+        } else {
+            int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+            file = File.createTempFile("sales-footprint", ".txt");
+            file.deleteOnExit();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+                for (Product sale : AnalyticsBenchmark.generateSales(rows, 42L)) {
+                    writer.write(sale.toFileString());
+                    writer.newLine();
+                }
+            }
+        }
+
+        // Dictionary strings created by this parse count towards the coded layout
+        long before = usedHeap();
+        List<Product> coded = parseCoded(file);
+        long codedBytes = usedHeap() - before;
+        int rows = coded.size();
+        int distinct = SalesDictionary.size();
+        coded = null;
+
+        before = usedHeap();
+        List<LegacySale> legacy = parseLegacy(file);
+        long legacyBytes = usedHeap() - before;
+        if (legacy.size() != rows) {
+            throw new IllegalStateException("Parsers disagree: " + rows + " vs " + legacy.size());
+        }
+
+        legacy = null;
+
+        OffHeapSalesStore store = new OffHeapSalesStore(Long.MAX_VALUE);
+        before = usedHeap();
+        store.put("footprint", parseCoded(file));
+        long offHeapBytes = usedHeap() - before;
+
+        System.out.printf("Rows: %d, distinct product/category strings: %d, file size: %.1f MB%n", rows, distinct, file.length() / 1e6);
+        report("per-record strings (previous layout)", legacyBytes, rows);
+        report("dictionary-coded Products", codedBytes, rows);
+        report("off-heap table (heap)", offHeapBytes, rows);
+        report("off-heap table (direct buffers)", store.getReservedBytes(), rows);
+        System.out.printf("Heap saved: %.1f%% coded, %.1f%% off-heap%n",
+            100.0 * (legacyBytes - codedBytes) / legacyBytes, 100.0 * (legacyBytes - offHeapBytes) / legacyBytes);
+    }
+
+    static List<Product> parseCoded(File file) throws IOException {
+        List<Product> sales = new ArrayList<>();
+        try (Reader reader = new FileReader(file)) {
+            SalesRecordParser.parse(reader, new SalesRecordParser.Sink() {
+                @Override
+                public void record(Product product) {
+                    sales.add(product);
+                }
+
+                @Override
+                public void tombstone(int saleId) {
+                }
+            });
+        }
+        return sales;
+    }
+
+    /**
+     * What SalesRecordParser built before the dictionary: fresh strings per field
+     */
+    static List<LegacySale> parseLegacy(File file) throws IOException {
+        List<LegacySale> sales = new ArrayList<>();
+        int[] bounds = new int[14];
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                char[] buf = line.toCharArray();
+                if (SalesRecordParser.splitFields(buf, 0, buf.length, bounds) < 7) {
+                    continue;
+                }
+                sales.add(new LegacySale(
+                    SalesRecordParser.parseInt(buf, bounds[0], bounds[1]),
+                    SalesRecordParser.parseText(buf, bounds[2], bounds[3]),
+                    SalesRecordParser.parseText(buf, bounds[4], bounds[5]),
+                    SalesRecordParser.parseDouble(buf, bounds[6], bounds[7]),
+                    SalesRecordParser.parseInt(buf, bounds[8], bounds[9]),
+                    SalesRecordParser.parseTimestamp(buf, bounds[10], bounds[11]),
+                    SalesRecordParser.parseText(buf, bounds[12], bounds[13])));
+            }
+        }
+        return sales;
+    }
+
+    static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static void report(String label, long bytes, int rows) {
+        System.out.printf("%-40s %10.1f MB %8.1f bytes/row%n", label, bytes / 1e6, (double) bytes / rows);
+    }
+
+    /**
+     * The Product field layout before SalesDictionary
+     */
+    static final class LegacySale {
+        final int id;
+        final String productName;
+        final String category;
+        final double saleAmount;
+        final int quantity;
+        final LocalDateTime saleDate;
+        final String customerName;
+
+        LegacySale(int id, String productName, String category, double saleAmount,
+                   int quantity, LocalDateTime saleDate, String customerName) {
+            this.id = id;
+            this.productName = productName;
+            this.category = category;
+            this.saleAmount = saleAmount;
+            this.quantity = quantity;
+            this.saleDate = saleDate;
+            this.customerName = customerName;
+        }
+    }
+}
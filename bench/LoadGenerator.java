@@ -0,0 +1,417 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * LoadGenerator - Mixed HTTP workload against a running server
+ * Logs in, adds, lists, analyzes and deletes sales as the users made by
+ * DataGenerator, and reports throughput, error rate and latency percentiles
+ * per endpoint. Deletes pick IDs seen in earlier sales listings.
+ *
+ * With --rate the load is open-loop: requests are started on a fixed schedule
+ * whether or not earlier ones have finished, and latency is measured from the
+ * time a request was due, so a stalled server shows up in the tail instead of
+ * slowing the load down (coordinated omission). Without --rate, --concurrency
+ * workers each send their next request when the previous one completes.
+ * Requests run on virtual threads when the JDK has them (21+), otherwise on a
+ * cached thread pool.
+ *
+ * Usage: java LoadGenerator [baseUrl] [--rate=0] [--concurrency=16] [--duration=30]
+ *                           [--warmup=5] [--users=20] [--prefix=load] [--password=loadtest]
+ *                           [--mix=login:5,add-sale:20,sales:35,analytics:35,delete:5]
+ *                           [--max-in-flight=10000] [--timeout=30] [--seed=42]
+ */
+public class LoadGenerator {
+    private static final Pattern SALE_ID = Pattern.compile("\"id\":(\\d+)");
+    private static final DateTimeFormatter SALE_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String[] CATEGORIES = {"Electronics", "Clothing", "Food", "Books", "Home", "Sports", "Toys", "Beauty"};
+
+    enum Endpoint {
+        LOGIN("login"), ADD_SALE("add-sale"), SALES("sales"), ANALYTICS("analytics"), DELETE("delete");
+
+        final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    private final String baseUrl;
+    private final String[] usernames;
+    private final String password;
+    private final int[] mix = new int[Endpoint.values().length];
+    private final int mixTotal;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    private final Map<String, Deque<Integer>> knownIds = new ConcurrentHashMap<>();
+    private final Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+    private final Stats total = new Stats();
+    private final Map<String, LongAdder> errorKinds = new ConcurrentSkipListMap<>();
+    private volatile long recordFrom;
+
+    LoadGenerator(String baseUrl, String[] usernames, String password, String mixSpec, Duration timeout) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.usernames = usernames;
+        this.password = password;
+        this.timeout = timeout;
+        int sum = 0;
+        for (String part : mixSpec.split(",")) {
+            String[] fields = part.trim().split(":");
+            Endpoint endpoint = endpoint(fields[0].trim());
+            int weight = fields.length > 1 ? Integer.parseInt(fields[1].trim()) : 1;
+            mix[endpoint.ordinal()] = weight;
+            sum += weight;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("--mix needs at least one positive weight");
+        }
+        this.mixTotal = sum;
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new Stats());
+        }
+        for (String username : usernames) {
+            knownIds.put(username, new ConcurrentLinkedDeque<>());
+        }
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "loadgen");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = "http://localhost:8080";
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+            } else {
+                baseUrl = arg;
+            }
+        }
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int users = Integer.parseInt(options.getOrDefault("users", "20"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "10000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        String prefix = options.getOrDefault("prefix", DataGenerator.DEFAULT_PREFIX);
+
+        String[] usernames = new String[users];
+        for (int i = 0; i < users; i++) {
+            usernames[i] = DataGenerator.username(prefix, i + 1);
+        }
+        LoadGenerator generator = new LoadGenerator(baseUrl, usernames,
+            options.getOrDefault("password", DataGenerator.DEFAULT_PASSWORD),
+            options.getOrDefault("mix", "login:5,add-sale:20,sales:35,analytics:35,delete:5"),
+            Duration.ofSeconds(Integer.parseInt(options.getOrDefault("timeout", "30"))));
+
+        System.out.printf("%s against %s for %d s (%d s warmup), %d users, %s%n",
+            rate > 0 ? String.format("Open loop at %.0f req/s", rate) : "Closed loop with " + concurrency + " workers",
+            generator.baseUrl, duration, warmup, users,
+            generator.virtualThreads ? "virtual threads" : "platform threads (no virtual threads before JDK 21)");
+
+        long measuredNanos = rate > 0
+            ? generator.runOpenLoop(rate, duration, warmup, maxInFlight, seed)
+            : generator.runClosedLoop(concurrency, duration, warmup, seed);
+        generator.report(measuredNanos);
+        System.exit(generator.total.errors.sum() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Start requests on a fixed schedule; returns the measured (post-warmup) time
+     */
+    long runOpenLoop(double rate, int durationSeconds, int warmupSeconds, int maxInFlight, long seed)
+            throws InterruptedException {
+        Random random = new Random(seed);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long begin = System.nanoTime();
+        long end = begin + TimeUnit.SECONDS.toNanos(durationSeconds);
+        recordFrom = begin + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        for (long i = 0; ; i++) {
+            long due = begin + (long) (i * 1e9 / rate);
+            if (due >= end) {
+                break;
+            }
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            Endpoint endpoint = pick(random);
+            String username = usernames[random.nextInt(usernames.length)];
+            if (!inFlight.tryAcquire()) {
+                // The server is that far behind; count it rather than queue without bound
+                failed(endpoint, "dropped: over --max-in-flight", due);
+                continue;
+            }
+            executor.execute(() -> {
+                try {
+                    execute(endpoint, username, due);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        // Every permit back means every request has finished
+        if (!inFlight.tryAcquire(maxInFlight, timeout.toSeconds() + 5, TimeUnit.SECONDS)) {
+            System.err.println("Some requests were still running at the end of the run");
+        }
+        return end - recordFrom;
+    }
+
+    /**
+     * Each worker sends its next request as soon as the previous one completes
+     */
+    long runClosedLoop(int concurrency, int durationSeconds, int warmupSeconds, long seed)
+            throws InterruptedException {
+        long begin = System.nanoTime();
+        long end = begin + TimeUnit.SECONDS.toNanos(durationSeconds);
+        recordFrom = begin + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            Random random = new Random(seed + w);
+            executor.execute(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        execute(pick(random), usernames[random.nextInt(usernames.length)], System.nanoTime());
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return end - recordFrom;
+    }
+
+    private Endpoint pick(Random random) {
+        int target = random.nextInt(mixTotal);
+        for (Endpoint endpoint : Endpoint.values()) {
+            target -= mix[endpoint.ordinal()];
+            if (target < 0) {
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    // Send one request and record its latency from start, which is when it was due
+    private void execute(Endpoint endpoint, String username, long start) {
+        Integer saleId = endpoint == Endpoint.DELETE ? knownIds.get(username).pollFirst() : null;
+        if (endpoint == Endpoint.DELETE && saleId == null) {
+            // Nothing to delete yet: list sales like the dashboard would first
+            endpoint = Endpoint.SALES;
+        }
+        try {
+            HttpResponse<byte[]> response = client.send(request(endpoint, username, saleId), HttpResponse.BodyHandlers.ofByteArray());
+            long latency = System.nanoTime() - start;
+            String error = check(endpoint, username, response);
+            if (error == null) {
+                succeeded(endpoint, start, latency);
+            } else {
+                failed(endpoint, error, start);
+            }
+        } catch (IOException e) {
+            failed(endpoint, e.getClass().getSimpleName(), start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpRequest request(Endpoint endpoint, String username, Integer saleId) {
+        switch (endpoint) {
+            case LOGIN:
+                return post("/api/login", form("username", username, "password", password));
+            case ADD_SALE: {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int sku = random.nextInt(500);
+                return post("/api/add-sale", form(
+                    "username", username,
+                    "productName", "Product " + sku,
+                    "category", CATEGORIES[sku % CATEGORIES.length],
+                    "saleAmount", String.valueOf(random.nextInt(100_000) / 100.0),
+                    "quantity", String.valueOf(1 + random.nextInt(5)),
+                    "saleDate", LocalDateTime.now().format(SALE_DATE),
+                    "customerName", "Customer " + random.nextInt(10_000)));
+            }
+            case SALES:
+                return get("/api/sales?username=" + encode(username) + "&sort=-id&limit=100");
+            case ANALYTICS:
+                return get("/api/analytics?username=" + encode(username));
+            case DELETE:
+                return post("/api/delete-sale", form("username", username, "saleId", String.valueOf(saleId)));
+            default:
+                throw new IllegalArgumentException(endpoint.label);
+        }
+    }
+
+    // Null if the response is a success, otherwise what went wrong
+    private String check(Endpoint endpoint, String username, HttpResponse<byte[]> response) throws IOException {
+        if (response.statusCode() >= 400) {
+            return "HTTP " + response.statusCode();
+        }
+        String body = bodyText(response);
+        if (body.startsWith("{\"success\":false")) {
+            return endpoint.label + " success:false";
+        }
+        if (endpoint == Endpoint.SALES) {
+            // Newest IDs first, for deletes to pick from
+            Deque<Integer> ids = new ArrayDeque<>();
+            Matcher matcher = SALE_ID.matcher(body);
+            while (matcher.find()) {
+                ids.add(Integer.parseInt(matcher.group(1)));
+            }
+            Deque<Integer> known = knownIds.get(username);
+            known.clear();
+            known.addAll(ids);
+        }
+        return null;
+    }
+
+    private static String bodyText(HttpResponse<byte[]> response) throws IOException {
+        boolean gzip = response.headers().firstValue("Content-Encoding").map("gzip"::equals).orElse(false);
+        if (!gzip) {
+            return new String(response.body(), StandardCharsets.UTF_8);
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(timeout)
+            .header("Accept-Encoding", "gzip")
+            .GET()
+            .build();
+    }
+
+    private HttpRequest post(String path, String form) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(timeout)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString(form))
+            .build();
+    }
+
+    private static String form(String... pairs) {
+        StringBuilder form = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                form.append('&');
+            }
+            form.append(pairs[i]).append('=').append(encode(pairs[i + 1]));
+        }
+        return form.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private void succeeded(Endpoint endpoint, long start, long latency) {
+        if (start >= recordFrom) {
+            stats.get(endpoint).record(latency);
+            total.record(latency);
+        }
+    }
+
+    private void failed(Endpoint endpoint, String error, long start) {
+        if (start >= recordFrom) {
+            stats.get(endpoint).error();
+            total.error();
+            errorKinds.computeIfAbsent(error, k -> new LongAdder()).increment();
+        }
+    }
+
+    void report(long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        System.out.printf("%n%-10s %9s %9s %7s %7s %9s %9s %9s %9s %9s%n",
+            "endpoint", "requests", "req/s", "errors", "err%", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Endpoint endpoint : Endpoint.values()) {
+            if (mix[endpoint.ordinal()] > 0 || stats.get(endpoint).requests() > 0) {
+                reportLine(endpoint.label, stats.get(endpoint), seconds);
+            }
+        }
+        reportLine("total", total, seconds);
+        if (!errorKinds.isEmpty()) {
+            System.out.println("\nErrors:");
+            errorKinds.forEach((kind, count) -> System.out.printf("  %-40s %d%n", kind, count.sum()));
+        }
+    }
+
+    private static void reportLine(String label, Stats stats, double seconds) {
+        long requests = stats.requests();
+        long errors = stats.errors.sum();
+        LatencyHistogram latency = stats.latency;
+        System.out.printf("%-10s %9d %9.1f %7d %6.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+            label, requests, requests / seconds, errors, requests == 0 ? 0.0 : 100.0 * errors / requests,
+            latency.percentile(0.50) / 1e6, latency.percentile(0.90) / 1e6, latency.percentile(0.99) / 1e6,
+            latency.percentile(0.999) / 1e6, latency.getMax() / 1e6);
+    }
+
+    private static Endpoint endpoint(String label) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            if (endpoint.label.equals(label)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint in --mix: " + label);
+    }
+
+    // JDK 21+ only; looked up reflectively so the tool still compiles for older JDKs
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Latency of successful requests and a count of failed ones
+     */
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long nanos) {
+            latency.record(nanos);
+        }
+
+        void error() {
+            errors.increment();
+        }
+
+        long requests() {
+            return latency.getCount() + errors.sum();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ParallelAnalyticsBenchmark - Scaling of the chunked AnalyticsKernel across
+ * ForkJoinPool sizes of 1, 2, 4, 8 and all cores, against a plain single-pass
+ * scan of the list. Chunked results add amounts in a different order than the
+ * single pass, so they are checked against it within EPSILON; every pool size
+ * must also give exactly the result of the chunk tree run on the calling thread.
+ *
+ * Run from the project root:
+ *   javac -d out *.java bench/*.java
+ *   java -cp out ParallelAnalyticsBenchmark [rows] [iterations]
+ */
+public class ParallelAnalyticsBenchmark {
+    // Money is written to the cent, so a reordered sum can round one cent apart
+    private static final double EPSILON = 0.01;
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        List<Product> sales = AnalyticsBenchmark.generateSales(rows, 42L);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Rows: " + rows + ", iterations: " + iterations + ", cores: " + cores);
+
+        String singlePass = singlePass(sales).toJSON();
+        for (int i = 0; i < 3; i++) {
+            singlePass(sales);
+        }
+        long singlePassNanos = AnalyticsBenchmark.time(() -> singlePass(sales), iterations);
+        AnalyticsBenchmark.report("single pass", singlePassNanos, rows);
+
+        String chunked = AnalyticsKernel.run(sales, null).toJSON();
+        if (!sameWithin(chunked, singlePass, EPSILON)) {
+            System.err.println("Chunked result differs from the single-pass result by more than " + EPSILON);
+            System.exit(1);
+        }
+        for (int i = 0; i < 3; i++) {
+            AnalyticsKernel.run(sales, null);
+        }
+        long sequentialNanos = AnalyticsBenchmark.time(() -> AnalyticsKernel.run(sales, null), iterations);
+        AnalyticsBenchmark.report("chunked, calling thread", sequentialNanos, rows);
+        System.out.printf("  speedup vs single pass: %.2fx%n", (double) singlePassNanos / sequentialNanos);
+
+        TreeSet<Integer> sizes = new TreeSet<>(Arrays.asList(1, 2, 4, 8, cores));
+        for (int parallelism : sizes) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                if (!AnalyticsKernel.run(sales, pool).toJSON().equals(chunked)) {
+                    System.err.println("Result with " + parallelism + " threads differs from the calling-thread result");
+                    System.exit(1);
+                }
+                for (int i = 0; i < 3; i++) {
+                    AnalyticsKernel.run(sales, pool);
+                }
+                long nanos = AnalyticsBenchmark.time(() -> AnalyticsKernel.run(sales, pool), iterations);
+                AnalyticsBenchmark.report("fork-join, " + parallelism + " threads", nanos, rows);
+                System.out.printf("  speedup vs single pass: %.2fx%n", (double) singlePassNanos / nanos);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println("All results within " + EPSILON + " of the single-pass result");
+    }
+
+    /**
+     * One kernel fed every sale in order, with no chunking
+     */
+    static AnalyticsKernel singlePass(List<Product> sales) {
+        AnalyticsKernel kernel = new AnalyticsKernel();
+        for (Product sale : sales) {
+            kernel.accept(sale);
+        }
+        return kernel;
+    }
+
+    /**
+     * True if two JSON documents are the same apart from numbers that differ by at
+     * most epsilon
+     */
+    static boolean sameWithin(String a, String b, double epsilon) {
+        Matcher left = NUMBER.matcher(a);
+        Matcher right = NUMBER.matcher(b);
+        int leftEnd = 0;
+        int rightEnd = 0;
+        while (left.find()) {
+            if (!right.find()
+                    || !a.substring(leftEnd, left.start()).equals(b.substring(rightEnd, right.start()))
+                    || Math.abs(Double.parseDouble(left.group()) - Double.parseDouble(right.group())) > epsilon) {
+                return false;
+            }
+            leftEnd = left.end();
+            rightEnd = right.end();
+        }
+        return !right.find() && a.substring(leftEnd).equals(b.substring(rightEnd));
+    }
+}
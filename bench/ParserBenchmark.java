@@ -0,0 +1,110 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * ParserBenchmark - Rows/sec for SalesRecordParser against the original
+ * split(",") + DateTimeFormatter parser over a seeded multi-million-line file.
+ *
+ * Run from the project root:
+ *   javac -d out *.java bench/*.java
+ *   java -cp out ParserBenchmark [rows] [iterations]
+ */
+public class ParserBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File file = File.createTempFile("sales-bench", ".txt");
+        file.deleteOnExit();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (Product sale : AnalyticsBenchmark.generateSales(rows, 42L)) {
+                writer.write(sale.toFileString());
+                writer.newLine();
+            }
+        }
+        System.out.printf("Rows: %d, file size: %.1f MB, iterations: %d%n", rows, file.length() / 1e6, iterations);
+
+        // Warm up and check both parsers agree
+        int legacyCount = parseLegacy(file);
+        int fastCount = parseFast(file);
+        if (legacyCount != fastCount) {
+            throw new IllegalStateException("Parsers disagree: " + legacyCount + " vs " + fastCount);
+        }
+
+        long legacyNanos = time(() -> parseLegacy(file), iterations);
+        long fastNanos = time(() -> parseFast(file), iterations);
+
+        report("legacy (split + DateTimeFormatter)", legacyNanos, rows);
+        report("SalesRecordParser", fastNanos, rows);
+        System.out.printf("Speedup: %.2fx%n", (double) legacyNanos / fastNanos);
+    }
+
+    /**
+     * The original Product.fromFileString, line by line through BufferedReader
+     */
+    static int parseLegacy(File file) {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 7) {
+                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+                    Product product = new Product(
+                        Integer.parseInt(parts[0]),
+                        parts[1],
+                        parts[2],
+                        Double.parseDouble(parts[3]),
+                        Integer.parseInt(parts[4]),
+                        LocalDateTime.parse(parts[5], formatter),
+                        parts[6]
+                    );
+                    count += product.getQuantity() > 0 ? 1 : 0;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    static int parseFast(File file) {
+        int[] count = new int[1];
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            SalesRecordParser.parse(reader, new SalesRecordParser.Sink() {
+                @Override
+                public void record(Product product) {
+                    count[0] += product.getQuantity() > 0 ? 1 : 0;
+                }
+
+                @Override
+                public void tombstone(int saleId) {
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count[0];
+    }
+
+    interface Task {
+        void run();
+    }
+
+    static long time(Task task, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+
+    static void report(String label, long nanosPerRun, int rows) {
+        System.out.printf("%-40s %10.2f ms/run %12.0f rows/sec%n",
+            label, nanosPerRun / 1e6, rows / (nanosPerRun / 1e9));
+    }
+}
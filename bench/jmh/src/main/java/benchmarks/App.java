@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * App - Method handles onto the server classes
+ * The server lives in the default package, which cannot be imported, and JMH
+ * refuses benchmarks in the default package, so benchmarks reach the server
+ * through these handles. Server types in a handle's signature are replaced with
+ * Object (JDK types and primitives are kept) so call sites can use invokeExact;
+ * held in static final fields the JIT inlines them like a direct call.
+ */
+final class App {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private App() {
+    }
+
+    /**
+     * A server class by its simple name
+     */
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Server class not on the classpath: " + name, e);
+        }
+    }
+
+    static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(type(className), MethodType.methodType(void.class, parameterTypes));
+            return eraseServerTypes(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No constructor " + className + parameterTypesOf(parameterTypes), e);
+        }
+    }
+
+    static MethodHandle staticMethod(String className, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            MethodHandle handle = LOOKUP.findStatic(type(className), name, MethodType.methodType(returnType, parameterTypes));
+            return eraseServerTypes(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + className + "." + name + parameterTypesOf(parameterTypes), e);
+        }
+    }
+
+    static MethodHandle method(String className, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(type(className), name, MethodType.methodType(returnType, parameterTypes));
+            return eraseServerTypes(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + className + "." + name + parameterTypesOf(parameterTypes), e);
+        }
+    }
+
+    private static MethodHandle eraseServerTypes(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isServerType(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isServerType(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    private static boolean isServerType(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+
+    private static String parameterTypesOf(Class<?>[] parameterTypes) {
+        return MethodType.methodType(void.class, parameterTypes).toString().replace(")void", ")");
+    }
+}
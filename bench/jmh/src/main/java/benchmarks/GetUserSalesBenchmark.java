@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * GetUserSalesBenchmark - Database.getUserSales reading and parsing a whole
+ * sales file, for seeded files of 1K to 10M rows. The sales cache is disabled
+ * in the forked JVM, so every call goes to disk. Scores are loads/sec.
+ *
+ * Files are written to data/ under the working directory (build/jmh-work when
+ * run through gradle :jmh:jmh) and removed after the run. The 10M-row file is
+ * about 650MB and its parsed sales need most of the 4GB heap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dsales.cache.maxRecords=0"})
+@State(Scope.Benchmark)
+public class GetUserSalesBenchmark {
+    private static final MethodHandle GET_USER_SALES = App.staticMethod("Database", "getUserSales", List.class, String.class);
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private String username;
+    private File file;
+
+    @Setup
+    public void setup() throws Throwable {
+        username = "jmh" + rows;
+        file = new File("data/sales_" + username + ".txt");
+        SalesData.writeFile(file, rows, SalesData.SEED);
+
+        List<?> sales = (List<?>) GET_USER_SALES.invokeExact(username);
+        if (sales.size() != rows) {
+            throw new IllegalStateException("Loaded " + sales.size() + " of " + rows + " rows from " + file);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public List<?> getUserSales() throws Throwable {
+        return (List<?>) GET_USER_SALES.invokeExact(username);
+    }
+}
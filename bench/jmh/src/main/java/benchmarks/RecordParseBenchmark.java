@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RecordParseBenchmark - Product.fromFileString and Product.toFileString on
+ * seeded sales file lines. Scores are records/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordParseBenchmark {
+    private static final int RECORDS = 4096;
+
+    private static final MethodHandle FROM_FILE_STRING = App.staticMethod("Product", "fromFileString", App.type("Product"), String.class);
+    private static final MethodHandle TO_FILE_STRING = App.method("Product", "toFileString", String.class);
+
+    private String[] lines;
+    private Object[] sales;
+
+    @Setup
+    public void setup() {
+        lines = SalesData.lines(RECORDS, SalesData.SEED).toArray(new String[0]);
+        List<Object> generated = SalesData.generate(RECORDS, SalesData.SEED);
+        sales = generated.toArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void fromFileString(Blackhole bh) throws Throwable {
+        for (String line : lines) {
+            bh.consume((Object) FROM_FILE_STRING.invokeExact(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void toFileString(Blackhole bh) throws Throwable {
+        for (Object sale : sales) {
+            bh.consume((String) TO_FILE_STRING.invokeExact(sale));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * SalesAnalyticsBenchmark - Each SalesAnalytics method, the full getAnalyticsJSON
+ * and the AnalyticsKernel pass behind it, over seeded in-memory sales.
+ * Scores are calls/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class SalesAnalyticsBenchmark {
+    private static final String ANALYTICS = "SalesAnalytics";
+    private static final MethodHandle NEW_ANALYTICS = App.constructor(ANALYTICS, List.class);
+    private static final MethodHandle TOP_SELLING = App.method(ANALYTICS, "getTopSellingProducts", Map.class, int.class);
+    private static final MethodHandle LEAST_SELLING = App.method(ANALYTICS, "getLeastSellingProducts", Map.class, int.class);
+    private static final MethodHandle BY_MONTH = App.method(ANALYTICS, "getSalesByMonth", Map.class);
+    private static final MethodHandle MAX_SALE_MONTH = App.method(ANALYTICS, "getMaxSaleMonth", String.class);
+    private static final MethodHandle BY_HOUR = App.method(ANALYTICS, "getSalesByHour", Map.class);
+    private static final MethodHandle PEAK_HOUR = App.method(ANALYTICS, "getPeakSalesHour", int.class);
+    private static final MethodHandle MAX_SALE_AMOUNT = App.method(ANALYTICS, "getMaxSaleAmount", double.class);
+    private static final MethodHandle MAX_SALE_PRODUCT = App.method(ANALYTICS, "getMaxSaleProduct", String.class);
+    private static final MethodHandle TOTAL_REVENUE = App.method(ANALYTICS, "getTotalRevenue", double.class);
+    private static final MethodHandle BY_CATEGORY = App.method(ANALYTICS, "getSalesByCategory", Map.class);
+    private static final MethodHandle ANALYTICS_JSON = App.method(ANALYTICS, "getAnalyticsJSON", String.class);
+    private static final MethodHandle KERNEL_RUN = App.staticMethod("AnalyticsKernel", "run", App.type("AnalyticsKernel"), List.class);
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private List<Object> sales;
+    private Object analytics;
+
+    @Setup
+    public void setup() throws Throwable {
+        sales = SalesData.generate(rows, SalesData.SEED);
+        analytics = (Object) NEW_ANALYTICS.invokeExact((List<?>) sales);
+    }
+
+    @Benchmark
+    public Map<?, ?> getTopSellingProducts() throws Throwable {
+        return (Map<?, ?>) TOP_SELLING.invokeExact(analytics, 5);
+    }
+
+    @Benchmark
+    public Map<?, ?> getLeastSellingProducts() throws Throwable {
+        return (Map<?, ?>) LEAST_SELLING.invokeExact(analytics, 5);
+    }
+
+    @Benchmark
+    public Map<?, ?> getSalesByMonth() throws Throwable {
+        return (Map<?, ?>) BY_MONTH.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public String getMaxSaleMonth() throws Throwable {
+        return (String) MAX_SALE_MONTH.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public Map<?, ?> getSalesByHour() throws Throwable {
+        return (Map<?, ?>) BY_HOUR.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public int getPeakSalesHour() throws Throwable {
+        return (int) PEAK_HOUR.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public double getMaxSaleAmount() throws Throwable {
+        return (double) MAX_SALE_AMOUNT.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public String getMaxSaleProduct() throws Throwable {
+        return (String) MAX_SALE_PRODUCT.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public double getTotalRevenue() throws Throwable {
+        return (double) TOTAL_REVENUE.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public Map<?, ?> getSalesByCategory() throws Throwable {
+        return (Map<?, ?>) BY_CATEGORY.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public String getAnalyticsJSON() throws Throwable {
+        return (String) ANALYTICS_JSON.invokeExact(analytics);
+    }
+
+    @Benchmark
+    public Object analyticsKernelRun() throws Throwable {
+        return (Object) KERNEL_RUN.invokeExact((List<?>) sales);
+    }
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SalesData - Seeded synthetic sales, the same distribution as bench/AnalyticsBenchmark:
+ * 500 products, 8 categories, 3 years of dates, 10,000 customers.
+ * The same rows and seed always produce the same sales.
+ */
+final class SalesData {
+    static final long SEED = 42L;
+
+    private static final String[] CATEGORIES = {"Electronics", "Clothing", "Food", "Books", "Home", "Sports", "Toys", "Beauty"};
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 1, 0, 0);
+
+    private static final MethodHandle NEW_PRODUCT = App.constructor("Product",
+        int.class, String.class, String.class, double.class, int.class, LocalDateTime.class, String.class);
+    private static final MethodHandle TO_FILE_STRING = App.method("Product", "toFileString", String.class);
+
+    private SalesData() {
+    }
+
+    /**
+     * Seeded sales as Product objects
+     */
+    static List<Object> generate(int rows, long seed) {
+        Random random = new Random(seed);
+        List<Object> sales = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            sales.add(next(random, i + 1));
+        }
+        return sales;
+    }
+
+    /**
+     * Seeded sales in the sales file format, one record per line
+     */
+    static List<String> lines(int rows, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            lines.add(toFileString(next(random, i + 1)));
+        }
+        return lines;
+    }
+
+    /**
+     * Write seeded sales to a sales file without holding them all in memory
+     */
+    static void writeFile(File file, int rows, long seed) throws IOException {
+        file.getParentFile().mkdirs();
+        Random random = new Random(seed);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(toFileString(next(random, i + 1)));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static Object next(Random random, int id) {
+        int product = random.nextInt(500);
+        try {
+            return (Object) NEW_PRODUCT.invokeExact(
+                id,
+                "Product " + product,
+                CATEGORIES[product % CATEGORIES.length],
+                Math.round(random.nextDouble() * 50_000) / 100.0,
+                1 + random.nextInt(10),
+                START.plusMinutes(random.nextInt(3 * 365 * 24 * 60)),
+                "Customer " + random.nextInt(10_000));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toFileString(Object sale) {
+        try {
+            return (String) TO_FILE_STRING.invokeExact(sale);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
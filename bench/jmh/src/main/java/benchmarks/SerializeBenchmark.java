@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SerializeBenchmark - JSON for sales: Product.toJSON per record, and whole
+ * sales lists rendered the two ways GET /api/sales does it (buffered for
+ * cached responses, streamed for large lists). Scores are lists/sec, except
+ * productToJSON which is records/sec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class SerializeBenchmark {
+    private static final String JSON_WRITER = "JsonWriter";
+    private static final MethodHandle TO_JSON = App.method("Product", "toJSON", String.class);
+    private static final MethodHandle WRITE_JSON = App.method("Product", "writeJSON", void.class, App.type(JSON_WRITER));
+    private static final MethodHandle NEW_BUFFERED_WRITER = App.constructor(JSON_WRITER);
+    private static final MethodHandle NEW_STREAM_WRITER = App.constructor(JSON_WRITER, OutputStream.class);
+    private static final MethodHandle BEGIN_ARRAY = App.method(JSON_WRITER, "beginArray", App.type(JSON_WRITER));
+    private static final MethodHandle END_ARRAY = App.method(JSON_WRITER, "endArray", App.type(JSON_WRITER));
+    private static final MethodHandle TO_BYTE_ARRAY = App.method(JSON_WRITER, "toByteArray", byte[].class);
+    private static final MethodHandle CLOSE = App.method(JSON_WRITER, "close", void.class);
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private Object[] sales;
+    private OutputStream sink;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        sales = SalesData.generate(rows, SalesData.SEED).toArray();
+        // Stands in for the response stream; the Blackhole keeps the bytes live
+        sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bh.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bh.consume(b);
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void productToJSON(Blackhole bh) throws Throwable {
+        for (int i = 0; i < 1000; i++) {
+            bh.consume((String) TO_JSON.invokeExact(sales[i % sales.length]));
+        }
+    }
+
+    @Benchmark
+    public byte[] salesListBuffered() throws Throwable {
+        Object json = (Object) NEW_BUFFERED_WRITER.invokeExact();
+        json = (Object) BEGIN_ARRAY.invokeExact(json);
+        for (Object sale : sales) {
+            WRITE_JSON.invokeExact(sale, json);
+        }
+        json = (Object) END_ARRAY.invokeExact(json);
+        return (byte[]) TO_BYTE_ARRAY.invokeExact(json);
+    }
+
+    @Benchmark
+    public void salesListStreamed() throws Throwable {
+        Object json = (Object) NEW_STREAM_WRITER.invokeExact(sink);
+        json = (Object) BEGIN_ARRAY.invokeExact(json);
+        for (Object sale : sales) {
+            WRITE_JSON.invokeExact(sale, json);
+        }
+        json = (Object) END_ARRAY.invokeExact(json);
+        CLOSE.invokeExact(json);
+    }
+}
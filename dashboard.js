@@ -2,10 +2,17 @@
  * Dashboard JavaScript
  */
 
-const API_BASE_URL = 'http://localhost:8080/api';
+// Same origin when served by the Java server, which also serves these files
+const API_BASE_URL = window.location.protocol === 'file:' ? 'http://localhost:8080/api' : '/api';
+const SALES_PAGE_SIZE = 100;
 let currentUser = null;
 let charts = {};
 
+// Last loaded analytics and sales page, patched in place by stream events
+let salesStream = null;
+let analyticsState = null;
+let salesRows = [];
+
 // DOM Elements
 const userWelcome = document.getElementById('userWelcome');
 const logoutBtn = document.getElementById('logoutBtn');
@@ -19,7 +26,11 @@ const refreshBtn = document.getElementById('refreshBtn');
 document.addEventListener('DOMContentLoaded', () => {
     checkAuthentication();
     initializeEventListeners();
-    loadDashboardData();
+    if (window.EventSource) {
+        openSalesStream();
+    } else {
+        loadDashboardData();
+    }
     setDefaultDateTime();
 });
 
@@ -54,6 +65,7 @@ function initializeEventListeners() {
  * Logout user
  */
 function logout() {
+    if (salesStream) salesStream.close();
     localStorage.removeItem('currentUser');
     window.location.href = 'login.html';
 }
@@ -123,9 +135,9 @@ async function handleAddSale(e) {
             saleFormElement.reset();
             setDefaultDateTime();
             
-            // Reload dashboard data
+            // The stream pushes the change; reload only without one
+            if (!isStreamOpen()) loadDashboardData();
             setTimeout(() => {
-                loadDashboardData();
                 formMessage.className = 'form-message';
             }, 1500);
         } else {
@@ -148,6 +160,9 @@ async function loadDashboardData() {
             fetchSales()
         ]);
         
+        analyticsState = analyticsData;
+        salesRows = salesData;
+        
         // Update UI
         updateMetrics(analyticsData.summary);
         renderCharts(analyticsData);
@@ -159,6 +174,75 @@ async function loadDashboardData() {
     }
 }
 
+/**
+ * Subscribe to sales changes. The full state is (re)loaded whenever the stream
+ * (re)connects, so no change is missed; events then patch it in place.
+ */
+function openSalesStream() {
+    salesStream = new EventSource(`${API_BASE_URL}/stream?username=${currentUser.username}`);
+    salesStream.onopen = () => loadDashboardData();
+    salesStream.addEventListener('sale-added', e => applySalesEvent(JSON.parse(e.data)));
+    salesStream.addEventListener('sale-deleted', e => applySalesEvent(JSON.parse(e.data)));
+    // Sent when the server cannot describe a change as a delta
+    salesStream.addEventListener('sales-reload', () => loadDashboardData());
+}
+
+function isStreamOpen() {
+    return salesStream !== null && salesStream.readyState === EventSource.OPEN;
+}
+
+/**
+ * Apply an added/deleted sale delta to the loaded analytics and sales page
+ */
+function applySalesEvent(event) {
+    if (!analyticsState) return;
+    
+    analyticsState.summary = event.summary;
+    patchCells(analyticsState.monthlySales, event.monthlySales);
+    patchCells(analyticsState.categorySales, event.categorySales);
+    patchCells(analyticsState.hourlySales, event.hourlySales);
+    analyticsState.monthlySales = sortMonths(analyticsState.monthlySales);
+    if (event.topProducts) analyticsState.topProducts = event.topProducts;
+    if (event.leastProducts) analyticsState.leastProducts = event.leastProducts;
+    
+    if (event.type === 'sale-added') {
+        salesRows = event.sales.concat(salesRows).slice(0, SALES_PAGE_SIZE);
+    } else {
+        salesRows = salesRows.filter(sale => sale.id !== event.saleId);
+    }
+    
+    updateMetrics(analyticsState.summary);
+    renderCharts(analyticsState);
+    renderSalesTable(salesRows);
+}
+
+// A null value means the cell no longer has sales
+function patchCells(cells, changes) {
+    for (const [key, value] of Object.entries(changes)) {
+        if (value === null) {
+            delete cells[key];
+        } else {
+            cells[key] = value;
+        }
+    }
+}
+
+// Month labels are "JANUARY 2024"; keep them in calendar order
+function sortMonths(cells) {
+    const monthNames = ['JANUARY', 'FEBRUARY', 'MARCH', 'APRIL', 'MAY', 'JUNE', 'JULY',
+        'AUGUST', 'SEPTEMBER', 'OCTOBER', 'NOVEMBER', 'DECEMBER'];
+    const order = label => {
+        const [month, year] = label.split(' ');
+        return parseInt(year) * 12 + monthNames.indexOf(month);
+    };
+    return Object.keys(cells)
+        .sort((a, b) => order(a) - order(b))
+        .reduce((acc, key) => {
+            acc[key] = cells[key];
+            return acc;
+        }, {});
+}
+
 /**
  * Fetch analytics from API
  */
@@ -169,10 +253,10 @@ async function fetchAnalytics() {
 }
 
 /**
- * Fetch sales from API
+ * Fetch the newest page of sales from API
  */
 async function fetchSales() {
-    const response = await fetch(`${API_BASE_URL}/sales?username=${currentUser.username}`);
+    const response = await fetch(`${API_BASE_URL}/sales?username=${currentUser.username}&sort=-id&limit=${SALES_PAGE_SIZE}`);
     if (!response.ok) throw new Error('Failed to fetch sales');
     return await response.json();
 }
@@ -206,7 +290,7 @@ function renderCharts(data) {
 function renderTopProductsChart(data) {
     const ctx = document.getElementById('topProductsChart').getContext('2d');
     
-    if (charts.topProducts) charts.topProducts.destroy();
+    if (patchChart(charts.topProducts, Object.keys(data), Object.values(data))) return;
     
     charts.topProducts = new Chart(ctx, {
         type: 'bar',
@@ -243,7 +327,7 @@ function renderTopProductsChart(data) {
 function renderLeastProductsChart(data) {
     const ctx = document.getElementById('leastProductsChart').getContext('2d');
     
-    if (charts.leastProducts) charts.leastProducts.destroy();
+    if (patchChart(charts.leastProducts, Object.keys(data), Object.values(data))) return;
     
     charts.leastProducts = new Chart(ctx, {
         type: 'bar',
@@ -280,7 +364,7 @@ function renderLeastProductsChart(data) {
 function renderMonthlySalesChart(data) {
     const ctx = document.getElementById('monthlySalesChart').getContext('2d');
     
-    if (charts.monthlySales) charts.monthlySales.destroy();
+    if (patchChart(charts.monthlySales, Object.keys(data), Object.values(data))) return;
     
     charts.monthlySales = new Chart(ctx, {
         type: 'line',
@@ -319,7 +403,7 @@ function renderMonthlySalesChart(data) {
 function renderCategorySalesChart(data) {
     const ctx = document.getElementById('categorySalesChart').getContext('2d');
     
-    if (charts.categorySales) charts.categorySales.destroy();
+    if (patchChart(charts.categorySales, Object.keys(data), Object.values(data))) return;
     
     charts.categorySales = new Chart(ctx, {
         type: 'doughnut',
@@ -353,8 +437,6 @@ function renderCategorySalesChart(data) {
 function renderHourlySalesChart(data) {
     const ctx = document.getElementById('hourlySalesChart').getContext('2d');
     
-    if (charts.hourlySales) charts.hourlySales.destroy();
-    
     // Sort by hour
     const sortedData = Object.entries(data)
         .sort((a, b) => parseInt(a[0]) - parseInt(b[0]))
@@ -363,6 +445,8 @@ function renderHourlySalesChart(data) {
             return acc;
         }, {});
     
+    if (patchChart(charts.hourlySales, Object.keys(sortedData), Object.values(sortedData))) return;
+    
     charts.hourlySales = new Chart(ctx, {
         type: 'bar',
         data: {
@@ -397,6 +481,17 @@ function renderHourlySalesChart(data) {
     });
 }
 
+/**
+ * Replace an existing chart's data and redraw it in place
+ */
+function patchChart(chart, labels, values) {
+    if (!chart) return false;
+    chart.data.labels = labels;
+    chart.data.datasets[0].data = values;
+    chart.update();
+    return true;
+}
+
 /**
  * Render sales table
  */
@@ -452,7 +547,8 @@ async function deleteSale(saleId) {
         const data = await response.json();
         
         if (data.success) {
-            loadDashboardData();
+            // The stream pushes the change; reload only without one
+            if (!isStreamOpen()) loadDashboardData();
         } else {
             alert('Failed to delete sale');
         }
@@ -2,7 +2,8 @@
  * Login Page JavaScript
  */
 
-const API_BASE_URL = 'http://localhost:8080/api';
+// Same origin when served by the Java server, which also serves these files
+const API_BASE_URL = window.location.protocol === 'file:' ? 'http://localhost:8080/api' : '/api';
 
 // DOM Elements
 const loginForm = document.getElementById('loginForm');
@@ -0,0 +1,215 @@
+/**
+ * Server Metrics JavaScript
+ * Renders /api/metrics (request and storage latencies) and /api/top-tasks
+ * (slowest recent requests)
+ */
+
+// Same origin when served by the Java server, which also serves these files
+const API_BASE_URL = window.location.protocol === 'file:' ? 'http://localhost:8080/api' : '/api';
+const SLOW_REQUESTS_LIMIT = 20;
+let charts = {};
+
+// DOM Elements
+const refreshMetricsBtn = document.getElementById('refreshMetricsBtn');
+const metricsMessage = document.getElementById('metricsMessage');
+
+// Initialize
+document.addEventListener('DOMContentLoaded', () => {
+    refreshMetricsBtn.addEventListener('click', loadMetrics);
+    loadMetrics();
+});
+
+/**
+ * Load metrics and the slowest requests, then render everything
+ */
+async function loadMetrics() {
+    try {
+        refreshMetricsBtn.disabled = true;
+
+        const [metrics, slowRequests] = await Promise.all([
+            fetchJson(`${API_BASE_URL}/metrics`),
+            fetchJson(`${API_BASE_URL}/top-tasks?limit=${SLOW_REQUESTS_LIMIT}`)
+        ]);
+
+        document.getElementById('uptime').textContent = `Up ${formatUptime(metrics.uptimeSeconds)}`;
+        updateRequestTotals(metrics.endpoints);
+        renderEndpointRequestsChart(metrics.endpoints);
+        renderEndpointLatencyChart(metrics.endpoints);
+        renderStorageLatencyChart(metrics.database);
+        renderSlowRequestsTable(slowRequests);
+
+        showMessage('', '');
+    } catch (error) {
+        console.error('Error loading metrics:', error);
+        showMessage('Error loading metrics. Please check if the server is running.', 'error');
+    } finally {
+        refreshMetricsBtn.disabled = false;
+    }
+}
+
+async function fetchJson(url) {
+    const response = await fetch(url);
+    if (!response.ok) {
+        throw new Error(`HTTP error! status: ${response.status}`);
+    }
+    return await response.json();
+}
+
+/**
+ * Totals across all endpoints: requests, bytes sent, errors, mean and max latency
+ */
+function updateRequestTotals(endpoints) {
+    const all = Object.values(endpoints);
+    const requestCount = all.reduce((sum, e) => sum + e.requests, 0);
+    const bytesSent = all.reduce((sum, e) => sum + e.bytesOut, 0);
+    const clientErrors = all.reduce((sum, e) => sum + e.clientErrors, 0);
+    const serverErrors = all.reduce((sum, e) => sum + e.serverErrors, 0);
+    const totalMicros = all.reduce((sum, e) => sum + e.latencyMicros.mean * e.requests, 0);
+    const maxMicros = all.reduce((max, e) => Math.max(max, e.latencyMicros.max), 0);
+
+    document.getElementById('requestCount').textContent = requestCount;
+    document.getElementById('bytesSent').textContent = `${(bytesSent / 1048576).toFixed(2)} MB`;
+    document.getElementById('errorCount').textContent = `${clientErrors} / ${serverErrors}`;
+    document.getElementById('meanLatency').textContent = formatMillis(requestCount ? totalMicros / requestCount : 0);
+    document.getElementById('maxLatency').textContent = formatMillis(maxMicros);
+}
+
+/**
+ * Request count per endpoint
+ */
+function renderEndpointRequestsChart(endpoints) {
+    const names = Object.keys(endpoints).filter(name => endpoints[name].requests > 0);
+    const requestCounts = names.map(name => endpoints[name].requests);
+
+    replaceChart('endpointRequestsChart', {
+        type: 'doughnut',
+        data: {
+            labels: names,
+            datasets: [{
+                label: 'Requests',
+                data: requestCounts,
+                backgroundColor: ['#667eea', '#764ba2', '#f093fb', '#4facfe', '#43e97b', '#fa709a'],
+                borderWidth: 2,
+                borderColor: '#fff'
+            }]
+        },
+        options: {
+            responsive: true,
+            plugins: {
+                legend: { position: 'bottom' }
+            }
+        }
+    });
+}
+
+/**
+ * p50/p99/p999 latency per endpoint
+ */
+function renderEndpointLatencyChart(endpoints) {
+    const names = Object.keys(endpoints).filter(name => endpoints[name].requests > 0);
+    replaceChart('endpointLatencyChart', percentileChart(names, name => endpoints[name].latencyMicros));
+}
+
+/**
+ * p50/p99/p999 latency per storage operation
+ */
+function renderStorageLatencyChart(operations) {
+    const names = Object.keys(operations).filter(name => operations[name].count > 0);
+    replaceChart('storageLatencyChart', percentileChart(names, name => operations[name].latencyMicros));
+}
+
+/**
+ * Bar chart config with one dataset per percentile, in milliseconds
+ */
+function percentileChart(names, latencyOf) {
+    const p50Millis = names.map(name => latencyOf(name).p50 / 1000);
+    const p99Millis = names.map(name => latencyOf(name).p99 / 1000);
+    const p999Millis = names.map(name => latencyOf(name).p999 / 1000);
+
+    return {
+        type: 'bar',
+        data: {
+            labels: names,
+            datasets: [
+                { label: 'p50', data: p50Millis, backgroundColor: '#667eea' },
+                { label: 'p99', data: p99Millis, backgroundColor: '#764ba2' },
+                { label: 'p999', data: p999Millis, backgroundColor: '#f093fb' }
+            ]
+        },
+        options: {
+            responsive: true,
+            scales: {
+                y: {
+                    beginAtZero: true,
+                    ticks: {
+                        callback: value => value + ' ms'
+                    }
+                }
+            },
+            plugins: {
+                legend: { position: 'bottom' },
+                tooltip: {
+                    callbacks: {
+                        label: context => `${context.dataset.label}: ${context.parsed.y.toFixed(2)} ms`
+                    }
+                }
+            }
+        }
+    };
+}
+
+function replaceChart(canvasId, config) {
+    if (charts[canvasId]) {
+        charts[canvasId].destroy();
+    }
+    charts[canvasId] = new Chart(document.getElementById(canvasId).getContext('2d'), config);
+}
+
+/**
+ * Slowest recent requests, slowest first, with their HTTP status
+ */
+function renderSlowRequestsTable(requests) {
+    const tbody = document.getElementById('slowRequestsBody');
+    tbody.innerHTML = '';
+
+    if (requests.length === 0) {
+        tbody.innerHTML = '<tr><td colspan="6" class="no-data">No requests recorded yet</td></tr>';
+        return;
+    }
+
+    requests.forEach((request, index) => {
+        const statusClass = request.status >= 500 ? 'status-server-error'
+            : request.status >= 400 ? 'status-client-error' : 'status-ok';
+        const row = document.createElement('tr');
+        row.innerHTML = `
+            <td>${index + 1}</td>
+            <td><strong>${escapeHtml(request.method)} ${escapeHtml(request.endpoint)}</strong></td>
+            <td>${formatMillis(request.durationMicros)}</td>
+            <td>${escapeHtml(request.user || '-')}</td>
+            <td><span class="status-badge ${statusClass}">${request.status}</span></td>
+            <td>${escapeHtml(request.timestamp)}</td>
+        `;
+        tbody.appendChild(row);
+    });
+}
+
+function formatMillis(micros) {
+    return `${(micros / 1000).toFixed(2)} ms`;
+}
+
+function formatUptime(seconds) {
+    const hours = Math.floor(seconds / 3600);
+    const minutes = Math.floor((seconds % 3600) / 60);
+    return `${hours}h ${minutes}m`;
+}
+
+function escapeHtml(text) {
+    const div = document.createElement('div');
+    div.textContent = String(text);
+    return div.innerHTML;
+}
+
+function showMessage(message, type) {
+    metricsMessage.textContent = message;
+    metricsMessage.className = type ? `form-message ${type}` : 'form-message';
+}
@@ -4,7 +4,8 @@
  */
 
 // Configuration
-const API_BASE_URL = 'http://localhost:8080/api';
+// Same origin when served by the Java server, which also serves these files
+const API_BASE_URL = window.location.protocol === 'file:' ? 'http://localhost:8080/api' : '/api';
 
 // Chart instances (global for updates)
 let categoryChart = null;